@@ -0,0 +1,29 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.schema.loader.TemplateHandler;
+
+/**
+ * Schema shared by the benchmarks, one message of two int fields.
+ */
+public class BenchmarkSchema {
+
+    public static final MessageSchemaDynamic SCHEMA;
+    public static final int MSG_INTPAIR;
+    public static final int FIELD_FIRST;
+    public static final int FIELD_SECOND;
+
+    static {
+        try {
+            FieldReferenceOffsetManager from = TemplateHandler.loadFrom("/benchmark/benchmarkTemplates.xml");
+            SCHEMA = new MessageSchemaDynamic(from);
+            MSG_INTPAIR = FieldReferenceOffsetManager.lookupTemplateLocator("IntPair", from);
+            FIELD_FIRST = FieldReferenceOffsetManager.lookupFieldLocator("First", MSG_INTPAIR, from);
+            FIELD_SECOND = FieldReferenceOffsetManager.lookupFieldLocator("Second", MSG_INTPAIR, from);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ociweb.pronghorn.pipe.DataInputBlobReader;
+import com.ociweb.pronghorn.pipe.DataOutputBlobWriter;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+/**
+ * DataOutputBlobWriter and DataInputBlobReader streaming longs through the blob ring.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BlobStreamBenchmark {
+
+    @State(Scope.Thread)
+    public static class SingleThread {
+        @Param({"8", "128"})
+        int longsPerFragment;
+
+        Pipe<RawDataSchema> pipe;
+        DataOutputBlobWriter<RawDataSchema> out;
+        DataInputBlobReader<RawDataSchema> in;
+
+        @Setup
+        public void setup() {
+            pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 256, 8*longsPerFragment));
+            pipe.initBuffers();
+            out = new DataOutputBlobWriter<RawDataSchema>(pipe);
+            in = new DataInputBlobReader<RawDataSchema>(pipe);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class TwoThreads {
+        @Param({"8", "128"})
+        int longsPerFragment;
+
+        Pipe<RawDataSchema> pipe;
+        DataOutputBlobWriter<RawDataSchema> out;
+        DataInputBlobReader<RawDataSchema> in;
+
+        @Setup
+        public void setup() {
+            pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 256, 8*longsPerFragment));
+            pipe.initBuffers();
+            out = new DataOutputBlobWriter<RawDataSchema>(pipe);
+            in = new DataInputBlobReader<RawDataSchema>(pipe);
+        }
+    }
+
+    @Benchmark
+    public long writeThenRead(SingleThread state) {
+        write(state.pipe, state.out, state.longsPerFragment);
+        return read(state.pipe, state.in, state.longsPerFragment);
+    }
+
+    @Benchmark
+    @Group("blobStream")
+    @GroupThreads(1)
+    public void producer(TwoThreads state, FragmentCounters counters) {
+        if (Pipe.hasRoomForWrite(state.pipe)) {
+            counters.fragments++;
+            write(state.pipe, state.out, state.longsPerFragment);
+        }
+    }
+
+    @Benchmark
+    @Group("blobStream")
+    @GroupThreads(1)
+    public long consumer(TwoThreads state, FragmentCounters counters) {
+        if (Pipe.hasContentToRead(state.pipe)) {
+            counters.fragments++;
+            return read(state.pipe, state.in, state.longsPerFragment);
+        }
+        return 0;
+    }
+
+    private static void write(Pipe<RawDataSchema> pipe, DataOutputBlobWriter<RawDataSchema> out, int count) {
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        DataOutputBlobWriter.openField(out);
+        int i = count;
+        while (--i>=0) {
+            out.writeLong(i);
+        }
+        DataOutputBlobWriter.closeLowLevelField(out);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static long read(Pipe<RawDataSchema> pipe, DataInputBlobReader<RawDataSchema> in, int count) {
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        DataInputBlobReader.openLowLevelAPIField(in);
+        long sum = 0;
+        int i = count;
+        while (--i>=0) {
+            sum += in.readLong();
+        }
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return sum;
+    }
+
+}
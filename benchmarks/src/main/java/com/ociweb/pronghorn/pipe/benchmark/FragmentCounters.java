@@ -0,0 +1,24 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the fragments which really moved in the two thread benchmarks, the try methods return without work when the
+ * pipe is full or empty so the raw invocation count is not the throughput.
+ */
+@AuxCounters
+@State(Scope.Thread)
+public class FragmentCounters {
+
+    public long fragments;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        fragments = 0;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.pipe.PipeWriter;
+
+/**
+ * High level API, PipeWriter and PipeReader field access by LOC on one thread and across two threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class HighLevelPipeBenchmark {
+
+    @State(Scope.Thread)
+    public static class SingleThread {
+        Pipe<MessageSchemaDynamic> pipe;
+
+        @Setup
+        public void setup() {
+            pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(BenchmarkSchema.SCHEMA, 1024));
+            pipe.initBuffers();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class TwoThreads {
+        Pipe<MessageSchemaDynamic> pipe;
+
+        @Setup
+        public void setup() {
+            pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(BenchmarkSchema.SCHEMA, 1024));
+            pipe.initBuffers();
+        }
+    }
+
+    @Benchmark
+    public int writeThenRead(SingleThread state) {
+        PipeWriter.tryWriteFragment(state.pipe, BenchmarkSchema.MSG_INTPAIR);
+        write(state.pipe, 42);
+        PipeReader.tryReadFragment(state.pipe);
+        return read(state.pipe);
+    }
+
+    @Benchmark
+    @Group("highLevel")
+    @GroupThreads(1)
+    public void producer(TwoThreads state, FragmentCounters counters) {
+        if (PipeWriter.tryWriteFragment(state.pipe, BenchmarkSchema.MSG_INTPAIR)) {
+            write(state.pipe, (int)counters.fragments++);
+        }
+    }
+
+    @Benchmark
+    @Group("highLevel")
+    @GroupThreads(1)
+    public int consumer(TwoThreads state, FragmentCounters counters) {
+        if (PipeReader.tryReadFragment(state.pipe)) {
+            counters.fragments++;
+            return read(state.pipe);
+        }
+        return 0;
+    }
+
+    private static void write(Pipe<MessageSchemaDynamic> pipe, int value) {
+        PipeWriter.writeInt(pipe, BenchmarkSchema.FIELD_FIRST, value);
+        PipeWriter.writeInt(pipe, BenchmarkSchema.FIELD_SECOND, value+1);
+        PipeWriter.publishWrites(pipe);
+    }
+
+    private static int read(Pipe<MessageSchemaDynamic> pipe) {
+        int result = PipeReader.readInt(pipe, BenchmarkSchema.FIELD_FIRST) + PipeReader.readInt(pipe, BenchmarkSchema.FIELD_SECOND);
+        PipeReader.releaseReadLock(pipe);
+        return result;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+
+/**
+ * Low level API, addIntValue and takeValue on one thread and across a producer and consumer thread.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LowLevelPipeBenchmark {
+
+    @State(Scope.Thread)
+    public static class SingleThread {
+        Pipe<MessageSchemaDynamic> pipe;
+
+        @Setup
+        public void setup() {
+            pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(BenchmarkSchema.SCHEMA, 1024));
+            pipe.initBuffers();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class TwoThreads {
+        Pipe<MessageSchemaDynamic> pipe;
+
+        @Setup
+        public void setup() {
+            pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(BenchmarkSchema.SCHEMA, 1024));
+            pipe.initBuffers();
+        }
+    }
+
+    @Benchmark
+    public int writeThenRead(SingleThread state) {
+        write(state.pipe, 42);
+        return read(state.pipe);
+    }
+
+    @Benchmark
+    @Group("lowLevel")
+    @GroupThreads(1)
+    public void producer(TwoThreads state, FragmentCounters counters) {
+        if (Pipe.hasRoomForWrite(state.pipe)) {
+            write(state.pipe, (int)counters.fragments++);
+        }
+    }
+
+    @Benchmark
+    @Group("lowLevel")
+    @GroupThreads(1)
+    public int consumer(TwoThreads state, FragmentCounters counters) {
+        if (Pipe.hasContentToRead(state.pipe)) {
+            counters.fragments++;
+            return read(state.pipe);
+        }
+        return 0;
+    }
+
+    private static void write(Pipe<MessageSchemaDynamic> pipe, int value) {
+        int size = Pipe.addMsgIdx(pipe, BenchmarkSchema.MSG_INTPAIR);
+        Pipe.addIntValue(value, pipe);
+        Pipe.addIntValue(value+1, pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static int read(Pipe<MessageSchemaDynamic> pipe) {
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        int result = Pipe.takeValue(pipe) + Pipe.takeValue(pipe);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return result;
+    }
+
+}
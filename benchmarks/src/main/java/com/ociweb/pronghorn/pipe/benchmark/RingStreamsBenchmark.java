@@ -0,0 +1,107 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+import com.ociweb.pronghorn.pipe.stream.RingInputStream;
+import com.ociweb.pronghorn.pipe.stream.RingStreams;
+
+/**
+ * RingStreams copy of a byte array into the pipe in blocks, drained on the same thread or by a RingInputStream
+ * on a second thread.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RingStreamsBenchmark {
+
+    private static final int BLOCK_SIZE = 512;
+
+    @State(Scope.Thread)
+    public static class SingleThread {
+        @Param({"4096"})
+        int dataLength;
+
+        byte[] data;
+        Pipe<RawDataSchema> pipe;
+
+        @Setup
+        public void setup() {
+            data = new byte[dataLength];
+            pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 2*(dataLength/BLOCK_SIZE), BLOCK_SIZE));
+            pipe.initBuffers();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class TwoThreads {
+        @Param({"4096"})
+        int dataLength;
+
+        byte[] data;
+        byte[] target;
+        Pipe<RawDataSchema> pipe;
+        RingInputStream input;
+
+        @Setup
+        public void setup() {
+            data = new byte[dataLength];
+            target = new byte[dataLength];
+            pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 2*(dataLength/BLOCK_SIZE), BLOCK_SIZE));
+            pipe.initBuffers();
+            input = new RingInputStream(pipe);
+        }
+    }
+
+    @Benchmark
+    public int copyThenDrain(SingleThread state) {
+        RingStreams.writeBytesToRing(state.data, 0, state.dataLength, state.pipe, BLOCK_SIZE);
+        int total = 0;
+        while (Pipe.hasContentToRead(state.pipe)) {
+            int msgIdx = Pipe.takeMsgIdx(state.pipe);
+            int meta = Pipe.takeRingByteMetaData(state.pipe);
+            int len = Pipe.takeRingByteLen(state.pipe);
+            Pipe.bytePosition(meta, state.pipe, len);
+            total += len;
+            Pipe.confirmLowLevelRead(state.pipe, Pipe.sizeOf(state.pipe, msgIdx));
+            Pipe.releaseReadLock(state.pipe);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @Group("ringStreams")
+    @GroupThreads(1)
+    public void producer(TwoThreads state) {
+        //blocks when the pipe is full
+        RingStreams.writeBytesToRing(state.data, 0, state.dataLength, state.pipe, BLOCK_SIZE);
+    }
+
+    @Benchmark
+    @Group("ringStreams")
+    @GroupThreads(1)
+    public int consumer(TwoThreads state) throws IOException {
+        //blocks until bytes arrive
+        return state.input.read(state.target, 0, state.target.length);
+    }
+
+}
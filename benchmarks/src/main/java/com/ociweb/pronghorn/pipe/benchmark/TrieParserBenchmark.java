@@ -0,0 +1,76 @@
+package com.ociweb.pronghorn.pipe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ociweb.pronghorn.util.TrieParser;
+import com.ociweb.pronghorn.util.TrieParserReader;
+
+/**
+ * TrieParserReader.query over literal keys and over a pattern with an extracted number.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TrieParserBenchmark {
+
+    private static final String[] HEADERS = new String[] {
+        "Accept: ", "Accept-Charset: ", "Accept-Encoding: ", "Accept-Language: ", "Authorization: ",
+        "Cache-Control: ", "Connection: ", "Content-Length: ", "Content-Type: ", "Cookie: ",
+        "Date: ", "Expect: ", "Host: ", "If-Match: ", "If-Modified-Since: ", "User-Agent: "};
+
+    TrieParser literals;
+    TrieParser pattern;
+    TrieParserReader reader;
+
+    byte[] literalText;
+    byte[] patternText;
+    int mask;
+
+    @Setup
+    public void setup() {
+        literals = new TrieParser(1024);
+        int i = HEADERS.length;
+        while (--i>=0) {
+            literals.setUTF8Value(HEADERS[i], i+1);
+        }
+        pattern = new TrieParser(256);
+        pattern.setUTF8Value("Content-Length: %u\r\n", 1);
+
+        reader = new TrieParserReader(4);
+        mask = 0xFF;
+        literalText = new byte[mask+1];
+        patternText = new byte[mask+1];
+        copy("If-Modified-Since: ", literalText);
+        copy("Content-Length: 12345\r\n", patternText);
+    }
+
+    private static void copy(String text, byte[] target) {
+        byte[] bytes = text.getBytes();
+        System.arraycopy(bytes, 0, target, 0, bytes.length);
+    }
+
+    @Benchmark
+    public long queryLiteral() {
+        return TrieParserReader.query(reader, literals, literalText, 0, literalText.length, mask);
+    }
+
+    @Benchmark
+    public long queryWithExtraction() {
+        return TrieParserReader.query(reader, pattern, patternText, 0, patternText.length, mask);
+    }
+
+}
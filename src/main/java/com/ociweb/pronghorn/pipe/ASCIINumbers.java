@@ -0,0 +1,237 @@
+package com.ociweb.pronghorn.pipe;
+
+/**
+ * ASCII number formatting and parsing done directly on ring bytes, no Strings are created.
+ * Formatting emits two digits per divide from a digit pair table and parsing folds two digits per multiply.
+ *
+ * All positions are unmasked, pass the ring mask or Integer.MAX_VALUE for a flat array.
+ */
+public class ASCIINumbers {
+
+    static final byte[] DIGIT_TENS = new byte[100];
+    static final byte[] DIGIT_ONES = new byte[100];
+    static {
+        int i = 100;
+        while (--i>=0) {
+            DIGIT_TENS[i] = (byte)('0'+(i/10));
+            DIGIT_ONES[i] = (byte)('0'+(i%10));
+        }
+    }
+
+    private static final long[] POW10 = new long[] {
+        1L,10L,100L,1000L,10000L,100000L,1000000L,10000000L,100000000L,1000000000L,10000000000L,
+        100000000000L,1000000000000L,10000000000000L,100000000000000L,1000000000000000L,
+        10000000000000000L,100000000000000000L,1000000000000000000L
+    };
+
+    //powers of ten up to here are exact as doubles so one multiply or divide is correctly rounded
+    private static final int MAX_EXACT_DOUBLE_POW = 22;
+    private static final double[] POW10D = new double[MAX_EXACT_DOUBLE_POW+1];
+    static {
+        double p = 1;
+        for (int i = 0; i<=MAX_EXACT_DOUBLE_POW; i++) {
+            POW10D[i] = p;
+            p *= 10;
+        }
+    }
+
+    //more digits than this could overflow a long mantissa
+    private static final int SAFE_DIGITS = 18;
+
+    /**
+     * Writes the digits of a value which must be zero or negative so they end just before idx.
+     * Negative values are used so Long.MIN_VALUE needs no special case.
+     *
+     * @return index of the first digit written
+     */
+    public static int writeDigitsBackwards(byte[] target, int mask, long negValue, int idx) {
+        assert(negValue<=0);
+        while (negValue <= Integer.MIN_VALUE) {
+            long q = negValue/100;
+            int r = (int)((q*100)-negValue);
+            negValue = q;
+            target[mask & --idx] = DIGIT_ONES[r];
+            target[mask & --idx] = DIGIT_TENS[r];
+        }
+        return writeDigitsBackwards(target, mask, (int)negValue, idx);
+    }
+
+    public static int writeDigitsBackwards(byte[] target, int mask, int negValue, int idx) {
+        assert(negValue<=0);
+        while (negValue <= -100) {
+            int q = negValue/100;
+            int r = (q*100)-negValue;
+            negValue = q;
+            target[mask & --idx] = DIGIT_ONES[r];
+            target[mask & --idx] = DIGIT_TENS[r];
+        }
+        int r = -negValue;
+        target[mask & --idx] = DIGIT_ONES[r];
+        if (r>=10) {
+            target[mask & --idx] = DIGIT_TENS[r];
+        }
+        return idx;
+    }
+
+    /**
+     * Parse an optionally signed run of decimal digits.
+     */
+    public static long parseLong(byte[] source, int pos, int mask, int len) {
+        boolean negative = len>0 && '-'==source[mask & pos];
+        int start = (negative || (len>0 && '+'==source[mask & pos])) ? 1 : 0;
+        int digits = len-start;
+        if (digits<=0 || digits>19) {
+            throw new UnsupportedOperationException("Unable to parse long from "+len+" bytes");
+        }
+        pos += start;
+
+        long acc;
+        if (digits<=SAFE_DIGITS) {
+            acc = accumulate(source, pos, mask, digits, 0);
+        } else {
+            //only the 19th digit can overflow
+            acc = accumulate(source, pos, mask, SAFE_DIGITS, 0);
+            int d = digit(source, mask, pos+SAFE_DIGITS);
+            if (acc < Long.MIN_VALUE/10 || (acc*=10) < Long.MIN_VALUE+d) {
+                throw new UnsupportedOperationException("Value does not fit in a long");
+            }
+            acc -= d;
+        }
+        if (negative) {
+            return acc;
+        }
+        if (Long.MIN_VALUE==acc) {
+            throw new UnsupportedOperationException("Value does not fit in a long");
+        }
+        return -acc;
+    }
+
+    public static int parseInt(byte[] source, int pos, int mask, int len) {
+        long value = parseLong(source, pos, mask, len);
+        if (value<Integer.MIN_VALUE || value>Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException("Value does not fit in an int "+value);
+        }
+        return (int)value;
+    }
+
+    /**
+     * Parse text like 1234.56 into a mantissa with the given number of places, so 2 places gives 123456.
+     * This is the reverse of Pipe.addDecimalAsASCII, extra fractional digits are truncated.
+     */
+    public static long parseDecimalMantissa(byte[] source, int pos, int mask, int len, int places) {
+        if (places<0 || places>SAFE_DIGITS) {
+            throw new UnsupportedOperationException("Places must be between 0 and "+SAFE_DIGITS+" found "+places);
+        }
+        boolean negative = len>0 && '-'==source[mask & pos];
+        int start = (negative || (len>0 && '+'==source[mask & pos])) ? 1 : 0;
+
+        int dot = start;
+        while (dot<len && '.'!=source[mask & (pos+dot)]) {
+            dot++;
+        }
+        int wholeDigits = dot-start;
+        int fracDigits = Math.min(places, Math.max(0, len-dot-1));
+        if (wholeDigits+fracDigits<=0) {
+            throw new UnsupportedOperationException("Unable to parse decimal from "+len+" bytes");
+        }
+        if (wholeDigits+places>SAFE_DIGITS) {
+            throw new UnsupportedOperationException("Too many digits for a long mantissa");
+        }
+
+        long acc = accumulate(source, pos+start, mask, wholeDigits, 0);
+        acc = accumulate(source, pos+dot+1, mask, fracDigits, acc);
+        acc *= POW10[places-fracDigits];
+        int i = dot+1+fracDigits;
+        while (i<len) {
+            digit(source, mask, pos+i++); //truncated digits must still be digits
+        }
+        return negative ? acc : -acc;
+    }
+
+    /**
+     * Parse text like -12.5 or 6.02e23. Mantissas of up to 18 significant digits with exponents that keep the
+     * scale within 22 places are converted with a single correctly rounded operation, anything else is passed
+     * to Double.parseDouble.
+     */
+    public static double parseDouble(byte[] source, int pos, int mask, int len) {
+        boolean negative = len>0 && '-'==source[mask & pos];
+        int i = (negative || (len>0 && '+'==source[mask & pos])) ? 1 : 0;
+
+        long acc = 0;
+        int significant = 0;
+        long scale = 0;
+        int digits = 0;
+        boolean afterDot = false;
+        while (i<len) {
+            byte b = source[mask & (pos+i)];
+            if ('.'==b && !afterDot) {
+                afterDot = true;
+            } else if (b>='0' && b<='9') {
+                digits++;
+                if (significant<SAFE_DIGITS) {
+                    if (0!=acc || '0'!=b) {
+                        significant++;
+                    }
+                    acc = (acc*10)-(b-'0');
+                    if (afterDot) {
+                        scale--;
+                    }
+                } else if (!afterDot) {
+                    scale++;
+                }
+            } else {
+                break;
+            }
+            i++;
+        }
+        if (0==digits) {
+            throw new UnsupportedOperationException("Unable to parse double from "+len+" bytes");
+        }
+        if (i<len) {
+            byte b = source[mask & (pos+i)];
+            if (('e'!=b && 'E'!=b) || i+1==len) {
+                throw new UnsupportedOperationException("Unexpected character "+(char)b);
+            }
+            scale += parseLong(source, pos+i+1, mask, len-i-1);
+        }
+
+        if (scale>=-MAX_EXACT_DOUBLE_POW && scale<=MAX_EXACT_DOUBLE_POW && acc > -(1L<<53)) {
+            double magnitude = -acc;
+            double value = scale<0 ? magnitude/POW10D[(int)-scale] : magnitude*POW10D[(int)scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(toText(source, pos, mask, len));
+    }
+
+    private static String toText(byte[] source, int pos, int mask, int len) {
+        char[] chars = new char[len];
+        int i = len;
+        while (--i>=0) {
+            chars[i] = (char)source[mask & (pos+i)];
+        }
+        return new String(chars);
+    }
+
+    //accumulates negative so the full range of a long is available, digits must be no more than SAFE_DIGITS
+    private static long accumulate(byte[] source, int pos, int mask, int digits, long acc) {
+        if (0!=(1&digits)) {
+            acc = (acc*10)-digit(source, mask, pos++);
+        }
+        int limit = pos+(digits&~1);
+        while (pos<limit) {
+            int tens = digit(source, mask, pos++);
+            int ones = digit(source, mask, pos++);
+            acc = (acc*100)-((tens*10)+ones);
+        }
+        return acc;
+    }
+
+    private static int digit(byte[] source, int mask, int pos) {
+        int d = source[mask & pos]-'0';
+        if (d<0 || d>9) {
+            throw new UnsupportedOperationException("Unexpected character "+(char)source[mask & pos]);
+        }
+        return d;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.util.Arrays;
+
+/**
+ * Compact replacement for Java serialization when passing small objects through a blob field.
+ * Each object is written as a packed type id followed by whatever its registered serializer writes,
+ * normally packed ints, longs and chars. Nothing is allocated on the write side and the read side
+ * hands back pooled instances for the serializer to fill.
+ *
+ * Both ends must register the same classes under the same ids. Id zero is reserved for null.
+ */
+public class BlobObjectCodec {
+
+    public interface Serializer<T> {
+
+        void write(T object, DataOutputBlobWriter<?> writer);
+
+        /**
+         * @param reuse pooled instance to fill, null the first time this pool slot is used
+         * @return the filled instance, which may be reuse or a new object when reuse is null or immutable
+         */
+        T read(T reuse, DataInputBlobReader<?> reader);
+
+    }
+
+    private static final int NULL_ID = 0;
+
+    private Class<?>[] classes = new Class<?>[0];
+    private int[] ids = new int[0];
+    private Serializer<?>[] serializers = new Serializer<?>[1];
+    private Object[][] pools = new Object[1][];
+    private int[] poolPositions = new int[1];
+
+    /**
+     * Register the serializer for exactly this class, subclasses must be registered separately.
+     *
+     * @param id small positive id, written packed so values under 64 take one byte
+     * @param poolBits reader keeps 1<<poolBits instances of this class and hands them out round robin
+     */
+    public static <T> BlobObjectCodec register(BlobObjectCodec codec, int id, Class<T> clazz, Serializer<T> serializer, int poolBits) {
+        if (id<=NULL_ID) {
+            throw new UnsupportedOperationException("Id must be positive, found "+id);
+        }
+        if (id<codec.serializers.length && null!=codec.serializers[id]) {
+            throw new UnsupportedOperationException("Id "+id+" is already registered");
+        }
+        if (indexOf(codec, clazz)>=0) {
+            throw new UnsupportedOperationException(clazz.getName()+" is already registered");
+        }
+
+        int newLength = codec.classes.length+1;
+        codec.classes = Arrays.copyOf(codec.classes, newLength);
+        codec.ids = Arrays.copyOf(codec.ids, newLength);
+        codec.classes[newLength-1] = clazz;
+        codec.ids[newLength-1] = id;
+
+        if (id>=codec.serializers.length) {
+            codec.serializers = Arrays.copyOf(codec.serializers, id+1);
+            codec.pools = Arrays.copyOf(codec.pools, id+1);
+            codec.poolPositions = Arrays.copyOf(codec.poolPositions, id+1);
+        }
+        codec.serializers[id] = serializer;
+        codec.pools[id] = new Object[1<<poolBits];
+        return codec;
+    }
+
+    public static <T> BlobObjectCodec register(BlobObjectCodec codec, int id, Class<T> clazz, Serializer<T> serializer) {
+        return register(codec, id, clazz, serializer, 0);
+    }
+
+    private static int indexOf(BlobObjectCodec codec, Class<?> clazz) {
+        Class<?>[] local = codec.classes;
+        int i = local.length;
+        while (--i>=0) {
+            if (local[i]==clazz) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void writeObject(BlobObjectCodec codec, DataOutputBlobWriter<?> writer, Object object) {
+        if (null==object) {
+            DataOutputBlobWriter.writePackedUInt(writer, NULL_ID);
+            return;
+        }
+        int idx = indexOf(codec, object.getClass());
+        if (idx<0) {
+            throw new UnsupportedOperationException("No serializer registered for "+object.getClass().getName());
+        }
+        int id = codec.ids[idx];
+        DataOutputBlobWriter.writePackedUInt(writer, id);
+        ((Serializer<Object>)codec.serializers[id]).write(object, writer);
+    }
+
+    /**
+     * Returns a pooled instance, it remains valid until the pool for its class wraps around.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object readObject(BlobObjectCodec codec, DataInputBlobReader<?> reader) {
+        int id = DataInputBlobReader.readPackedInt(reader);
+        if (NULL_ID==id) {
+            return null;
+        }
+        if (id>=codec.serializers.length || null==codec.serializers[id]) {
+            throw new UnsupportedOperationException("No serializer registered for id "+id);
+        }
+        Object[] pool = codec.pools[id];
+        int slot = (pool.length-1) & codec.poolPositions[id]++;
+        return pool[slot] = ((Serializer<Object>)codec.serializers[id]).read(pool[slot], reader);
+    }
+
+}
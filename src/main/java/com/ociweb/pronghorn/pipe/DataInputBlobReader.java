@@ -51,6 +51,14 @@ public class DataInputBlobReader<S extends MessageSchema>  extends InputStream i
         return that.length;
     }
 
+    /**
+     * Open the next low level field and return this reader so it can be passed directly as an argument.
+     */
+    public DataInputBlobReader<S> openLowLevelAPIFieldReader() {
+        openLowLevelAPIField(this);
+        return this;
+    }
+
     public int accumLowLevelAPIField() {
         
         if (0==this.length) {
@@ -280,6 +288,57 @@ public class DataInputBlobReader<S extends MessageSchema>  extends InputStream i
         }
     }
 
+    /**
+     * Read an object written with the same codec, the instance returned comes from the codec pool.
+     */
+    public Object readObject(BlobObjectCodec codec) {
+        return BlobObjectCodec.readObject(codec, this);
+    }
+
+    ///////
+    //ASCII numbers, each of these consumes the rest of the field
+    //////
+
+    public long readTextAsLong() {
+        return readTextAsLong(this, bytesRemaining(this));
+    }
+
+    public int readTextAsInt() {
+        return readTextAsInt(this, bytesRemaining(this));
+    }
+
+    public long readTextAsDecimalMantissa(int places) {
+        return readTextAsDecimalMantissa(this, bytesRemaining(this), places);
+    }
+
+    public double readTextAsDouble() {
+        return readTextAsDouble(this, bytesRemaining(this));
+    }
+
+    public static <S extends MessageSchema> long readTextAsLong(DataInputBlobReader<S> that, int length) {
+        long value = ASCIINumbers.parseLong(that.backing, that.position, that.byteMask, length);
+        that.position += length;
+        return value;
+    }
+
+    public static <S extends MessageSchema> int readTextAsInt(DataInputBlobReader<S> that, int length) {
+        int value = ASCIINumbers.parseInt(that.backing, that.position, that.byteMask, length);
+        that.position += length;
+        return value;
+    }
+
+    public static <S extends MessageSchema> long readTextAsDecimalMantissa(DataInputBlobReader<S> that, int length, int places) {
+        long value = ASCIINumbers.parseDecimalMantissa(that.backing, that.position, that.byteMask, length, places);
+        that.position += length;
+        return value;
+    }
+
+    public static <S extends MessageSchema> double readTextAsDouble(DataInputBlobReader<S> that, int length) {
+        double value = ASCIINumbers.parseDouble(that.backing, that.position, that.byteMask, length);
+        that.position += length;
+        return value;
+    }
+
     ////
     //support method for direct copy
     ////
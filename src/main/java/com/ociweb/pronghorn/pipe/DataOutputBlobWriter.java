@@ -89,6 +89,13 @@ public class DataOutputBlobWriter<S extends MessageSchema> extends OutputStream
             oos.flush();
             
     }
+
+    /**
+     * Write the object with its registered serializer, this avoids the allocation and stream header of Java serialization.
+     */
+    public void writeObject(Object object, BlobObjectCodec codec) {
+        BlobObjectCodec.writeObject(codec, this, object);
+    }
     
     @Override
     public void write(int b) {
@@ -205,10 +212,7 @@ public class DataOutputBlobWriter<S extends MessageSchema> extends OutputStream
     }
     
     public static int encodeAsUTF8(DataOutputBlobWriter writer, CharSequence s, int sPos, int sLen, int mask, byte[] localBuf, int pos) {
-        while (--sLen >= 0) {
-            pos = Pipe.encodeSingleChar((int) s.charAt(sPos++), localBuf, mask, pos);
-        }
-        return pos;
+        return pos + Pipe.convertToUTF8(s, sPos, sLen, localBuf, pos, mask);
     }
     
     ///////////
@@ -29,6 +29,14 @@ public class FieldReferenceOffsetManager {
     //NOTE: these two arrays could be combined with a mask to simplify this in the future.
     public int[] fragDepth; //derived from tokens, do not put in hash or equals
     
+    //Walk plan for the high level API, indexed by fragment start cursor so the walker does not re-read the tokens.
+    static final int WALK_NONE = 0;
+    static final int WALK_OPEN_SEQUENCE = 1; //last field of the fragment is a sequence length
+    static final int WALK_CLOSE_SEQUENCE = 2; //fragment ends with the close of a sequence
+    final int[] fragNextCursor; //derived from tokens, do not put in hash or equals
+    final int[] fragWalkAction; //derived from tokens, do not put in hash or equals
+    final int[] fragSeqLengthOffset; //derived from tokens, do not put in hash or equals
+    
     public final String[] fieldNameScript;
     public final long[] fieldIdScript;
     public final String[] dictionaryNameScript;
@@ -116,6 +124,9 @@ public class FieldReferenceOffsetManager {
             fragDataSize = null;
             fragScriptSize = null;
             fragDepth = null;
+            fragNextCursor = null;
+            fragWalkAction = null;
+            fragSeqLengthOffset = null;
             
             maximumFragmentStackDepth = 0;
             maxVarFieldPerUnit = .5f;  
@@ -131,6 +142,11 @@ public class FieldReferenceOffsetManager {
             
             maxVarFieldPerUnit = buildFragScript(scriptTokens, preableBytes);
             
+            fragNextCursor = new int[scriptTokens.length];
+            fragWalkAction = new int[scriptTokens.length];
+            fragSeqLengthOffset = new int[scriptTokens.length];
+            buildWalkPlan();
+            
             //walk all the depths to find the deepest point.
             int m = 0; 
             int i = fragDepth.length;
@@ -182,6 +198,32 @@ public class FieldReferenceOffsetManager {
 		}
 	}
 		
+    /**
+     * For each fragment start record where the next fragment starts and what the last token of the fragment does to
+     * the sequence stack, this is done once here instead of on every fragment read.
+     */
+    private void buildWalkPlan() {
+        int cursor = 0;
+        while (cursor<fragScriptSize.length) {
+            if (0!=fragScriptSize[cursor]) {
+                int lastScriptPos = cursor+fragScriptSize[cursor]-1;
+                int token = tokens[lastScriptPos];
+                int type = TokenBuilder.extractType(token);
+                fragNextCursor[cursor] = cursor+fragScriptSize[cursor];
+                if (TypeMask.GroupLength == type) {
+                    fragWalkAction[cursor] = WALK_OPEN_SEQUENCE;
+                    fragSeqLengthOffset[cursor] = fragDataSize[lastScriptPos];
+                } else if (TypeMask.Group == type &&
+                           (token & ((OperatorMask.Group_Bit_Seq|OperatorMask.Group_Bit_Close) << TokenBuilder.SHIFT_OPER)) == ((OperatorMask.Group_Bit_Seq|OperatorMask.Group_Bit_Close) << TokenBuilder.SHIFT_OPER)) {
+                    fragWalkAction[cursor] = WALK_CLOSE_SEQUENCE;
+                } else {
+                    fragWalkAction[cursor] = WALK_NONE;
+                }
+            }
+            cursor++;
+        }
+    }
+
 	///TOOD: A, investigate why scriptTokens array can be so much larger than the data it contains.
 	
     private float buildFragScript(int[] scriptTokens, short preableBytes) {
@@ -157,10 +157,7 @@ public class LittleEndianDataOutputBlobWriter<S extends MessageSchema> extends O
     private int encodeAsUTF8(CharSequence s, int len, int mask, byte[] localBuf, int pos) {
         int origPos = pos;
         pos+=2;
-        int c = 0;
-        while (c < len) {
-            pos = Pipe.encodeSingleChar((int) s.charAt(c++), localBuf, mask, pos);
-        }
+        pos += Pipe.convertToUTF8(s, 0, len, localBuf, pos, mask);
         write16(localBuf,mask,origPos, (pos-origPos)-2); //writes bytes count up front
         return pos;
     }
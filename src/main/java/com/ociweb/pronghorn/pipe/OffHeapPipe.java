@@ -0,0 +1,282 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.misc.Unsafe;
+
+/**
+ * Pipe for the low level API whose slab and blob rings are held in native memory instead of java arrays.
+ *
+ * The rings add nothing to the heap the collector has to manage and the blob ring may be larger than the 1GB limit of a
+ * byte array, see PipeConfig.offHeap. Like Pipe the memory is only allocated by initBuffers so it can be called by the
+ * consuming thread to place the rings on its NUMA node. The memory is not released by the collector, free must be called
+ * once both sides are done with the pipe.
+ *
+ * Fragments have the same layout as those of Pipe so any schema can be used, but only the low level methods of this class
+ * are supported. PipeReader, PipeWriter and the blob streams need the array backed Pipe. Var length fields are limited
+ * to maxVarLen bytes each, this keeps the blob ring from overflowing while the slab ring has room.
+ *
+ * Typical use:
+ *   if (OffHeapPipe.hasRoomForWrite(pipe, size)) {
+ *       OffHeapPipe.addMsgIdx(pipe, msgIdx);
+ *       OffHeapPipe.addIntValue(value, pipe);
+ *       OffHeapPipe.addByteArray(bytes, 0, bytes.length, pipe);
+ *       OffHeapPipe.confirmLowLevelWrite(pipe, size);
+ *       OffHeapPipe.publishWrites(pipe);
+ *   }
+ */
+public class OffHeapPipe<T extends MessageSchema> {
+
+    private static final Unsafe UNSAFE = unsafe();
+    private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+
+    //these public fields are fine because they are all final
+    public final byte bitsOfSlabRing;
+    public final byte bitsOfBlobRing;
+    public final int sizeOfSlabRing;
+    public final long sizeOfBlobRing;
+    public final int mask;
+    public final long byteMask;
+    public final int maxVarLen;
+
+    private final FieldReferenceOffsetManager from;
+    private long slabAddress;
+    private long blobAddress;
+
+    private final AtomicLong headPos = new AtomicLong();
+    private final AtomicLong tailPos = new AtomicLong();
+
+    //producer only
+    private long workingHead;
+    private long fragmentHead;
+    private long tailCache;
+    private long blobWorkingHead;
+    private long blobWriteBase;
+
+    //consumer only
+    private long workingTail;
+    private long fragmentTail;
+    private long headCache;
+    private long blobReadBase;
+
+    public OffHeapPipe(PipeConfig<T> config) {
+        this.from = MessageSchema.from(config.schema);
+        this.bitsOfSlabRing = config.slabBits;
+        this.bitsOfBlobRing = config.blobBits;
+        this.sizeOfSlabRing = 1 << config.slabBits;
+        this.sizeOfBlobRing = 1L << config.blobBits;
+        this.mask = sizeOfSlabRing - 1;
+        this.byteMask = sizeOfBlobRing - 1;
+
+        if (0 == from.maxVarFieldPerUnit) {
+            this.maxVarLen = 0;
+        } else {
+            //same limit as Pipe without the moving average, kept small enough that a fragment byte count fits an int
+            int maxVarCount = FieldReferenceOffsetManager.maxVarLenFieldsPerPrimaryRingSize(from, sizeOfSlabRing);
+            this.maxVarLen = (int)Math.min(1<<PipeConfig.MAX_RING_BITS, sizeOfBlobRing/maxVarCount);
+        }
+    }
+
+    private static Unsafe unsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe)field.get(null);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Off heap pipes require sun.misc.Unsafe", e);
+        }
+    }
+
+    /**
+     * Allocate the rings, this should be called by the consuming thread.
+     */
+    public OffHeapPipe<T> initBuffers() {
+        if (isInit(this)) {
+            throw new UnsupportedOperationException("Off heap pipe was already initialized");
+        }
+        slabAddress = UNSAFE.allocateMemory(((long)sizeOfSlabRing)<<2);
+        try {
+            blobAddress = UNSAFE.allocateMemory(sizeOfBlobRing);
+        } catch (OutOfMemoryError e) {
+            UNSAFE.freeMemory(slabAddress);
+            slabAddress = 0;
+            throw e;
+        }
+        return this;
+    }
+
+    public static <S extends MessageSchema> boolean isInit(OffHeapPipe<S> pipe) {
+        return 0 != pipe.slabAddress;
+    }
+
+    /**
+     * Release the native memory of both rings, the pipe must not be used by either side afterwards.
+     */
+    public static <S extends MessageSchema> void free(OffHeapPipe<S> pipe) {
+        if (isInit(pipe)) {
+            UNSAFE.freeMemory(pipe.slabAddress);
+            UNSAFE.freeMemory(pipe.blobAddress);
+            pipe.slabAddress = 0;
+            pipe.blobAddress = 0;
+        }
+    }
+
+    public static <S extends MessageSchema> FieldReferenceOffsetManager from(OffHeapPipe<S> pipe) {
+        return pipe.from;
+    }
+
+    public static <S extends MessageSchema> int sizeOf(OffHeapPipe<S> pipe, int msgIdx) {
+        return msgIdx>=0 ? pipe.from.fragDataSize[msgIdx] : Pipe.EOF_SIZE;
+    }
+
+    public static <S extends MessageSchema> long headPosition(OffHeapPipe<S> pipe) {
+        return pipe.headPos.get();
+    }
+
+    public static <S extends MessageSchema> long tailPosition(OffHeapPipe<S> pipe) {
+        return pipe.tailPos.get();
+    }
+
+    public static <S extends MessageSchema> int contentRemaining(OffHeapPipe<S> pipe) {
+        return (int)(pipe.headPos.get() - pipe.tailPos.get());
+    }
+
+    private static <S extends MessageSchema> void setValue(OffHeapPipe<S> pipe, long pos, int value) {
+        UNSAFE.putInt(pipe.slabAddress + ((pipe.mask & pos)<<2), value);
+    }
+
+    private static <S extends MessageSchema> int readValue(OffHeapPipe<S> pipe, long pos) {
+        return UNSAFE.getInt(pipe.slabAddress + ((pipe.mask & pos)<<2));
+    }
+
+    /////////////
+    //low level write
+    ////////////
+
+    //This holds the last known state of the tail position in the same way as Pipe so the consumer is not contended.
+    public static <S extends MessageSchema> boolean hasRoomForWrite(OffHeapPipe<S> pipe, int size) {
+        long target = pipe.workingHead + size - pipe.sizeOfSlabRing;
+        return (pipe.tailCache >= target) || ((pipe.tailCache = pipe.tailPos.get()) >= target);
+    }
+
+    //must be called by low-level API when starting a new message
+    public static <S extends MessageSchema> int addMsgIdx(OffHeapPipe<S> pipe, int msgIdx) {
+        assert(msgIdx>=0) : "Call publishEOF() instead of this method";
+        pipe.fragmentHead = pipe.workingHead;
+        pipe.blobWriteBase = pipe.blobWorkingHead;
+        setValue(pipe, pipe.workingHead++, msgIdx);
+        return pipe.from.fragDataSize[msgIdx];
+    }
+
+    public static <S extends MessageSchema> void addIntValue(int value, OffHeapPipe<S> pipe) {
+        setValue(pipe, pipe.workingHead++, value);
+    }
+
+    public static <S extends MessageSchema> void addLongValue(long value, OffHeapPipe<S> pipe) {
+        setValue(pipe, pipe.workingHead++, (int)(value >>> 32));
+        setValue(pipe, pipe.workingHead++, (int)value);
+    }
+
+    public static <S extends MessageSchema> void addByteArray(byte[] source, int sourceIdx, int sourceLen, OffHeapPipe<S> pipe) {
+        if (sourceLen>pipe.maxVarLen) {
+            throw new UnsupportedOperationException("Can not write byte array of length "+sourceLen+". The limit is "+pipe.maxVarLen+" for pipe "+pipe);
+        }
+        long pos = pipe.byteMask & pipe.blobWorkingHead;
+        int first = (int)Math.min(sourceLen, pipe.sizeOfBlobRing-pos);
+        UNSAFE.copyMemory(source, BYTE_ARRAY_OFFSET+sourceIdx, null, pipe.blobAddress+pos, first);
+        UNSAFE.copyMemory(source, BYTE_ARRAY_OFFSET+sourceIdx+first, null, pipe.blobAddress, sourceLen-first);
+        addBytePosAndLen(pipe, sourceLen);
+        pipe.blobWorkingHead += sourceLen;
+    }
+
+    public static <S extends MessageSchema> void addNullByteArray(OffHeapPipe<S> pipe) {
+        addBytePosAndLen(pipe, -1);
+    }
+
+    private static <S extends MessageSchema> void addBytePosAndLen(OffHeapPipe<S> pipe, int len) {
+        //the position is relative to the start of the fragment the same way as Pipe
+        setValue(pipe, pipe.workingHead++, (int)(pipe.blobWorkingHead - pipe.blobWriteBase));
+        setValue(pipe, pipe.workingHead++, len);
+    }
+
+    public static <S extends MessageSchema> void confirmLowLevelWrite(OffHeapPipe<S> pipe, int size) {
+        assert(pipe.workingHead+1 == pipe.fragmentHead+size) : "CHECK that Pipe is written same fields as message defines and skips none!";
+    }
+
+    /**
+     * Low level API for publish, writes the count of blob bytes used by the fragment and makes it visible to the consumer.
+     */
+    public static <S extends MessageSchema> int publishWrites(OffHeapPipe<S> pipe) {
+        int consumed = (int)(pipe.blobWorkingHead - pipe.blobWriteBase);
+        setValue(pipe, pipe.workingHead++, consumed);
+        pipe.headPos.lazySet(pipe.workingHead);
+        return consumed;
+    }
+
+    public static <S extends MessageSchema> void publishEOF(OffHeapPipe<S> pipe) {
+        assert(hasRoomForWrite(pipe, Pipe.EOF_SIZE)) : "Must block first to ensure we have 2 spots for the EOF marker";
+        pipe.blobWriteBase = pipe.blobWorkingHead;
+        setValue(pipe, pipe.workingHead++, -1);
+        setValue(pipe, pipe.workingHead++, 0);
+        pipe.headPos.lazySet(pipe.workingHead);
+    }
+
+    /////////////
+    //low level read
+    ////////////
+
+    public static <S extends MessageSchema> boolean hasContentToRead(OffHeapPipe<S> pipe) {
+        return (pipe.headCache > pipe.workingTail) || ((pipe.headCache = pipe.headPos.get()) > pipe.workingTail);
+    }
+
+    public static <S extends MessageSchema> int takeMsgIdx(OffHeapPipe<S> pipe) {
+        pipe.fragmentTail = pipe.workingTail;
+        return readValue(pipe, pipe.workingTail++);
+    }
+
+    public static <S extends MessageSchema> int peekInt(OffHeapPipe<S> pipe) {
+        return readValue(pipe, pipe.workingTail);
+    }
+
+    public static <S extends MessageSchema> int takeValue(OffHeapPipe<S> pipe) {
+        return readValue(pipe, pipe.workingTail++);
+    }
+
+    public static <S extends MessageSchema> long takeLong(OffHeapPipe<S> pipe) {
+        long high = readValue(pipe, pipe.workingTail++);
+        return (high << 32) | (0xFFFFFFFFL & readValue(pipe, pipe.workingTail++));
+    }
+
+    /**
+     * Copy the next var length field into the target and return its length, -1 is returned for a null field.
+     */
+    public static <S extends MessageSchema> int takeByteArray(OffHeapPipe<S> pipe, byte[] target, int targetIdx) {
+        int meta = readValue(pipe, pipe.workingTail++);
+        int len = readValue(pipe, pipe.workingTail++);
+        if (len>0) {
+            long pos = pipe.byteMask & (pipe.blobReadBase + meta);
+            int first = (int)Math.min(len, pipe.sizeOfBlobRing-pos);
+            UNSAFE.copyMemory(null, pipe.blobAddress+pos, target, BYTE_ARRAY_OFFSET+targetIdx, first);
+            UNSAFE.copyMemory(null, pipe.blobAddress, target, BYTE_ARRAY_OFFSET+targetIdx+first, len-first);
+        }
+        return len;
+    }
+
+    public static <S extends MessageSchema> void confirmLowLevelRead(OffHeapPipe<S> pipe, int size) {
+        assert(pipe.workingTail+1 == pipe.fragmentTail+size) : "CHECK that the fragment is read with the same fields as the message defines";
+    }
+
+    public static <S extends MessageSchema> int releaseReadLock(OffHeapPipe<S> pipe) {
+        int bytesConsumedByFragment = readValue(pipe, pipe.workingTail++);
+        assert(bytesConsumedByFragment>=0) : "Bytes consumed by fragment must never be negative, was fragment written correctly?, is read positioned correctly?";
+        pipe.blobReadBase += bytesConsumedByFragment;
+        pipe.tailPos.lazySet(pipe.workingTail);
+        return bytesConsumedByFragment;
+    }
+
+    public String toString() {
+        return "OffHeapPipe slab:"+bitsOfSlabRing+" blob:"+bitsOfBlobRing+" head:"+headPos.get()+" tail:"+tailPos.get();
+    }
+
+}
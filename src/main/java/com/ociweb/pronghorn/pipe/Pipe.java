@@ -6,9 +6,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,8 +77,12 @@ public class Pipe<T extends MessageSchema> {
         final AtomicLong headPos;
 
         SlabRingHead() {
+            this(new PaddedAtomicLong());
+        }
+
+        SlabRingHead(AtomicLong headPos) {
             this.workingHeadPos = new PaddedLong();
-            this.headPos = new PaddedAtomicLong();
+            this.headPos = headPos;
         }
     }
 
@@ -352,14 +358,16 @@ public class Pipe<T extends MessageSchema> {
     //            the time slices of the graph will need to be kept for all rings to reconstruct history later.
 
 
-    private final SlabRingHead slabRingHead = new SlabRingHead();
-    private final BlobRingHead blobRingHead = new BlobRingHead();
+    //When this pipe is a broadcast consumer these are shared with the source pipe so all consumers see the same head.
+    private final SlabRingHead slabRingHead;
+    private final BlobRingHead blobRingHead;
 
     LowLevelAPIWritePositionCache llWrite; //low level write head pos cache and target
     LowLevelAPIReadPositionCache llRead; //low level read tail pos cache and target
 
     //TODO: C, add a configuration to disable this construction when we know it s not used.
     StackStateWalker ringWalker;//only needed for high level API
+    PipeMetrics metrics;//null unless metrics are attached
     
     //TODO: C, add a configuration to disable this construction when we know it s not used.
     PendingReleaseData pendingReleases;//only used when we want to release blob data async from our walking of each fragment
@@ -368,6 +376,13 @@ public class Pipe<T extends MessageSchema> {
     private final SlabRingTail slabRingTail = new SlabRingTail(); //primary working and public
     private final BlobRingTail blobRingTail = new BlobRingTail(); //primary working and public
 
+    //Broadcast support, one producer writes each fragment once and many consumers read it each with their own tail.
+    //The source holds the published tails of every consumer (including its own) and the producer is gated on the slowest.
+    //Each additional consumer is a pipe which shares the rings and head of the source.
+    private final Pipe<T> broadcastSource;
+    private AtomicLong[] broadcastTails;
+    private Pipe<T>[] broadcastConsumers; //every consumer added to the source, used to wake them when they wait
+
     //these values are only modified and used when replay is NOT in use
     //hold the publish position when batching so the batch can be flushed upon shutdown and thread context switches
     private int lastReleasedBlobTail;
@@ -437,6 +452,10 @@ public class Pipe<T extends MessageSchema> {
 	private int batchReleaseCountDownInit = 0;
 	private int batchPublishCountDown = 0;
 	private int batchPublishCountDownInit = 0;
+
+	//when adaptive the batch size is doubled or halved at the end of each batch based on the fill of the pipe
+	private int adaptivePublishBatchMax = 0; //zero when adaptive publish is off
+	private int adaptiveReleaseBatchMax = 0; //zero when adaptive release is off
 	//cas: jdoc -- This is the first mention of batch(ing).  It would really help the maintainer's comprehension of what
 	// you mean if you would explain this hugely overloaded word somewhere prior to use -- probably in the class's javadoc.
 	    //hold the publish position when batching so the batch can be flushed upon shutdown and thread context switches
@@ -444,6 +463,10 @@ public class Pipe<T extends MessageSchema> {
     private long lastPublishedSlabRingHead;
 
 	private final int debugFlags;
+	private final WaitStrategy waitStrategy;
+	//only used by wait strategies which park, the thread to unpark when the other side moves
+	private volatile Thread waitingConsumer;
+	private volatile Thread waitingProducer;
 
 	private long holdingSlabWorkingTail;
 	private int  holdingBlobWorkingTail;
@@ -461,6 +484,24 @@ public class Pipe<T extends MessageSchema> {
 
 	
     public Pipe(PipeConfig<T> config) {
+        this(config, null, false);
+    }
+
+    private Pipe(PipeConfig<T> config, Pipe<T> broadcastSource, boolean spliced) {
+
+        if (config.offHeap) {
+            throw new UnsupportedOperationException("Off heap configurations can only be used with OffHeapPipe");
+        }
+
+        this.broadcastSource = broadcastSource;
+        if (null==broadcastSource) {
+            this.slabRingHead = new SlabRingHead();
+            this.blobRingHead = new BlobRingHead();
+        } else {
+            //a spliced consumer only sees what the consumer of the source has released so its head is that tail
+            this.slabRingHead = spliced ? new SlabRingHead(broadcastSource.slabRingTail.tailPos) : broadcastSource.slabRingHead;
+            this.blobRingHead = broadcastSource.blobRingHead;
+        }
 
         byte primaryBits = config.slabBits;
         byte byteBits = config.blobBits;
@@ -468,6 +509,7 @@ public class Pipe<T extends MessageSchema> {
         this.schema = config.schema;
 
         debugFlags = config.debugFlags;
+        waitStrategy = config.waitStrategy;
                 
 
         //Assign the immutable universal id value for this specific instance
@@ -506,6 +548,79 @@ public class Pipe<T extends MessageSchema> {
         }
     }
  
+    /**
+     * Build an additional consumer of the source pipe.  The producer writes each fragment once into the source and
+     * every consumer (the source itself and each pipe returned here) reads it with its own independent tail. The
+     * producer only sees room for new writes once the slowest consumer has released the space.
+     *
+     * All broadcast consumers must be added before any data is written and the source must be init before the
+     * consumers since they share its rings. The returned pipe may only be read, all writes must go to the source.
+     */
+    public static <S extends MessageSchema> Pipe<S> broadcastConsumer(Pipe<S> source) {
+        return addBroadcastConsumer(source, false);
+    }
+
+    /**
+     * Like a broadcast consumer but the returned pipe can only read fragments after the consumer of the source has
+     * released them. Used by PipeSplice so a routing stage can forward fragments without copying them.
+     */
+    static <S extends MessageSchema> Pipe<S> splicedConsumer(Pipe<S> source) {
+        return addBroadcastConsumer(source, true);
+    }
+
+    private static <S extends MessageSchema> Pipe<S> addBroadcastConsumer(Pipe<S> source, boolean spliced) {
+        if (null!=source.broadcastSource) {
+            throw new UnsupportedOperationException("Broadcast consumers must be added to the original source pipe");
+        }
+        if (Pipe.headPosition(source)!=0 || Pipe.workingHeadPosition(source)!=0) {
+            throw new UnsupportedOperationException("Broadcast consumers must be added before anything is written to the source pipe");
+        }
+
+        Pipe<S> consumer = new Pipe<S>(source.config(), source, spliced);
+
+        AtomicLong[] tails;
+        if (null==source.broadcastTails) {
+            tails = new AtomicLong[]{source.slabRingTail.tailPos, consumer.slabRingTail.tailPos};
+        } else {
+            tails = Arrays.copyOf(source.broadcastTails, source.broadcastTails.length+1);
+            tails[tails.length-1] = consumer.slabRingTail.tailPos;
+        }
+        source.broadcastTails = tails;
+        source.broadcastConsumers = null==source.broadcastConsumers ? new Pipe[]{consumer} : appendConsumer(source.broadcastConsumers, consumer);
+        return consumer;
+    }
+
+    private static <S extends MessageSchema> Pipe<S>[] appendConsumer(Pipe<S>[] consumers, Pipe<S> consumer) {
+        Pipe<S>[] result = Arrays.copyOf(consumers, consumers.length+1);
+        result[consumers.length] = consumer;
+        return result;
+    }
+
+    public static <S extends MessageSchema> boolean isBroadcastConsumer(Pipe<S> pipe) {
+        return null!=pipe.broadcastSource;
+    }
+
+    public static <S extends MessageSchema> int broadcastConsumerCount(Pipe<S> pipe) {
+        Pipe<S> source = null==pipe.broadcastSource ? pipe : pipe.broadcastSource;
+        return null==source.broadcastTails ? 1 : source.broadcastTails.length;
+    }
+
+    /**
+     * Tail position which limits the producer.  When there are broadcast consumers this is the slowest of them.
+     */
+    public static <S extends MessageSchema> long producerTailPosition(Pipe<S> pipe) {
+        return null==pipe.broadcastTails ? pipe.slabRingTail.tailPos.get() : slowestBroadcastTail(pipe.broadcastTails);
+    }
+
+    private static long slowestBroadcastTail(AtomicLong[] tails) {
+        long result = Long.MAX_VALUE;
+        int i = tails.length;
+        while (--i>=0) {
+            result = Math.min(result, tails[i].get());
+        }
+        return result;
+    }
+
     private AtomicBoolean isInBlobFieldWrite = new AtomicBoolean(false);
     
     public static <S extends MessageSchema> boolean isInBlobFieldWrite(Pipe<S> pipe) {
@@ -555,6 +670,10 @@ public class Pipe<T extends MessageSchema> {
         return pipe.schema == schema;
     }
     
+    public static <S extends MessageSchema> S schema(Pipe<S> pipe) {
+        return pipe.schema;
+    }
+
     public static <S extends MessageSchema> String schemaName(Pipe<S> pipe) {
         return null==pipe.schema? "NoSchemaFor "+Pipe.from(pipe).name  :pipe.schema.getClass().getSimpleName();
     }
@@ -618,6 +737,7 @@ public class Pipe<T extends MessageSchema> {
     public static <S extends MessageSchema> void setReleaseBatchSize(Pipe<S> pipe, int size) {
 
     	validateBatchSize(pipe, size);
+    	pipe.adaptiveReleaseBatchMax = 0;
 
     	pipe.batchReleaseCountDownInit = size;
     	pipe.batchReleaseCountDown = size;
@@ -626,6 +746,7 @@ public class Pipe<T extends MessageSchema> {
     public static <S extends MessageSchema> void setPublishBatchSize(Pipe<S> pipe, int size) {
 
     	validateBatchSize(pipe, size);
+    	pipe.adaptivePublishBatchMax = 0;
 
     	pipe.batchPublishCountDownInit = size;
     	pipe.batchPublishCountDown = size;
@@ -656,6 +777,55 @@ public class Pipe<T extends MessageSchema> {
 
     }
 
+    /**
+     * Publish batch size is adjusted by the producer at the end of each batch. When the pipe is nearly empty the consumer
+     * is keeping up so the batch shrinks toward 1 for the lowest latency. When the pipe fills the batch grows toward the
+     * same limit as setMaxPublishBatchSize so fewer head updates are made while the consumer catches up.
+     * As with any publish batching the producer must call publishAllBatchedWrites before it goes idle.
+     * Must be called by the producer before the first write.
+     */
+    public static <S extends MessageSchema> void setAdaptivePublishBatchSize(Pipe<S> pipe) {
+        pipe.adaptivePublishBatchMax = Math.max(1, computeMaxBatchSize(pipe, 3));
+        pipe.batchPublishCountDownInit = 1;
+        pipe.batchPublishCountDown = 1;
+    }
+
+    /**
+     * Release batch size is adjusted by the consumer at the end of each batch. When little content is waiting the
+     * producer has plenty of room so the batch grows and fewer tail updates are made. When the pipe is nearly full the
+     * producer may be waiting for room so the batch shrinks toward 1.
+     * Must be called by the consumer before the first read.
+     */
+    public static <S extends MessageSchema> void setAdaptiveReleaseBatchSize(Pipe<S> pipe) {
+        pipe.adaptiveReleaseBatchMax = Math.max(1, computeMaxBatchSize(pipe, 3));
+        pipe.batchReleaseCountDownInit = 1;
+        pipe.batchReleaseCountDown = 1;
+    }
+
+    private static <S extends MessageSchema> void adaptPublishBatch(Pipe<S> pipe) {
+        //one volatile read per batch, this also refreshes the producer cache of the tail
+        long fill = pipe.slabRingHead.workingHeadPos.value - (pipe.llRead.llrTailPosCache = producerTailPosition(pipe));
+        pipe.batchPublishCountDownInit = adaptBatch(pipe.batchPublishCountDownInit, fill, pipe.sizeOfSlabRing, pipe.adaptivePublishBatchMax, true);
+    }
+
+    private static <S extends MessageSchema> void adaptReleaseBatch(Pipe<S> pipe) {
+        //one volatile read per batch, this also refreshes the consumer cache of the head
+        long fill = (pipe.llWrite.llwHeadPosCache = pipe.slabRingHead.headPos.get()) - pipe.slabRingTail.workingTailPos.value;
+        pipe.batchReleaseCountDownInit = adaptBatch(pipe.batchReleaseCountDownInit, fill, pipe.sizeOfSlabRing, pipe.adaptiveReleaseBatchMax, false);
+    }
+
+    static int adaptBatch(int batch, long fill, int size, int max, boolean growWhenFull) {
+        boolean full = fill >= (size>>1);
+        boolean empty = fill <= (size>>3);
+        if (growWhenFull ? full : empty) {
+            return Math.min(max, Math.max(1, batch<<1));
+        }
+        if (growWhenFull ? empty : full) {
+            return Math.max(1, batch>>1);
+        }
+        return batch;
+    }
+
 
 //cas: naming -- a couple of things, neither new.  Obviously the name of the buffer, bytes.  Also the use of base in
 // the variable buffer, but not in the fixed.  Otoh, by now, maybe the interested reader would already understand.
@@ -721,7 +891,10 @@ public class Pipe<T extends MessageSchema> {
      */
     public PipeConfig<T> config() {
         //TODO:M, this creates garbage and we should just hold the config object instead of copying the values out.  Then return the same instance here.
-        return new PipeConfig<T>(bitsOfSlabRing, bitsOfBlogRing, blobConstBuffer, schema);
+        PipeConfig<T> result = new PipeConfig<T>(bitsOfSlabRing, bitsOfBlogRing, blobConstBuffer, schema);
+        result.debugFlags = debugFlags;
+        result.waitStrategy = waitStrategy;
+        return result;
     }
 
 
@@ -779,8 +952,16 @@ public class Pipe<T extends MessageSchema> {
         llWrite.llwConfirmedWrittenPosition = toPos;
 
         try {
-        this.blobRing = new byte[sizeOfBlobRing];
-        this.slabRing = new int[sizeOfSlabRing];
+        if (null==broadcastSource) {
+            this.blobRing = new byte[sizeOfBlobRing];
+            this.slabRing = new int[sizeOfSlabRing];
+        } else {
+            if (!isInit(broadcastSource)) {
+                throw new UnsupportedOperationException("The broadcast source pipe must be init before its consumers");
+            }
+            this.blobRing = broadcastSource.blobRing;
+            this.slabRing = broadcastSource.slabRing;
+        }
         this.blobRingLookup = new byte[][] {blobRing,blobConstBuffer};
         } catch (OutOfMemoryError oome) {
         	log.warn("attempted to allocate Slab:{} Blob:{}", sizeOfSlabRing, sizeOfBlobRing, oome);
@@ -898,6 +1079,44 @@ public class Pipe<T extends MessageSchema> {
         StackStateWalker.reset(ringWalker, structuredPos);
     }
 
+    /**
+     * Restore the published head and tail positions of a pipe whose ring content has already been reloaded.
+     * Unlike reset the head and tail are not the same so the fragments between them are available for reading.
+     * Only used by PipeCheckpoint before any producer or consumer has started using the pipe.
+     */
+    static <S extends MessageSchema> void restorePositions(Pipe<S> pipe, long tailPos, long headPos, int blobTailPos, int blobHeadPos) {
+        assert(isInit(pipe)) : "Pipe must be init before positions can be restored";
+        assert(headPos-tailPos <= pipe.sizeOfSlabRing) : "Restored content is larger than the pipe";
+
+        pipe.slabRingTail.workingTailPos.value = tailPos;
+        pipe.slabRingTail.tailPos.set(tailPos);
+        pipe.slabRingHead.workingHeadPos.value = headPos;
+        pipe.slabRingHead.headPos.set(headPos);
+
+        pipe.llWrite.llwHeadPosCache = headPos;
+        pipe.llWrite.llwConfirmedWrittenPosition = tailPos;
+        pipe.llRead.llrTailPosCache = tailPos;
+        pipe.llRead.llwConfirmedReadPosition = headPos - pipe.sizeOfSlabRing;
+
+        pipe.lastReleasedSlabTail = tailPos;
+        pipe.lastReleasedBlobTail = blobTailPos;
+        pipe.lastPublishedSlabRingHead = headPos;
+        pipe.lastPublishedBlobRingHead = blobHeadPos;
+
+        pipe.blobRingHead.byteWorkingHeadPos.value = blobHeadPos;
+        PaddedInt.set(pipe.blobRingHead.bytesHeadPos, blobHeadPos);
+        pipe.blobWriteBase = blobHeadPos;
+        pipe.blobWriteLastConsumedPos = blobHeadPos;
+
+        pipe.blobRingTail.byteWorkingTailPos.value = blobTailPos;
+        PaddedInt.set(pipe.blobRingTail.bytesTailPos, blobTailPos);
+        pipe.blobReadBase = pipe.byteMask & blobTailPos;
+
+        StackStateWalker.resetCursorState(pipe.ringWalker);
+        pipe.ringWalker.nextWorkingTail = tailPos;
+        pipe.ringWalker.nextWorkingHead = headPos;
+    }
+
 
 
     public static <S extends MessageSchema> void writeFieldToOutputStream(Pipe<S> pipe, OutputStream out) throws IOException {
@@ -1089,14 +1308,9 @@ public class Pipe<T extends MessageSchema> {
 
     public static int convertToUTF8(final char[] charSeq, final int charSeqOff, final int charSeqLength, final byte[] targetBuf, final int targetIdx, final int targetMask) {
     	
-    	int target = targetIdx;				
-        int c = 0;
-        while (c < charSeqLength) {
-        	target = encodeSingleChar((int) charSeq[charSeqOff+c++], targetBuf, targetMask, target);
-        }
-        //NOTE: the above loop will keep looping around the target buffer until done and will never cause an array out of bounds.
+        //NOTE: this will keep looping around the target buffer until done and will never cause an array out of bounds.
         //      the length returned however will be larger than targetMask, this should be treated as an error.
-        return target-targetIdx;//length;
+        return copyUTF8ToByte(charSeq, charSeqOff, targetBuf, targetMask, targetIdx, charSeqLength);
     }
 
     public static int convertToUTF8(final CharSequence charSeq, final int charSeqOff, final int charSeqLength, final byte[] targetBuf, final int targetIdx, final int targetMask) {
@@ -1111,14 +1325,9 @@ public class Pipe<T extends MessageSchema> {
          * 
          */
     	
-    	int target = targetIdx;				
-        int c = 0;
-        while (c < charSeqLength) {
-        	target = encodeSingleChar((int) charSeq.charAt(charSeqOff+c++), targetBuf, targetMask, target);
-        }
-        //NOTE: the above loop will keep looping around the target buffer until done and will never cause an array out of bounds.
+        //NOTE: this will keep looping around the target buffer until done and will never cause an array out of bounds.
         //      the length returned however will be larger than targetMask, this should be treated as an error.
-        return target-targetIdx;//length;
+        return copyUTF8ToByte(charSeq, charSeqOff, targetBuf, targetMask, targetIdx, charSeqLength);
     }
 
     public static <S extends MessageSchema> void appendFragment(Pipe<S> input, Appendable target, int cursor) {
@@ -1324,6 +1533,44 @@ public class Pipe<T extends MessageSchema> {
 	    }
 	}
 	
+	/**
+	 * Parse the ASCII digits of a blob field without building a String.
+	 */
+	public static <S extends MessageSchema> long readTextAsLong(Pipe<S> pipe, int meta, int len) {
+		if (meta < 0) {
+			return ASCIINumbers.parseLong(pipe.blobConstBuffer, PipeReader.POS_CONST_MASK & meta, PipeReader.POS_CONST_MASK, len);
+		} else {
+			return ASCIINumbers.parseLong(pipe.blobRing, restorePosition(pipe, meta), pipe.byteMask, len);
+		}
+	}
+
+	public static <S extends MessageSchema> int readTextAsInt(Pipe<S> pipe, int meta, int len) {
+		if (meta < 0) {
+			return ASCIINumbers.parseInt(pipe.blobConstBuffer, PipeReader.POS_CONST_MASK & meta, PipeReader.POS_CONST_MASK, len);
+		} else {
+			return ASCIINumbers.parseInt(pipe.blobRing, restorePosition(pipe, meta), pipe.byteMask, len);
+		}
+	}
+
+	/**
+	 * Reverse of addDecimalAsASCII, returns the mantissa for the requested number of places.
+	 */
+	public static <S extends MessageSchema> long readTextAsDecimalMantissa(Pipe<S> pipe, int meta, int len, int places) {
+		if (meta < 0) {
+			return ASCIINumbers.parseDecimalMantissa(pipe.blobConstBuffer, PipeReader.POS_CONST_MASK & meta, PipeReader.POS_CONST_MASK, len, places);
+		} else {
+			return ASCIINumbers.parseDecimalMantissa(pipe.blobRing, restorePosition(pipe, meta), pipe.byteMask, len, places);
+		}
+	}
+
+	public static <S extends MessageSchema> double readTextAsDouble(Pipe<S> pipe, int meta, int len) {
+		if (meta < 0) {
+			return ASCIINumbers.parseDouble(pipe.blobConstBuffer, PipeReader.POS_CONST_MASK & meta, PipeReader.POS_CONST_MASK, len);
+		} else {
+			return ASCIINumbers.parseDouble(pipe.blobRing, restorePosition(pipe, meta), pipe.byteMask, len);
+		}
+	}
+
    public static <S extends MessageSchema, A extends Appendable> A readOptionalASCII(Pipe<S> pipe, A target, int meta, int len) {
         if (len<0) {
             return null;
@@ -1469,12 +1716,22 @@ public class Pipe<T extends MessageSchema> {
 
 	private static <S extends MessageSchema> Appendable readUTF8Ring(Pipe<S> pipe, int bytesLen, Appendable target, int ringPos) {
 		  try{
-			  long charAndPos = ((long)ringPos)<<32;
-			  long limit = ((long)ringPos+bytesLen)<<32;
-
-			  while (charAndPos<limit) {
-			      charAndPos = decodeUTF8Fast(pipe.blobRing, charAndPos, pipe.byteMask);
-			      target.append((char)charAndPos);
+			  final byte[] buffer = pipe.blobRing;
+			  final int mask = pipe.byteMask;
+			  long pos = ringPos;
+			  final long limit = pos+bytesLen;
+
+			  while (pos<limit) {
+			      byte b = buffer[mask & (int)pos];
+			      if (b >= 0) {
+			          //ASCII, no need to build the packed char and position
+			          target.append((char)b);
+			          pos++;
+			      } else {
+			          long charAndPos = decodeUTF8Fast(buffer, pos<<32, mask);
+			          target.append((char)charAndPos);
+			          pos = charAndPos>>32;
+			      }
 			  }
 		  } catch (IOException e) {
 			  throw new RuntimeException(e);
@@ -1565,17 +1822,101 @@ public class Pipe<T extends MessageSchema> {
 		pipe.knownPositionOfEOF = (int)pipe.slabRingHead.workingHeadPos.value +  from(pipe).templateOffset;
 		pipe.slabRing[pipe.mask & (int)pipe.knownPositionOfEOF]    = -1;
 		pipe.slabRing[pipe.mask & ((int)pipe.knownPositionOfEOF+1)] = 0;
+		if (null!=pipe.metrics) {
+		    //the consumer records the release of the EOF so its publish time slot must not hold an older sample
+		    PipeMetrics.published(pipe.metrics, pipe.slabRingHead.workingHeadPos.value+Pipe.EOF_SIZE-1, 0);
+		}
 
-		pipe.slabRingHead.headPos.lazySet(pipe.slabRingHead.workingHeadPos.value = pipe.slabRingHead.workingHeadPos.value + Pipe.EOF_SIZE);
+		publishHead(pipe, pipe.slabRingHead.workingHeadPos.value = pipe.slabRingHead.workingHeadPos.value + Pipe.EOF_SIZE);
 
 	}
 
 	public static void copyBytesFromToRing(byte[] source, int sourceloc, int sourceMask, byte[] target, int targetloc, int targetMask, int length) {
-		copyBytesFromToRingMasked(source, sourceloc & sourceMask, (sourceloc + length) & sourceMask, target, targetloc & targetMask, (targetloc + length) & targetMask,	length);
+		final int rStart = sourceloc & sourceMask;
+		final int tStart = targetloc & targetMask;
+		if (isNotWrapping(rStart, sourceMask, length) && isNotWrapping(tStart, targetMask, length)) {
+			//common case, neither side wraps so this is a single copy
+			System.arraycopy(source, rStart, target, tStart, length);
+		} else {
+			copyBytesFromToRingMasked(source, rStart, (sourceloc + length) & sourceMask, target, tStart, (targetloc + length) & targetMask,	length);
+		}
 	}
 
 	public static void copyIntsFromToRing(int[] source, int sourceloc, int sourceMask, int[] target, int targetloc, int targetMask, int length) {
-		copyIntsFromToRingMasked(source, sourceloc & sourceMask, (sourceloc + length) & sourceMask, target, targetloc & targetMask, (targetloc + length) & targetMask, length);
+		final int rStart = sourceloc & sourceMask;
+		final int tStart = targetloc & targetMask;
+		if (isNotWrapping(rStart, sourceMask, length) && isNotWrapping(tStart, targetMask, length)) {
+			//common case, neither side wraps so this is a single copy
+			System.arraycopy(source, rStart, target, tStart, length);
+		} else {
+			copyIntsFromToRingMasked(source, rStart, (sourceloc + length) & sourceMask, target, tStart, (targetloc + length) & targetMask, length);
+		}
+	}
+
+	private static boolean isNotWrapping(int maskedStart, int mask, int length) {
+		//mask is treated as unsigned so the 0xFFFFFFFF used for const buffers never wraps
+		return ((long)maskedStart)+length <= (0xFFFFFFFFL & mask)+1L;
+	}
+
+	/**
+	 * Low level API bulk copy of every fragment already published on the input, the slab and blob runs are each
+	 * moved with at most a few array copies instead of field by field. Both pipes must use the same schema and
+	 * neither may be part way through a fragment. The fragment trailing byte counts are copied as is so the blob
+	 * positions remain valid on the output.
+	 * 
+	 * @return count of slab ints copied, zero if there was nothing to copy or not enough room on the output.
+	 */
+	public static <S extends MessageSchema> int copyPublishedRun(Pipe<S> input, Pipe<S> output) {
+		assert(Pipe.from(input) == Pipe.from(output)) : "Both pipes must use the same schema";
+		if (!hasContentToRead(input)) {
+			return 0;
+		}
+		final long slabStart = getWorkingTailPosition(input);
+		final long slabStop = input.llWrite.llwHeadPosCache;
+		final int slabLength = (int)(slabStop - slabStart);
+		final int blobStart = getWorkingBlobRingTailPosition(input);
+		//the blob head may already hold bytes of fragments not yet published so only the fragments in the run are counted
+		final int blobLength = publishedRunBlobLength(input, slabStart, slabStop);
+		final int blobStop = BYTES_WRAP_MASK & (blobStart + blobLength);
+
+		if (slabLength > output.sizeOfSlabRing 
+			|| blobLength > output.sizeOfBlobRing - (output.byteMask & (getBlobWorkingHeadPosition(output) - getBlobRingTailPosition(output)))
+			|| !hasRoomForWrite(output, slabLength)) {
+			return 0;
+		}
+
+		copyIntsFromToRing(input.slabRing, (int)slabStart, input.mask, output.slabRing, (int)workingHeadPosition(output), output.mask, slabLength);
+		copyBytesFromToRing(input.blobRing, blobStart, input.byteMask, output.blobRing, getBlobWorkingHeadPosition(output), output.byteMask, blobLength);
+
+		//the input is consumed up to the published head
+		setWorkingTailPosition(input, slabStop);
+		setBytesWorkingTail(input, blobStop);
+		markBytesReadBase(input);
+		confirmLowLevelRead(input, slabLength);
+		releaseBatchedReads(input, blobStop, slabStop);
+
+		//the output is written as if each fragment had been published one at a time
+		addAndGetWorkingHead(output, slabLength);
+		addAndGetBytesWorkingHeadPosition(output, blobLength);
+		markBytesWriteBase(output);
+		confirmLowLevelWrite(output, slabLength);
+		output.blobWriteLastConsumedPos = getBlobWorkingHeadPosition(output);
+		publishHeadPositions(output);
+
+		return slabLength;
+	}
+
+	private static <S extends MessageSchema> int publishedRunBlobLength(Pipe<S> input, long slabStart, long slabStop) {
+		final int[] slab = input.slabRing;
+		final int mask = input.mask;
+		int blobLength = 0;
+		long pos = slabStart;
+		while (pos < slabStop) {
+			pos += sizeOf(input, slab[mask & (int)pos]);
+			blobLength += slab[mask & (int)(pos-1)];
+		}
+		assert(pos == slabStop) : "Published run must end on a fragment boundary";
+		return blobLength;
 	}
 
 
@@ -1694,15 +2035,9 @@ public class Pipe<T extends MessageSchema> {
 		//max places is value for -2B therefore its 11 places so we start out that far and work backwards.
 		//this will leave a gap but that is not a problem.
 		byte[] target = pipe.blobRing;
-		int tmp = Math.abs(value);
 		int max = idx;
-		do {
-			//do not touch these 2 lines they make use of secret behavior in hot spot that does a single divide.
-			int t = tmp/10;
-			int r = tmp%10;
-			target[pipe.byteMask&--idx] = (byte)('0'+r);
-			tmp = t;
-		} while (0!=tmp);
+		//digits are written two at a time from the negative value so MIN_VALUE needs no special case
+		idx = ASCIINumbers.writeDigitsBackwards(target, pipe.byteMask, value<0 ? value : -value, idx);
 		target[pipe.byteMask& (idx-1)] = (byte)'-';
 		//to make it positive we jump over the sign.
 		idx -= (1&(value>>31));
@@ -1723,15 +2058,9 @@ public class Pipe<T extends MessageSchema> {
 		//max places is value for -2B therefore its 11 places so we start out that far and work backwards.
 		//this will leave a gap but that is not a problem.
 		byte[] target = pipe.blobRing;
-		long tmp = Math.abs(value);
 		int max = idx;
-		do {
-			//do not touch these 2 lines they make use of secret behavior in hot spot that does a single divide.
-			long t = tmp/10;
-			long r = tmp%10;
-			target[pipe.byteMask&--idx] = (byte)('0'+r);
-			tmp = t;
-		} while (0!=tmp);
+		//digits are written two at a time from the negative value so MIN_VALUE needs no special case
+		idx = ASCIINumbers.writeDigitsBackwards(target, pipe.byteMask, value<0 ? value : -value, idx);
 		target[pipe.byteMask& (idx-1)] = (byte)'-';
 		//to make it positive we jump over the sign.
 		idx -= (1&(value>>63));
@@ -1752,18 +2081,11 @@ public class Pipe<T extends MessageSchema> {
         //max places is value for -2B therefore its 11 places so we start out that far and work backwards.
         //this will leave a gap but that is not a problem.
         byte[] target = pipe.blobRing;
-        long tmp = Math.abs(value);
         int max = idx;
 
-        do {
-            //do not touch these 2 lines they make use of secret behavior in hot spot that does a single divide.
-            long t = tmp/10;
-            long r = tmp%10;
-            target[pipe.byteMask&--idx] = (byte)('0'+r);
-            tmp = t;
-            chars--;
-        } while (0!=tmp);
-        while(--chars>=0) {
+        idx = ASCIINumbers.writeDigitsBackwards(target, pipe.byteMask, value<0 ? value : -value, idx);
+        int limit = max-chars;
+        while(idx>limit) {
             target[pipe.byteMask&--idx] = '0';
         }
 
@@ -2003,9 +2325,22 @@ public class Pipe<T extends MessageSchema> {
 
 	private static int copyUTF8ToByte(CharSequence source, int sourceIdx, byte[] target, int targetMask, int targetIdx, int charCount) {
 	    int pos = targetIdx;
-	    int c = 0;
-	    while (c < charCount) {
-	        pos = encodeSingleChar((int) source.charAt(sourceIdx+c++), target, targetMask, pos);
+	    int c = sourceIdx;
+	    final int limit = sourceIdx+charCount;
+	    while (c < limit) {
+	        //ASCII runs are copied without masking each byte, up to the end of the text or the end of the ring
+	        int p = targetMask & pos;
+	        final int runLimit = c + 1 + (int)Math.min(limit - c - 1, (0xFFFFFFFFL & targetMask) - (0xFFFFFFFFL & p));
+	        final int runStart = c;
+	        char ch;
+	        while (c < runLimit && (ch = source.charAt(c)) < 0x80) {
+	            target[p++] = (byte)ch;
+	            c++;
+	        }
+	        pos += (c - runStart);
+	        if (c < runLimit) {
+	            pos = encodeSingleChar((int) source.charAt(c++), target, targetMask, pos);
+	        }
 	    }
 	    return pos - targetIdx;
 	}
@@ -2028,9 +2363,22 @@ public class Pipe<T extends MessageSchema> {
 	private static <S extends MessageSchema> int copyUTF8ToByte(char[] source, int sourceIdx, byte[] target, int targetMask, int targetIdx, int charCount) {
 
 	    int pos = targetIdx;
-	    int c = 0;
-	    while (c < charCount) {
-	        pos = encodeSingleChar((int) source[sourceIdx+c++], target, targetMask, pos);
+	    int c = sourceIdx;
+	    final int limit = sourceIdx+charCount;
+	    while (c < limit) {
+	        //ASCII runs are copied without masking each byte, up to the end of the text or the end of the ring
+	        int p = targetMask & pos;
+	        final int runLimit = c + 1 + (int)Math.min(limit - c - 1, (0xFFFFFFFFL & targetMask) - (0xFFFFFFFFL & p));
+	        final int runStart = c;
+	        char ch;
+	        while (c < runLimit && (ch = source[c]) < 0x80) {
+	            target[p++] = (byte)ch;
+	            c++;
+	        }
+	        pos += (c - runStart);
+	        if (c < runLimit) {
+	            pos = encodeSingleChar((int) source[c++], target, targetMask, pos);
+	        }
 	    }
 	    return pos - targetIdx;
 	}
@@ -2440,9 +2788,28 @@ public class Pipe<T extends MessageSchema> {
         return result;
     }
 
+    /**
+     * Release the next fragment without reading any of its fields, must be called at the start of a fragment
+     * once hasContentToRead has returned true.  Returns the msgIdx of the skipped fragment.
+     */
+    public static <S extends MessageSchema> int skipFragment(Pipe<S> pipe) {
+        int msgIdx = takeMsgIdx(pipe);
+        int size = sizeOf(pipe, msgIdx);
+        //move to the trailing byte count so the release below moves the blob base the same as a full read
+        long trailingPos = pipe.slabRingTail.workingTailPos.value += (size-2);
+        int bytes = pipe.slabRing[pipe.mask & (int)trailingPos];
+        pipe.blobRingTail.byteWorkingTailPos.value = pipe.byteMask & (bytes+pipe.blobRingTail.byteWorkingTailPos.value);
+        confirmLowLevelRead(pipe, size);
+        releaseReadLock(pipe);
+        return msgIdx;
+    }
+
     public static <S extends MessageSchema> int releaseReadLock(Pipe<S> pipe) {
         int bytesConsumedByFragment = takeValue(pipe);
         assert(bytesConsumedByFragment>=0) : "Bytes consumed by fragment must never be negative, was fragment written correctly?, is read positioned correctly?";
+        if (null!=pipe.metrics) {
+            PipeMetrics.released(pipe.metrics, pipe.slabRingTail.workingTailPos.value-1, bytesConsumedByFragment);
+        }
         Pipe.markBytesReadBase(pipe, bytesConsumedByFragment);
         assert(Pipe.contentRemaining(pipe)>=0); 
         batchedReleasePublish(pipe, pipe.blobRingTail.byteWorkingTailPos.value, pipe.slabRingTail.workingTailPos.value);
@@ -2477,7 +2844,10 @@ public class Pipe<T extends MessageSchema> {
            setBytesTail(pipe, workingBlobRingTailPosition);
            //NOTE: the working tail is in use as part of the read and should not be modified
            //      this method only modifies the externally visible tail to let writers see it.
-           pipe.slabRingTail.tailPos.lazySet(nextWorkingTail);
+           publishTail(pipe, nextWorkingTail);
+           if (0!=pipe.adaptiveReleaseBatchMax) {
+               adaptReleaseBatch(pipe);
+           }
            beginNewReleaseBatch(pipe);        
         } else {
            storeUnpublishedTail(pipe, nextWorkingTail, workingBlobRingTailPosition);            
@@ -2499,7 +2869,10 @@ public class Pipe<T extends MessageSchema> {
 
         if (pipe.lastReleasedSlabTail > pipe.slabRingTail.tailPos.get()) {
             PaddedInt.set(pipe.blobRingTail.bytesTailPos,pipe.lastReleasedBlobTail);
-            pipe.slabRingTail.tailPos.lazySet(pipe.lastReleasedSlabTail);
+            publishTail(pipe, pipe.lastReleasedSlabTail);
+            if (0!=pipe.adaptiveReleaseBatchMax) {
+                adaptReleaseBatch(pipe);
+            }
             pipe.batchReleaseCountDown = pipe.batchReleaseCountDownInit;
         }
 
@@ -2529,7 +2902,7 @@ public class Pipe<T extends MessageSchema> {
         
         
         PaddedInt.set(pipe.blobRingTail.bytesTailPos, newTailBytesToPublish);
-        pipe.slabRingTail.tailPos.lazySet(newTailToPublish);
+        publishTail(pipe, newTailToPublish);
         pipe.batchReleaseCountDown = pipe.batchReleaseCountDownInit;
     }
 
@@ -2538,7 +2911,7 @@ public class Pipe<T extends MessageSchema> {
 
 			int i = pipe.blobRingTail.byteWorkingTailPos.value= pipe.blobRingHead.byteWorkingHeadPos.value;
             PaddedInt.set(pipe.blobRingTail.bytesTailPos,i);
-			pipe.slabRingTail.tailPos.lazySet(pipe.slabRingTail.workingTailPos.value= pipe.slabRingHead.workingHeadPos.value);
+			publishTail(pipe, pipe.slabRingTail.workingTailPos.value= pipe.slabRingHead.workingHeadPos.value);
 
     }
 
@@ -2590,10 +2963,13 @@ public class Pipe<T extends MessageSchema> {
 
     	if (pipe.lastPublishedSlabRingHead>pipe.slabRingHead.headPos.get()) {
     		PaddedInt.set(pipe.blobRingHead.bytesHeadPos,pipe.lastPublishedBlobRingHead);
-    		pipe.slabRingHead.headPos.lazySet(pipe.lastPublishedSlabRingHead);
+    		publishHead(pipe, pipe.lastPublishedSlabRingHead);
     	}
 
 		assert(debugHeadAssignment(pipe));
+		if (0!=pipe.adaptivePublishBatchMax) {
+		    adaptPublishBatch(pipe);
+		}
 		pipe.batchPublishCountDown = pipe.batchPublishCountDownInit;
     }
 
@@ -2612,8 +2988,11 @@ public class Pipe<T extends MessageSchema> {
 	    //TODO: need way to test if publish was called on an input ? may be much easer to detect missing publish. or extra release.
 	    if ((--pipe.batchPublishCountDown<=0)) {
 	        PaddedInt.set(pipe.blobRingHead.bytesHeadPos,pipe.blobRingHead.byteWorkingHeadPos.value);
-	        pipe.slabRingHead.headPos.lazySet(pipe.slabRingHead.workingHeadPos.value);
+	        publishHead(pipe, pipe.slabRingHead.workingHeadPos.value);
 	        assert(debugHeadAssignment(pipe));
+	        if (0!=pipe.adaptivePublishBatchMax) {
+	            adaptPublishBatch(pipe);
+	        }
 	        pipe.batchPublishCountDown = pipe.batchPublishCountDownInit;
 	    } else {
 	        storeUnpublishedHead(pipe);
@@ -2649,42 +3028,120 @@ public class Pipe<T extends MessageSchema> {
     //where these spin locks are commonly used.
 
     public static <S extends MessageSchema> void spinBlockForRoom(Pipe<S> pipe, int size) {
+        int iteration = 0;
         while (!hasRoomForWrite(pipe, size)) {
-            spinWork(pipe);
+            spinWork(pipe, iteration++, false);
         }
     }
 
     @Deprecated //use spinBlockForRoom then confirm the write afterwords
     public static <S extends MessageSchema> long spinBlockOnTail(long lastCheckedValue, long targetValue, Pipe<S> pipe) {
+        if (null!=pipe.broadcastTails) {
+            //the cached value may have come from this pipes own tail which is not the slowest consumer
+            lastCheckedValue = Math.min(lastCheckedValue, producerTailPosition(pipe));
+        }
+        int iteration = 0;
     	while (null==pipe.slabRing || lastCheckedValue < targetValue) {
-    		spinWork(pipe);
-		    lastCheckedValue = pipe.slabRingTail.tailPos.longValue();
+    		spinWork(pipe, iteration++, false);
+		    lastCheckedValue = producerTailPosition(pipe);
 		}
 		return lastCheckedValue;
     }
 
     public static <S extends MessageSchema> void spinBlockForContent(Pipe<S> pipe) {
+        int iteration = 0;
         while (!hasContentToRead(pipe)) {
-            spinWork(pipe);
+            spinWork(pipe, iteration++, true);
         }
     }
 
     //Used by RingInputStream to duplicate contract behavior,  TODO: AA rename to waitForAvailableContent or blockUntilContentReady?
     public static <S extends MessageSchema> long spinBlockOnHead(long lastCheckedValue, long targetValue, Pipe<S> pipe) {
+        int iteration = 0;
     	while ( lastCheckedValue < targetValue) {
-    		spinWork(pipe);
+    		spinWork(pipe, iteration++, true);
 		    lastCheckedValue = pipe.slabRingHead.headPos.get();
 		}
 		return lastCheckedValue;
     }
 
-	private static <S extends MessageSchema> void spinWork(Pipe<S> pipe) {
-		Thread.yield();//needed for now but re-evaluate performance impact
+	private static <S extends MessageSchema> void spinWork(Pipe<S> pipe, int iteration, boolean forContent) {
+		pipe.waitStrategy.idle(pipe, iteration, forContent);
 		if (isShutdown(pipe) || Thread.currentThread().isInterrupted()) {
 			throw null!=pipe.firstShutdownCaller ? pipe.firstShutdownCaller : new PipeException("Unexpected shutdown");
 		}
 	}
 
+	static void registerWaiter(Pipe<?> pipe, boolean forContent) {
+		if (forContent) {
+			pipe.waitingConsumer = Thread.currentThread();
+		} else {
+			//producers of broadcast consumers wait on the source pipe
+			(null==pipe.broadcastSource ? pipe : pipe.broadcastSource).waitingProducer = Thread.currentThread();
+		}
+	}
+
+	//A waiter registers itself and then checks the position again. When waiters are woken the position is stored with
+	//a full volatile write so it can not be reordered after the read of the waiter, otherwise the wake up can be lost.
+	private static <S extends MessageSchema> void publishHead(Pipe<S> pipe, long head) {
+		if (pipe.waitStrategy.wakesWaiters) {
+			pipe.slabRingHead.headPos.set(head);
+			wakeConsumer(pipe);
+		} else {
+			pipe.slabRingHead.headPos.lazySet(head);
+		}
+	}
+
+	private static <S extends MessageSchema> void publishTail(Pipe<S> pipe, long tail) {
+		if (pipe.waitStrategy.wakesWaiters) {
+			pipe.slabRingTail.tailPos.set(tail);
+			wakeProducer(pipe);
+		} else {
+			pipe.slabRingTail.tailPos.lazySet(tail);
+		}
+	}
+
+	//broadcast consumers share the head of the source so each publish must wake all of them
+	private static <S extends MessageSchema> void wakeConsumer(Pipe<S> pipe) {
+		unparkConsumer(pipe);
+		Pipe<S>[] consumers = pipe.broadcastConsumers;
+		if (null!=consumers) {
+			int i = consumers.length;
+			while (--i>=0) {
+				if (consumers[i].slabRingHead == pipe.slabRingHead) {
+					unparkConsumer(consumers[i]);
+				}
+			}
+		}
+	}
+
+	private static <S extends MessageSchema> void unparkConsumer(Pipe<S> pipe) {
+		Thread t = pipe.waitingConsumer;
+		if (null!=t) {
+			pipe.waitingConsumer = null;
+			LockSupport.unpark(t);
+		}
+	}
+
+	//spliced consumers use the tail of the source as their head so they are woken by its release
+	private static <S extends MessageSchema> void wakeProducer(Pipe<S> pipe) {
+		Pipe<S> source = null==pipe.broadcastSource ? pipe : pipe.broadcastSource;
+		Thread t = source.waitingProducer;
+		if (null!=t) {
+			source.waitingProducer = null;
+			LockSupport.unpark(t);
+		}
+		Pipe<S>[] consumers = pipe.broadcastConsumers;
+		if (null!=consumers) {
+			int i = consumers.length;
+			while (--i>=0) {
+				if (consumers[i].slabRingHead != pipe.slabRingHead) {
+					unparkConsumer(consumers[i]);
+				}
+			}
+		}
+	}
+
 	public static <S extends MessageSchema> int blobMask(Pipe<S> pipe) {
 		return pipe.byteMask;
 	}
@@ -2697,6 +3154,16 @@ public class Pipe<T extends MessageSchema> {
 		 return pipe.slabRingHead.headPos.get();
 	}
 
+    static <S extends MessageSchema> boolean casHeadPosition(Pipe<S> pipe, long expected, long value) {
+        if (pipe.slabRingHead.headPos.compareAndSet(expected, value)) {
+            if (pipe.waitStrategy.wakesWaiters) {
+                wakeConsumer(pipe);
+            }
+            return true;
+        }
+        return false;
+    }
+
     public static <S extends MessageSchema> long workingHeadPosition(Pipe<S> pipe) {
         return PaddedLong.get(pipe.slabRingHead.workingHeadPos);
     }
@@ -2730,7 +3197,7 @@ public class Pipe<T extends MessageSchema> {
 	 * @param workingHeadPos
 	 */
 	public static <S extends MessageSchema> void publishWorkingHeadPosition(Pipe<S> pipe, long workingHeadPos) {
-		pipe.slabRingHead.headPos.lazySet(pipe.slabRingHead.workingHeadPos.value = workingHeadPos);
+		publishHead(pipe, pipe.slabRingHead.workingHeadPos.value = workingHeadPos);
 	}
 
 	public static <S extends MessageSchema> long tailPosition(Pipe<S> pipe) {
@@ -2746,7 +3213,7 @@ public class Pipe<T extends MessageSchema> {
 	 * @param workingTailPos
 	 */
 	public static <S extends MessageSchema> void publishWorkingTailPosition(Pipe<S> pipe, long workingTailPos) {
-		pipe.slabRingTail.tailPos.lazySet(pipe.slabRingTail.workingTailPos.value = workingTailPos);
+		publishTail(pipe, pipe.slabRingTail.workingTailPos.value = workingTailPos);
 	}
     
 	public static <S extends MessageSchema> void publishBlobWorkingTailPosition(Pipe<S> pipe, int blobWorkingTailPos) {
@@ -2773,6 +3240,9 @@ public class Pipe<T extends MessageSchema> {
 		
 		pipe.slabRing[pipe.mask & (int)pos] = consumed>=0 ? consumed : consumed&BYTES_WRAP_MASK;
 		pipe.blobWriteLastConsumedPos = pipe.blobRingHead.byteWorkingHeadPos.value;
+		if (null!=pipe.metrics) {
+		    PipeMetrics.published(pipe.metrics, pos, consumed);
+		}
 		return consumed;
 	}
 
@@ -2830,7 +3300,13 @@ public class Pipe<T extends MessageSchema> {
 	}
 
 	private static <S extends MessageSchema> boolean roomToLowLevelWriteSlow(Pipe<S> pipe, long target) {
-        return (pipe.llRead.llrTailPosCache = pipe.slabRingTail.tailPos.get()  ) >= target;
+        if ((pipe.llRead.llrTailPosCache = producerTailPosition(pipe)) >= target) {
+            return true;
+        }
+        if (null!=pipe.metrics) {
+            PipeMetrics.roomStall(pipe.metrics);
+        }
+        return false;
 	}
 
 	public static <S extends MessageSchema> long confirmLowLevelWrite(Pipe<S> output, int size) { 
@@ -2867,7 +3343,13 @@ public class Pipe<T extends MessageSchema> {
 	}
 
 	private static <S extends MessageSchema> boolean contentToLowLevelReadSlow(Pipe<S> pipe, long target, LowLevelAPIWritePositionCache llWrite) {
-		return (llWrite.llwHeadPosCache = pipe.slabRingHead.headPos.get()) > target; 
+		if ((llWrite.llwHeadPosCache = pipe.slabRingHead.headPos.get()) > target) {
+		    return true;
+		}
+		if (null!=pipe.metrics) {
+		    PipeMetrics.contentStall(pipe.metrics);
+		}
+		return false;
 	}
 
 	public static <S extends MessageSchema> long confirmLowLevelRead(Pipe<S> pipe, long size) {
@@ -0,0 +1,226 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Durable image of the published but not yet released fragments of a pipe, held in a memory mapped file.
+ *
+ * The file mirrors the layout of the slab and blob rings so each save only copies the fragments which were published
+ * since the previous save. After a restart the image is loaded into a new pipe of the same size and schema so the
+ * consumer resumes from the persisted tail and Pipe.replayUnReleased can be used on the restored fragments.
+ *
+ * Save must be called from the consuming thread, only that thread knows the published tail and the fragments between
+ * tail and head can not change while they are copied. Like replay, only schemas where every message is a single
+ * fragment are supported because the blob position of each fragment is found by walking the trailing byte counts.
+ *
+ * Saved content survives the loss of the JVM as soon as save returns because the mapped pages belong to the OS.
+ * Call force to also survive the loss of the machine.
+ */
+public class PipeCheckpoint {
+
+    private static final int MAGIC         = 0x50495045;
+    private static final int HEADER_SIZE   = 64;
+
+    private static final int OFF_MAGIC     = 0;
+    private static final int OFF_SLAB_BITS = 4;
+    private static final int OFF_BLOB_BITS = 5;
+    private static final int OFF_TAIL      = 8;
+    private static final int OFF_HEAD      = 16;
+    private static final int OFF_BLOB_TAIL = 24;
+    private static final int OFF_BLOB_HEAD = 28;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    private final IntBuffer slabImage;
+    private final ByteBuffer blobImage;
+    private final byte slabBits;
+    private final byte blobBits;
+
+    //last head written to the image, new saves only copy from here forward
+    private long savedHead = -1;
+    private int savedBlobHead;
+
+    public PipeCheckpoint(File path, PipeConfig<?> config) throws IOException {
+
+        if (!MessageSchema.from(config.schema).hasSimpleMessagesOnly) {
+            throw new UnsupportedOperationException("Checkpoints are only supported for schemas where every message is a single fragment.");
+        }
+
+        this.slabBits = config.slabBits;
+        this.blobBits = config.blobBits;
+
+        int slabBytes = 4<<slabBits;
+        int blobBytes = 1<<blobBits;
+
+        this.file = new RandomAccessFile(path, "rw");
+        this.mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long)HEADER_SIZE+slabBytes+blobBytes);
+
+        this.mapped.position(HEADER_SIZE);
+        this.slabImage = mapped.slice().asIntBuffer();
+        this.mapped.position(HEADER_SIZE+slabBytes);
+        this.blobImage = mapped.slice();
+        this.mapped.clear();
+    }
+
+    /**
+     * Returns true if this checkpoint file holds a saved image from a previous run.
+     */
+    public static boolean hasImage(PipeCheckpoint cp) {
+        return MAGIC == cp.mapped.getInt(OFF_MAGIC) &&
+               cp.slabBits == cp.mapped.get(OFF_SLAB_BITS) &&
+               cp.blobBits == cp.mapped.get(OFF_BLOB_BITS);
+    }
+
+    /**
+     * Persist all the fragments which are published but not yet released.  Must be called by the consuming thread.
+     */
+    public static <S extends MessageSchema> void save(PipeCheckpoint cp, Pipe<S> pipe) {
+        assert(cp.slabBits == pipe.bitsOfSlabRing && cp.blobBits == pipe.bitsOfBlogRing) : "Checkpoint was not built for this pipe configuration";
+
+        final long tail = Pipe.tailPosition(pipe);
+        final int blobTail = Pipe.getBlobRingTailPosition(pipe);
+        final long head = Pipe.headPosition(pipe);
+
+        //everything before the saved head is already in the image unless it has been released since the last save
+        long start = tail;
+        int blobStart = blobTail;
+        if (cp.savedHead >= tail) {
+            start = cp.savedHead;
+            blobStart = cp.savedBlobHead;
+        }
+
+        //the tail is moved first so the image never claims a range which is about to be overwritten
+        cp.mapped.putLong(OFF_TAIL, tail);
+        cp.mapped.putInt(OFF_BLOB_TAIL, blobTail);
+        if (start == tail) {
+            cp.mapped.putLong(OFF_HEAD, tail);
+            cp.mapped.putInt(OFF_BLOB_HEAD, blobTail);
+        }
+        cp.mapped.put(OFF_SLAB_BITS, cp.slabBits);
+        cp.mapped.put(OFF_BLOB_BITS, cp.blobBits);
+        cp.mapped.putInt(OFF_MAGIC, MAGIC);
+
+        int blobHead = walkBlobPosition(pipe, start, head, blobStart);
+
+        copyToImage(Pipe.slab(pipe), pipe.mask, start, head, cp.slabImage);
+        if (pipe.sizeOfBlobRing>1) {
+            copyToImage(Pipe.blob(pipe), pipe.byteMask, blobStart, blobHead, cp.blobImage);
+        }
+
+        cp.mapped.putLong(OFF_HEAD, head);
+        cp.mapped.putInt(OFF_BLOB_HEAD, blobHead);
+
+        cp.savedHead = head;
+        cp.savedBlobHead = blobHead;
+    }
+
+    /**
+     * Load the saved image into a new pipe.  Must be called after initBuffers and before the producer or consumer
+     * have started.  Returns false if there was no image to restore.
+     */
+    public static <S extends MessageSchema> boolean restore(PipeCheckpoint cp, Pipe<S> pipe) {
+        assert(Pipe.isInit(pipe)) : "Pipe must be init before it can be restored";
+        assert(Pipe.headPosition(pipe)==Pipe.tailPosition(pipe)) : "Pipe must be empty before it can be restored";
+
+        if (!hasImage(cp)) {
+            return false;
+        }
+        if (cp.slabBits != pipe.bitsOfSlabRing || cp.blobBits != pipe.bitsOfBlogRing) {
+            throw new UnsupportedOperationException("Checkpoint of slab:"+cp.slabBits+" blob:"+cp.blobBits+" can not be restored into "+pipe);
+        }
+
+        long tail = cp.mapped.getLong(OFF_TAIL);
+        long head = cp.mapped.getLong(OFF_HEAD);
+        int blobTail = cp.mapped.getInt(OFF_BLOB_TAIL);
+        int blobHead = cp.mapped.getInt(OFF_BLOB_HEAD);
+
+        copyFromImage(cp.slabImage, Pipe.slab(pipe), pipe.mask, tail, head);
+        if (pipe.sizeOfBlobRing>1) {
+            copyFromImage(cp.blobImage, Pipe.blob(pipe), pipe.byteMask, blobTail, blobHead);
+        }
+
+        Pipe.restorePositions(pipe, tail, head, blobTail, blobHead);
+
+        cp.savedHead = head;
+        cp.savedBlobHead = blobHead;
+        return true;
+    }
+
+    /**
+     * Flush the mapped pages to the storage device so the image also survives the loss of the OS.
+     */
+    public static void force(PipeCheckpoint cp) {
+        cp.mapped.force();
+    }
+
+    public static void close(PipeCheckpoint cp) throws IOException {
+        cp.file.close();
+    }
+
+    private static <S extends MessageSchema> int walkBlobPosition(Pipe<S> pipe, long position, long limit, int blobPosition) {
+        int[] slab = Pipe.slab(pipe);
+        int mask = pipe.mask;
+        while (position < limit) {
+            int size = Pipe.sizeOf(pipe, slab[mask & (int)position]);
+            //the last int of every fragment is the count of blob bytes written by that fragment, EOF holds zero here
+            blobPosition = Pipe.BYTES_WRAP_MASK & (blobPosition + slab[mask & (int)(position+size-1)]);
+            position += size;
+        }
+        return blobPosition;
+    }
+
+    private static void copyToImage(int[] source, int mask, long from, long to, IntBuffer image) {
+        int start = mask & (int)from;
+        int length = (int)(to-from);
+        int len1 = Math.min(length, 1+mask-start);
+        image.position(start);
+        image.put(source, start, len1);
+        if (len1<length) {
+            image.position(0);
+            image.put(source, 0, length-len1);
+        }
+    }
+
+    private static void copyToImage(byte[] source, int mask, int from, int to, ByteBuffer image) {
+        int start = mask & from;
+        int length = Pipe.BYTES_WRAP_MASK & (to-from);
+        int len1 = Math.min(length, 1+mask-start);
+        image.position(start);
+        image.put(source, start, len1);
+        if (len1<length) {
+            image.position(0);
+            image.put(source, 0, length-len1);
+        }
+    }
+
+    private static void copyFromImage(IntBuffer image, int[] target, int mask, long from, long to) {
+        int start = mask & (int)from;
+        int length = (int)(to-from);
+        int len1 = Math.min(length, 1+mask-start);
+        image.position(start);
+        image.get(target, start, len1);
+        if (len1<length) {
+            image.position(0);
+            image.get(target, 0, length-len1);
+        }
+    }
+
+    private static void copyFromImage(ByteBuffer image, byte[] target, int mask, int from, int to) {
+        int start = mask & from;
+        int length = Pipe.BYTES_WRAP_MASK & (to-from);
+        int len1 = Math.min(length, 1+mask-start);
+        image.position(start);
+        image.get(target, start, len1);
+        if (len1<length) {
+            image.position(0);
+            image.get(target, 0, length-len1);
+        }
+    }
+
+}
@@ -6,21 +6,43 @@ package com.ociweb.pronghorn.pipe;
 public class PipeConfig<T extends MessageSchema> {
 	
 	//try to keep all this under 20MB and 1 RB under 64K if possible under 256K is highly encouraged
+	
+	//The slab and blob rings are java arrays indexed by int positions which are masked to the ring size.
+	//The largest power of 2 which can be allocated as an array is 2^30 so this is the limit for both rings.
+	public static final byte MAX_RING_BITS = 30;
+	//Off heap blob rings are addressed with long positions so they are only limited by the native memory available.
+	public static final byte MAX_OFF_HEAP_BLOB_BITS = 40;
+	
 	final byte slabBits;
 	final byte blobBits;
 	final byte[] byteConst;
 	final T schema; 
 	int debugFlags = 0;
+	WaitStrategy waitStrategy = WaitStrategy.YIELD;
+	final boolean offHeap;
 	
    /**
      * This is NOT the constructor you are looking for.
      */
     public PipeConfig(byte primaryBits, byte byteBits, byte[] byteConst, T messageSchema) {
+        this(primaryBits, byteBits, byteConst, messageSchema, false);
+     }
+
+    private PipeConfig(byte primaryBits, byte byteBits, byte[] byteConst, T messageSchema, boolean offHeap) {
         this.slabBits = primaryBits;
         this.blobBits = byteBits;
         this.byteConst = byteConst;
         this.schema = messageSchema;
+        this.offHeap = offHeap;
+        validateBits(primaryBits, byteBits, offHeap);
      }
+
+    /**
+     * Configuration for an OffHeapPipe where both rings are held in native memory, the blob ring may be larger than 1GB.
+     */
+    public static <T extends MessageSchema> PipeConfig<T> offHeap(T messageSchema, byte slabBits, byte blobBits) {
+        return new PipeConfig<T>(slabBits, blobBits, null, messageSchema, true);
+    }
     
      public PipeConfig(T messageSchema) {
         //default size which is smaller than half of 64K because this is the L1 cache size on intel haswell.
@@ -28,6 +50,7 @@ public class PipeConfig<T extends MessageSchema> {
         this.blobBits = 15;
         this.byteConst = null;
         this.schema = messageSchema;
+        this.offHeap = false;
         //validate
         FieldReferenceOffsetManager.maxVarLenFieldsPerPrimaryRingSize(MessageSchema.from(messageSchema), 1<<slabBits);
      }
@@ -73,21 +96,28 @@ public class PipeConfig<T extends MessageSchema> {
                 
         this.byteConst = null;
         this.schema = messageSchema;
+        this.offHeap = false;
         
         validate(minimumFragmentsOnRing, maximumLenghOfVariableLengthFields);
     }
     
     private void validate(int minimumFragmentsOnRing, int maximumLenghOfVariableLengthFields) {
-        if (blobBits>31) {
+        if (blobBits>MAX_RING_BITS) {
             throw new UnsupportedOperationException("Unable to support blob data larger than 1GB Reduce either the data size or count of desired message msgs:"+
                     minimumFragmentsOnRing+" varLen:"+maximumLenghOfVariableLengthFields);
         }
         
-        if (slabBits>31) {
+        if (slabBits>MAX_RING_BITS) {
             throw new UnsupportedOperationException("Unable to support slab data larger than 1GB, Reduce the count of desired message");
         }
         
     }
+    
+    private static void validateBits(byte slabBits, byte blobBits, boolean offHeap) {
+        if (slabBits>MAX_RING_BITS || blobBits>(offHeap ? MAX_OFF_HEAP_BLOB_BITS : MAX_RING_BITS)) {
+            throw new UnsupportedOperationException("Unable to support slab rings larger than 1GB or blob rings larger than "+(offHeap ? "1TB off heap" : "1GB")+", requested bits slab:"+slabBits+" blob:"+blobBits);
+        }
+    }
 
     public PipeConfig(T messageSchema, int minimumFragmentsOnRing, int maximumLenghOfVariableLengthFields, byte[] byteConst) {
         
@@ -101,19 +131,42 @@ public class PipeConfig<T extends MessageSchema> {
 
         this.byteConst = byteConst;
         this.schema = messageSchema;
+        this.offHeap = false;
         validate(minimumFragmentsOnRing, maximumLenghOfVariableLengthFields );
      }
 	
 	public PipeConfig<T> grow2x(){
-		return new PipeConfig<T>((byte)(1+slabBits), (byte)(1+blobBits), byteConst, schema);
+		PipeConfig<T> result = new PipeConfig<T>((byte)(1+slabBits), (byte)(1+blobBits), byteConst, schema, offHeap);
+		result.debugFlags = debugFlags;
+		result.waitStrategy = waitStrategy;
+		return result;
 	}
 	
 	public PipeConfig<T> debug(int debugFlags){
-		PipeConfig<T> result = new PipeConfig<T>((byte)(slabBits), (byte)(blobBits), byteConst, schema);
+		PipeConfig<T> result = new PipeConfig<T>((byte)(slabBits), (byte)(blobBits), byteConst, schema, offHeap);
 		result.debugFlags = debugFlags;
+		result.waitStrategy = waitStrategy;
 		return result;
 	}
 	
+	/**
+	 * Returns a copy of this configuration where pipes wait for room or content with the given strategy.
+	 */
+	public PipeConfig<T> waitStrategy(WaitStrategy waitStrategy){
+		PipeConfig<T> result = new PipeConfig<T>((byte)(slabBits), (byte)(blobBits), byteConst, schema, offHeap);
+		result.debugFlags = debugFlags;
+		result.waitStrategy = waitStrategy;
+		return result;
+	}
+	
+	public WaitStrategy waitStrategy() {
+		return waitStrategy;
+	}
+	
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+	
 	public static final int SHOW_HEAD_PUBLISH = 1;
 
 	/**
@@ -0,0 +1,326 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import com.ociweb.pronghorn.pipe.util.PaddedAtomicLong;
+
+/**
+ * Opt in counters for a running pipe, used to find the bottleneck stage of a graph under load.
+ *
+ * Each counter is only written by the thread which owns that side of the pipe so recording needs no locks and
+ * allocates nothing. The published to released latency is sampled every sampleRate fragments by storing the publish
+ * time in a table indexed like the slab ring, the consumer records the difference when it releases that fragment.
+ *
+ * Values can be read at any time from any thread through the static methods or through JMX once registered.
+ */
+public class PipeMetrics implements PipeMetricsMBean {
+
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    private final Pipe<?> pipe;
+
+    //written by the producer
+    private final PaddedAtomicLong fragmentsPublished = new PaddedAtomicLong();
+    private final PaddedAtomicLong bytesPublished = new PaddedAtomicLong();
+    private final PaddedAtomicLong roomStalls = new PaddedAtomicLong();
+    private int sampleCountDown;
+
+    //written by the consumer
+    private final PaddedAtomicLong fragmentsReleased = new PaddedAtomicLong();
+    private final PaddedAtomicLong bytesReleased = new PaddedAtomicLong();
+    private final PaddedAtomicLong contentStalls = new PaddedAtomicLong();
+
+    private final int sampleRate;
+    private final long[] publishTime;
+    private final SingleWriterRecorder latencyRecorder;
+
+    //only used by readers of the latency, guarded by this
+    private Histogram intervalLatency;
+    private final Histogram totalLatency;
+
+    private PipeMetrics(Pipe<?> pipe, int sampleRate) {
+        this.pipe = pipe;
+        this.sampleRate = sampleRate;
+        this.sampleCountDown = sampleRate;
+        this.publishTime = 0==sampleRate ? null : new long[pipe.sizeOfSlabRing];
+        this.latencyRecorder = new SingleWriterRecorder(MAX_LATENCY, 3);
+        this.totalLatency = new Histogram(MAX_LATENCY, 3);
+    }
+
+    /**
+     * Start collecting metrics for this pipe.  Must be called after initBuffers and before the pipe is used.
+     * @param sampleRate publish to release latency is measured once for this many fragments, zero turns it off
+     */
+    public static <S extends MessageSchema> PipeMetrics attach(Pipe<S> pipe, int sampleRate) {
+        if (!Pipe.isInit(pipe)) {
+            throw new UnsupportedOperationException("Pipe must be init before metrics can be attached");
+        }
+        if (sampleRate<0) {
+            throw new UnsupportedOperationException("Sample rate must not be negative");
+        }
+        PipeMetrics metrics = new PipeMetrics(pipe, sampleRate);
+        pipe.metrics = metrics;
+        return metrics;
+    }
+
+    public static <S extends MessageSchema> PipeMetrics attach(Pipe<S> pipe) {
+        return attach(pipe, 64);
+    }
+
+    public static <S extends MessageSchema> PipeMetrics metrics(Pipe<S> pipe) {
+        return pipe.metrics;
+    }
+
+    /**
+     * Register this pipe with the platform MBean server under com.ociweb.pronghorn.pipe:type=Pipe,name=[name]
+     */
+    public static ObjectName register(PipeMetrics metrics, String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.ociweb.pronghorn.pipe:type=Pipe,name="+ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            return objectName;
+        } catch (MalformedObjectNameException e) {
+            throw new RuntimeException(e);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new RuntimeException(e);
+        } catch (MBeanRegistrationException e) {
+            throw new RuntimeException(e);
+        } catch (NotCompliantMBeanException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    ////////////
+    //recording, called by Pipe
+    ////////////
+
+    static void published(PipeMetrics m, long trailingPosition, int bytes) {
+        m.fragmentsPublished.lazySet(m.fragmentsPublished.get()+1);
+        m.bytesPublished.lazySet(m.bytesPublished.get()+bytes);
+        if (null!=m.publishTime) {
+            //the trailing position is known by both sides so it is used as the key
+            int idx = m.pipe.mask & (int)trailingPosition;
+            if (--m.sampleCountDown<=0) {
+                m.sampleCountDown = m.sampleRate;
+                m.publishTime[idx] = System.nanoTime();
+            } else {
+                m.publishTime[idx] = 0;
+            }
+        }
+    }
+
+    /**
+     * Same as published for pipes written by many threads at once through PipeMultiProducer. The counters are
+     * updated atomically and the latency is sampled by the count of fragments instead of a count down.
+     */
+    static void publishedConcurrent(PipeMetrics m, long trailingPosition, int bytes) {
+        long count = m.fragmentsPublished.incrementAndGet();
+        m.bytesPublished.addAndGet(bytes);
+        if (null!=m.publishTime) {
+            m.publishTime[(m.publishTime.length-1) & (int)trailingPosition] = 0==(count%m.sampleRate) ? System.nanoTime() : 0;
+        }
+    }
+
+    static void released(PipeMetrics m, long trailingPosition, int bytes) {
+        m.fragmentsReleased.lazySet(m.fragmentsReleased.get()+1);
+        m.bytesReleased.lazySet(m.bytesReleased.get()+bytes);
+        if (null!=m.publishTime) {
+            long time = m.publishTime[m.pipe.mask & (int)trailingPosition];
+            if (0!=time) {
+                m.latencyRecorder.recordValue(Math.min(MAX_LATENCY, System.nanoTime()-time));
+            }
+        }
+    }
+
+    static void roomStall(PipeMetrics m) {
+        m.roomStalls.lazySet(m.roomStalls.get()+1);
+    }
+
+    static void contentStall(PipeMetrics m) {
+        m.contentStalls.lazySet(m.contentStalls.get()+1);
+    }
+
+    ////////////
+    //reading, may be called from any thread
+    ////////////
+
+    public static long fragmentsPublished(PipeMetrics m) {
+        return m.fragmentsPublished.get();
+    }
+
+    public static long bytesPublished(PipeMetrics m) {
+        return m.bytesPublished.get();
+    }
+
+    public static long fragmentsReleased(PipeMetrics m) {
+        return m.fragmentsReleased.get();
+    }
+
+    public static long bytesReleased(PipeMetrics m) {
+        return m.bytesReleased.get();
+    }
+
+    /**
+     * Count of times the producer checked for room and found the pipe full.
+     */
+    public static long roomStalls(PipeMetrics m) {
+        return m.roomStalls.get();
+    }
+
+    /**
+     * Count of times the consumer checked for content and found the pipe empty.
+     */
+    public static long contentStalls(PipeMetrics m) {
+        return m.contentStalls.get();
+    }
+
+    public static int slabFillPercent(PipeMetrics m) {
+        return (int)((100L*Pipe.contentRemaining(m.pipe)) >> m.pipe.bitsOfSlabRing);
+    }
+
+    public static int blobFillPercent(PipeMetrics m) {
+        if (m.pipe.sizeOfBlobRing<=1) {
+            return 0;
+        }
+        int used = Pipe.BYTES_WRAP_MASK & (Pipe.getBlobRingHeadPosition(m.pipe) - Pipe.getBlobRingTailPosition(m.pipe));
+        return (int)((100L*used) >> m.pipe.bitsOfBlogRing);
+    }
+
+    /**
+     * Publish to release latency in nanoseconds of all the samples recorded since attach or the last reset.
+     * The result is copied into target so the caller owns it.
+     */
+    public static Histogram latency(PipeMetrics m, Histogram target) {
+        synchronized(m) {
+            accumulateLatency(m);
+            target.reset();
+            target.add(m.totalLatency);
+        }
+        return target;
+    }
+
+    public static void resetLatency(PipeMetrics m) {
+        synchronized(m) {
+            accumulateLatency(m);
+            m.totalLatency.reset();
+        }
+    }
+
+    private static void accumulateLatency(PipeMetrics m) {
+        m.intervalLatency = m.latencyRecorder.getIntervalHistogram(m.intervalLatency);
+        m.totalLatency.add(m.intervalLatency);
+    }
+
+    private long latencyAt(double percentile) {
+        synchronized(this) {
+            accumulateLatency(this);
+            return totalLatency.getValueAtPercentile(percentile);
+        }
+    }
+
+    ////////////
+    //JMX
+    ////////////
+
+    @Override
+    public long getFragmentsPublished() {
+        return fragmentsPublished(this);
+    }
+
+    @Override
+    public long getBytesPublished() {
+        return bytesPublished(this);
+    }
+
+    @Override
+    public long getFragmentsReleased() {
+        return fragmentsReleased(this);
+    }
+
+    @Override
+    public long getBytesReleased() {
+        return bytesReleased(this);
+    }
+
+    @Override
+    public long getRoomStalls() {
+        return roomStalls(this);
+    }
+
+    @Override
+    public long getContentStalls() {
+        return contentStalls(this);
+    }
+
+    @Override
+    public int getSlabFillPercent() {
+        return slabFillPercent(this);
+    }
+
+    @Override
+    public int getBlobFillPercent() {
+        return blobFillPercent(this);
+    }
+
+    @Override
+    public long getLatencyCount() {
+        synchronized(this) {
+            accumulateLatency(this);
+            return totalLatency.getTotalCount();
+        }
+    }
+
+    @Override
+    public long getLatencyMeanNanos() {
+        synchronized(this) {
+            accumulateLatency(this);
+            return (long)totalLatency.getMean();
+        }
+    }
+
+    @Override
+    public long getLatency50Nanos() {
+        return latencyAt(50);
+    }
+
+    @Override
+    public long getLatency99Nanos() {
+        return latencyAt(99);
+    }
+
+    @Override
+    public long getLatency999Nanos() {
+        return latencyAt(99.9);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        synchronized(this) {
+            accumulateLatency(this);
+            return totalLatency.getMaxValue();
+        }
+    }
+
+    @Override
+    public void resetLatency() {
+        resetLatency(this);
+    }
+
+    public String toString() {
+        return "published:"+fragmentsPublished(this)+" ("+bytesPublished(this)+"B)"+
+               " released:"+fragmentsReleased(this)+" ("+bytesReleased(this)+"B)"+
+               " roomStalls:"+roomStalls(this)+" contentStalls:"+contentStalls(this)+
+               " slabFill:"+slabFillPercent(this)+"% blobFill:"+blobFillPercent(this)+"%";
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.ociweb.pronghorn.pipe;
+
+/**
+ * JMX view of the metrics collected for one pipe, see PipeMetrics.
+ */
+public interface PipeMetricsMBean {
+
+    long getFragmentsPublished();
+    long getBytesPublished();
+    long getFragmentsReleased();
+    long getBytesReleased();
+
+    long getRoomStalls();
+    long getContentStalls();
+
+    int getSlabFillPercent();
+    int getBlobFillPercent();
+
+    long getLatencyCount();
+    long getLatencyMeanNanos();
+    long getLatency50Nanos();
+    long getLatency99Nanos();
+    long getLatency999Nanos();
+    long getLatencyMaxNanos();
+
+    void resetLatency();
+
+}
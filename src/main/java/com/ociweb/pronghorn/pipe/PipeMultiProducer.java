@@ -0,0 +1,168 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows many threads to write into the same pipe without an extra merge stage.
+ *
+ * Each writer claims the slab space for one fragment with a CAS on the shared claim head. The blob space of the fragment
+ * is derived from its slab position so it never needs a second claim, every slab int owns 1<<(blobBits-slabBits) blob bytes.
+ * Writers may commit in any order, the published head is only moved forward across fragments which are fully written
+ * so the consumer only sees complete fragments and reads the pipe with the normal low level API.
+ *
+ * Only schemas where every message is a single fragment are supported and the blob ring must be at least as many bits as
+ * the slab ring. Once a pipe is used by a PipeMultiProducer none of the single producer write methods may be used on it.
+ *
+ * Typical use from any thread:
+ *   long pos = PipeMultiProducer.tryClaim(mp, msgIdx);
+ *   if (pos>=0) {
+ *       PipeMultiProducer.writeInt(mp, pos, loc, value);
+ *       PipeMultiProducer.writeBytes(mp, pos, loc, bytes, 0, bytes.length);
+ *       PipeMultiProducer.commit(mp, pos);
+ *   }
+ */
+public class PipeMultiProducer<T extends MessageSchema> {
+
+    private final Pipe<T> pipe;
+    private final int[] fragDataSize;
+    private final int blobShift;
+    private final int slabBits;
+
+    private final AtomicLong claimHead;
+    //holds the lap number (+1) for each fragment start once it is fully written
+    private final AtomicIntegerArray committed;
+
+    public PipeMultiProducer(Pipe<T> pipe) {
+        if (!Pipe.isInit(pipe)) {
+            throw new UnsupportedOperationException("Pipe must be init before it can have multiple producers");
+        }
+        if (!Pipe.from(pipe).hasSimpleMessagesOnly) {
+            throw new UnsupportedOperationException("Multiple producers are only supported for schemas where every message is a single fragment.");
+        }
+        if (pipe.bitsOfBlogRing < pipe.bitsOfSlabRing) {
+            throw new UnsupportedOperationException("Multiple producers require blob bits of at least the slab bits "+pipe.bitsOfSlabRing+" but found "+pipe.bitsOfBlogRing);
+        }
+        if (Pipe.headPosition(pipe)!=0 || Pipe.workingHeadPosition(pipe)!=0) {
+            throw new UnsupportedOperationException("Multiple producers must be added before anything is written to the pipe");
+        }
+        this.pipe = pipe;
+        this.fragDataSize = Pipe.from(pipe).fragDataSize;
+        this.blobShift = pipe.bitsOfBlogRing - pipe.bitsOfSlabRing;
+        this.slabBits = pipe.bitsOfSlabRing;
+        this.claimHead = new AtomicLong();
+        this.committed = new AtomicIntegerArray(pipe.sizeOfSlabRing);
+    }
+
+    public static <S extends MessageSchema> Pipe<S> pipe(PipeMultiProducer<S> mp) {
+        return mp.pipe;
+    }
+
+    /**
+     * Largest byte array which can be written in total across all the fields of one fragment of the given message.
+     */
+    public static <S extends MessageSchema> int maxBlobBytes(PipeMultiProducer<S> mp, int msgIdx) {
+        return mp.fragDataSize[msgIdx] << mp.blobShift;
+    }
+
+    /**
+     * Claim the space for one fragment and write its msgIdx.  Returns the slab position of the fragment or -1 if there
+     * is no room. The returned position must be passed to every write and finally to commit.
+     */
+    public static <S extends MessageSchema> long tryClaim(PipeMultiProducer<S> mp, int msgIdx) {
+        assert(msgIdx>=0) : "Call tryClaimEOF() instead of this method";
+        return claim(mp, msgIdx, mp.fragDataSize[msgIdx]);
+    }
+
+    public static <S extends MessageSchema> long tryClaimEOF(PipeMultiProducer<S> mp) {
+        return claim(mp, -1, Pipe.EOF_SIZE);
+    }
+
+    private static <S extends MessageSchema> long claim(PipeMultiProducer<S> mp, int msgIdx, int size) {
+        final Pipe<S> pipe = mp.pipe;
+        long pos;
+        do {
+            pos = mp.claimHead.get();
+            if (pos+size > Pipe.producerTailPosition(pipe)+pipe.sizeOfSlabRing) {
+                return -1;
+            }
+        } while (!mp.claimHead.compareAndSet(pos, pos+size));
+
+        int[] slab = Pipe.slab(pipe);
+        slab[pipe.mask & (int)pos] = msgIdx;
+        //while the fragment is open the trailing int counts the blob bytes used so far
+        slab[pipe.mask & (int)(pos+size-1)] = 0;
+        return pos;
+    }
+
+    public static <S extends MessageSchema> void writeInt(PipeMultiProducer<S> mp, long pos, int loc, int value) {
+        Pipe.slab(mp.pipe)[mp.pipe.mask & (int)(pos + (PipeWriter.OFF_MASK&loc))] = value;
+    }
+
+    public static <S extends MessageSchema> void writeLong(PipeMultiProducer<S> mp, long pos, int loc, long value) {
+        int[] slab = Pipe.slab(mp.pipe);
+        long p = pos + (PipeWriter.OFF_MASK&loc);
+        slab[mp.pipe.mask & (int)p] = (int)(value >>> 32);
+        slab[mp.pipe.mask & (int)(p+1)] = (int)value;
+    }
+
+    public static <S extends MessageSchema> void writeBytes(PipeMultiProducer<S> mp, long pos, int loc, byte[] source, int offset, int length) {
+        final Pipe<S> pipe = mp.pipe;
+        int[] slab = Pipe.slab(pipe);
+        int size = fragmentSize(mp, slab[pipe.mask & (int)pos]);
+        int trailingIdx = pipe.mask & (int)(pos+size-1);
+        int used = slab[trailingIdx];
+        if (used+length > (size<<mp.blobShift)) {
+            throw new UnsupportedOperationException("Can not write byte array of length "+length+" after "+used+" bytes, the limit for this fragment is "+(size<<mp.blobShift)+" for pipe "+pipe);
+        }
+        int blobStart = blobPosition(mp, pos);
+        Pipe.copyBytesFromToRing(source, offset, Integer.MAX_VALUE, Pipe.blob(pipe), blobStart+used, pipe.byteMask, length);
+        Pipe.setBytePosAndLen(slab, pipe.mask, pos + (PipeWriter.OFF_MASK&loc), blobStart+used, length, blobStart);
+        slab[trailingIdx] = used+length;
+    }
+
+    /**
+     * Mark the claimed fragment as fully written and publish every fragment which is now complete in order.
+     */
+    public static <S extends MessageSchema> void commit(PipeMultiProducer<S> mp, long pos) {
+        final Pipe<S> pipe = mp.pipe;
+        int[] slab = Pipe.slab(pipe);
+        int size = fragmentSize(mp, slab[pipe.mask & (int)pos]);
+        //the consumer moves its blob base by this count so it must be the full region even if less was used
+        slab[Pipe.slabMask(pipe) & (int)(pos+size-1)] = size<<mp.blobShift;
+        if (null!=pipe.metrics) {
+            PipeMetrics.publishedConcurrent(pipe.metrics, pos+size-1, size<<mp.blobShift);
+        }
+
+        mp.committed.set(pipe.mask & (int)pos, lap(mp, pos));
+        publishCommitted(mp);
+    }
+
+    private static <S extends MessageSchema> void publishCommitted(PipeMultiProducer<S> mp) {
+        final Pipe<S> pipe = mp.pipe;
+        int[] slab = Pipe.slab(pipe);
+        long head;
+        long next;
+        do {
+            head = Pipe.headPosition(pipe);
+            next = head;
+            while (mp.committed.get(pipe.mask & (int)next) == lap(mp, next)) {
+                next += fragmentSize(mp, slab[pipe.mask & (int)next]);
+            }
+            //nothing new is complete, the writer still holding the head fragment will publish ours
+        } while (next!=head && !Pipe.casHeadPosition(pipe, head, next));
+    }
+
+    private static <S extends MessageSchema> int fragmentSize(PipeMultiProducer<S> mp, int msgIdx) {
+        return msgIdx>=0 ? mp.fragDataSize[msgIdx] : Pipe.EOF_SIZE;
+    }
+
+    private static <S extends MessageSchema> int blobPosition(PipeMultiProducer<S> mp, long pos) {
+        return Pipe.BYTES_WRAP_MASK & (int)(pos << mp.blobShift);
+    }
+
+    private static <S extends MessageSchema> int lap(PipeMultiProducer<S> mp, long pos) {
+        return 1 + (int)(pos >>> mp.slabBits);
+    }
+
+}
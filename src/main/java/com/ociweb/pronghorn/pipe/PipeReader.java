@@ -132,6 +132,34 @@ public class PipeReader {//TODO: B, build another static reader that does auto c
         return Pipe.readASCII(pipe, target, pos, len);
     }
 
+    public static long readTextAsLong(Pipe pipe, int loc) {
+        assert(LOCUtil.isLocOfAnyType(loc, TypeMask.TextASCII, TypeMask.TextASCIIOptional, TypeMask.TextUTF8, TypeMask.TextUTF8Optional, TypeMask.ByteVector, TypeMask.ByteVectorOptional)): "Value found "+LOCUtil.typeAsString(loc);
+
+        int pos = Pipe.slab(pipe)[pipe.mask & (int)(pipe.ringWalker.activeReadFragmentStack[STACK_OFF_MASK&(loc>>STACK_OFF_SHIFT)] + (OFF_MASK&loc))];
+        return Pipe.readTextAsLong(pipe, pos, PipeReader.readDataLength(pipe, loc));
+    }
+
+    public static int readTextAsInt(Pipe pipe, int loc) {
+        assert(LOCUtil.isLocOfAnyType(loc, TypeMask.TextASCII, TypeMask.TextASCIIOptional, TypeMask.TextUTF8, TypeMask.TextUTF8Optional, TypeMask.ByteVector, TypeMask.ByteVectorOptional)): "Value found "+LOCUtil.typeAsString(loc);
+
+        int pos = Pipe.slab(pipe)[pipe.mask & (int)(pipe.ringWalker.activeReadFragmentStack[STACK_OFF_MASK&(loc>>STACK_OFF_SHIFT)] + (OFF_MASK&loc))];
+        return Pipe.readTextAsInt(pipe, pos, PipeReader.readDataLength(pipe, loc));
+    }
+
+    public static long readTextAsDecimalMantissa(Pipe pipe, int loc, int places) {
+        assert(LOCUtil.isLocOfAnyType(loc, TypeMask.TextASCII, TypeMask.TextASCIIOptional, TypeMask.TextUTF8, TypeMask.TextUTF8Optional, TypeMask.ByteVector, TypeMask.ByteVectorOptional)): "Value found "+LOCUtil.typeAsString(loc);
+
+        int pos = Pipe.slab(pipe)[pipe.mask & (int)(pipe.ringWalker.activeReadFragmentStack[STACK_OFF_MASK&(loc>>STACK_OFF_SHIFT)] + (OFF_MASK&loc))];
+        return Pipe.readTextAsDecimalMantissa(pipe, pos, PipeReader.readDataLength(pipe, loc), places);
+    }
+
+    public static double readTextAsDouble(Pipe pipe, int loc) {
+        assert(LOCUtil.isLocOfAnyType(loc, TypeMask.TextASCII, TypeMask.TextASCIIOptional, TypeMask.TextUTF8, TypeMask.TextUTF8Optional, TypeMask.ByteVector, TypeMask.ByteVectorOptional)): "Value found "+LOCUtil.typeAsString(loc);
+
+        int pos = Pipe.slab(pipe)[pipe.mask & (int)(pipe.ringWalker.activeReadFragmentStack[STACK_OFF_MASK&(loc>>STACK_OFF_SHIFT)] + (OFF_MASK&loc))];
+        return Pipe.readTextAsDouble(pipe, pos, PipeReader.readDataLength(pipe, loc));
+    }
+
 	public static <A extends Appendable> A readUTF8(Pipe pipe, int loc, A target) {
 		assert(LOCUtil.isLocOfAnyType(loc, TypeMask.TextUTF8, TypeMask.TextUTF8Optional, TypeMask.ByteVector, TypeMask.ByteVectorOptional)): "Value found "+LOCUtil.typeAsString(loc);
 		
@@ -168,13 +196,27 @@ public class PipeReader {//TODO: B, build another static reader that does auto c
     
 	private static int readUTF8Ring(Pipe pipe, int bytesLen, char[] target, int targetloc, int ringPos) {
 		  
-		  long charAndPos = ((long)ringPos)<<32;
-		  long limit = ((long)(ringPos+bytesLen))<<32;
+		  final byte[] buffer = Pipe.byteBuffer(pipe);
+		  final int mask = pipe.byteMask;
+		  int pos = ringPos;
+		  final int limit = ringPos+bytesLen;
 						  
 		  int i = targetloc;
-		  while (charAndPos<limit) {		      
-		      charAndPos = Pipe.decodeUTF8Fast(Pipe.byteBuffer(pipe), charAndPos, pipe.byteMask);    
-		      target[i++] = (char)charAndPos;		
+		  while (pos<limit) {
+		      //ASCII runs are copied without masking each byte, up to the end of the text or the end of the ring
+		      int p = mask & pos;
+		      final int runLimit = pos + Math.min(limit - pos, 1 + mask - p);
+		      byte b;
+		      while (pos < runLimit && (b = buffer[p]) >= 0) {
+		          target[i++] = (char)b;
+		          p++;
+		          pos++;
+		      }
+		      if (pos < runLimit) {
+		          long charAndPos = Pipe.decodeUTF8Fast(buffer, ((long)pos)<<32, mask);    
+		          target[i++] = (char)charAndPos;
+		          pos = (int)(charAndPos>>32);
+		      }
 		  }
 		  return i - targetloc;
 		         
@@ -571,6 +613,13 @@ public class PipeReader {//TODO: B, build another static reader that does auto c
 		return rw.msgIdx;
 	}
 
+	/**
+	 * Slab position of the fragment being read at this depth, generated flyweights add constant field offsets to it.
+	 */
+	public static long structuredPositionForDepth(Pipe pipe, int depth) {
+	    return pipe.ringWalker.activeReadFragmentStack[depth];
+	}
+
 	
 	public static int bytesConsumedByFragment(Pipe ringBuffer) {
 		return ringBuffer.ringWalker.nextWorkingTail>0 ? bytesConsumed(ringBuffer) : 0;
@@ -652,7 +701,10 @@ public class PipeReader {//TODO: B, build another static reader that does auto c
 
 	public static void releaseReadLock(Pipe pipe) {
 	    
-        collectConsumedCountOfBytes(pipe); 
+        int bytesConsumed = collectConsumedCountOfBytes(pipe); 
+        if (null!=pipe.metrics && pipe.ringWalker.nextWorkingTail>0) {
+            PipeMetrics.released(pipe.metrics, pipe.ringWalker.nextWorkingTail-1, bytesConsumed);
+        }
 	    
 	    //ensure we only call for new templates.
 	    if (FieldReferenceOffsetManager.isTemplateStart(Pipe.from(pipe), pipe.ringWalker.nextCursor)) {
@@ -0,0 +1,88 @@
+package com.ociweb.pronghorn.pipe;
+
+/**
+ * Forwards fragments from one input pipe to many output pipes of the same schema without copying them.
+ *
+ * The outputs are spliced consumers of the input, they read directly from the rings of the input. A routing stage
+ * consumes the input as usual, it may peek at any header field and then calls route with the set of outputs which
+ * should see the fragment. Only the route is written, one int per fragment, instead of the slab and blob copy done
+ * by Pipe.copyFragment. Each output only sees fragments after the router has released them and skips any fragment
+ * which was not routed to it. The producer of the input is held back by the slowest of the router and the outputs.
+ *
+ * Consumers of the outputs must use PipeSplice.hasContentToRead in place of Pipe.hasContentToRead and then read with
+ * the normal low level API. Only schemas where every message is a single fragment are supported.
+ */
+public class PipeSplice<T extends MessageSchema> {
+
+    private static final int MAX_OUTPUTS = 32;
+
+    //route bits for each fragment, indexed by the slab position of the fragment start
+    private final int[] routes;
+    private final Pipe<T> input;
+    private final Pipe<T>[] outputs;
+
+    /**
+     * Must be called after input.initBuffers and before anything is written to the input.
+     */
+    @SuppressWarnings("unchecked")
+    public PipeSplice(Pipe<T> input, int outputCount) {
+        if (!Pipe.from(input).hasSimpleMessagesOnly) {
+            throw new UnsupportedOperationException("Splicing is only supported for schemas where every message is a single fragment.");
+        }
+        if (outputCount<1 || outputCount>MAX_OUTPUTS) {
+            throw new UnsupportedOperationException("Splicing supports 1 to "+MAX_OUTPUTS+" outputs but "+outputCount+" were requested");
+        }
+        this.input = input;
+        this.routes = new int[input.sizeOfSlabRing];
+        this.outputs = new Pipe[outputCount];
+        int i = outputCount;
+        while (--i>=0) {
+            outputs[i] = Pipe.splicedConsumer(input);
+            outputs[i].initBuffers();
+        }
+    }
+
+    public static <S extends MessageSchema> Pipe<S> output(PipeSplice<S> splice, int idx) {
+        return splice.outputs[idx];
+    }
+
+    public static <S extends MessageSchema> int outputCount(PipeSplice<S> splice) {
+        return splice.outputs.length;
+    }
+
+    /**
+     * Called by the routing stage once Pipe.hasContentToRead(input) is true.  Header fields may be inspected first
+     * with Pipe.peekInt.  The fragment is released from the input and becomes visible to every output whose bit is
+     * set in routeMask, bit 0 is output 0.
+     */
+    public static <S extends MessageSchema> int route(PipeSplice<S> splice, int routeMask) {
+        Pipe<S> input = splice.input;
+        //written before the release below publishes the tail which is the head of every output
+        splice.routes[input.mask & (int)Pipe.getWorkingTailPosition(input)] = routeMask;
+        return Pipe.skipFragment(input);
+    }
+
+    /**
+     * Route the next fragment to every output, use this for EOF and other control messages.
+     */
+    public static <S extends MessageSchema> int routeToAll(PipeSplice<S> splice) {
+        return route(splice, -1);
+    }
+
+    /**
+     * Used by the consumer of an output in place of Pipe.hasContentToRead, fragments not routed to
+     * this output are released as they are found.
+     */
+    public static <S extends MessageSchema> boolean hasContentToRead(PipeSplice<S> splice, int idx) {
+        Pipe<S> output = splice.outputs[idx];
+        int bit = 1<<idx;
+        while (Pipe.hasContentToRead(output)) {
+            if (0 != (bit & splice.routes[output.mask & (int)Pipe.getWorkingTailPosition(output)])) {
+                return true;
+            }
+            Pipe.skipFragment(output);
+        }
+        return false;
+    }
+
+}
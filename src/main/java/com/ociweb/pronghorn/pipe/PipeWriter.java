@@ -82,6 +82,13 @@ public class PipeWriter {
     public static long structuredPositionForLOC(Pipe pipe, int loc) {
         return pipe.ringWalker.activeWriteFragmentStack[STACK_OFF_MASK&(loc>>STACK_OFF_SHIFT)] + (OFF_MASK&loc);
     }
+
+    /**
+     * Slab position of the fragment being written at this depth, generated flyweights add constant field offsets to it.
+     */
+    public static long structuredPositionForDepth(Pipe pipe, int depth) {
+        return pipe.ringWalker.activeWriteFragmentStack[depth];
+    }
     
     public static void writeFloat(Pipe pipe, int loc, float value, int places) {
     	assert((loc&0x1E<<OFF_BITS)==(0x0C<<OFF_BITS)) : "Expected to write some type of decimal but found "+TypeMask.toString((loc>>OFF_BITS)&TokenBuilder.MASK_TYPE);   	
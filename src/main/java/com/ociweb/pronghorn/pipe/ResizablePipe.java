@@ -0,0 +1,121 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Opt-in pipe for bursty stages which grows instead of back pressuring its producer.
+ *
+ * No live Pipe is ever resized. When the producer finds the current pipe full it builds a pipe twice the size, ends the
+ * old pipe with an EOF marker and writes every following fragment into the new pipe. The consumer reads the old pipe
+ * to that marker before it moves on so fragments stay in order and none are copied. Because the old rings are never
+ * swapped out, views such as Pipe.outputStream and Pipe.inputStream stay valid on the pipe they were taken from, a stage
+ * only needs to take new views when ResizablePipe.output or ResizablePipe.input return a different pipe.
+ *
+ * Only the low level API with one producer and one consumer is supported. Both sides must call the methods on this class
+ * between fragments:
+ *   if (ResizablePipe.hasRoomForWrite(rp, size)) {
+ *       Pipe<T> pipe = ResizablePipe.output(rp);
+ *       ...write the fragment to pipe...
+ *   }
+ *
+ *   if (ResizablePipe.hasContentToRead(rp)) {
+ *       Pipe<T> pipe = ResizablePipe.input(rp);
+ *       ...read the fragment from pipe...
+ *   }
+ */
+public class ResizablePipe<T extends MessageSchema> {
+
+    private final byte maxSlabBits;
+    //larger pipes which the producer has moved to and the consumer has not, oldest first
+    private final ConcurrentLinkedQueue<Pipe<T>> grown;
+
+    private Pipe<T> output;  //producer only
+    private Pipe<T> replaced; //producer only, last pipe the producer moved away from
+    private long replacedHead;
+    private Pipe<T> input;   //consumer only
+
+    public ResizablePipe(PipeConfig<T> config, byte maxSlabBits) {
+        if (maxSlabBits>PipeConfig.MAX_RING_BITS) {
+            throw new UnsupportedOperationException("Unable to grow slab rings larger than 1GB, requested bits "+maxSlabBits);
+        }
+        this.maxSlabBits = maxSlabBits;
+        this.grown = new ConcurrentLinkedQueue<Pipe<T>>();
+        this.output = new Pipe<T>(config);
+        this.output.initBuffers();
+        this.input = this.output;
+    }
+
+    /**
+     * Pipe the producer must write its next fragment into, this changes only inside hasRoomForWrite.
+     */
+    public static <S extends MessageSchema> Pipe<S> output(ResizablePipe<S> rp) {
+        return rp.output;
+    }
+
+    /**
+     * Pipe the consumer must read its next fragment from, this changes only inside hasContentToRead.
+     */
+    public static <S extends MessageSchema> Pipe<S> input(ResizablePipe<S> rp) {
+        return rp.input;
+    }
+
+    public static <S extends MessageSchema> DataOutputBlobWriter<S> outputStream(ResizablePipe<S> rp) {
+        return Pipe.outputStream(rp.output);
+    }
+
+    public static <S extends MessageSchema> DataInputBlobReader<S> inputStream(ResizablePipe<S> rp) {
+        return Pipe.inputStream(rp.input);
+    }
+
+    /**
+     * Returns true if the next fragment of the given size can be written to output(rp). If the pipe is full and has not
+     * reached the max slab bits the producer moves to a new pipe of twice the size.
+     */
+    public static <S extends MessageSchema> boolean hasRoomForWrite(ResizablePipe<S> rp, int size) {
+        if (null!=rp.replaced && Pipe.workingHeadPosition(rp.replaced)!=rp.replacedHead) {
+            throw new UnsupportedOperationException("Fragment written to "+rp.replaced+" after it was replaced by "+rp.output+
+                                                    ", views must be taken again when ResizablePipe.output changes");
+        }
+        //room for the EOF marker is always held back so the pipe can be ended when it is replaced
+        return Pipe.hasRoomForWrite(rp.output, size+Pipe.EOF_SIZE) || grow(rp);
+    }
+
+    private static <S extends MessageSchema> boolean grow(ResizablePipe<S> rp) {
+        Pipe<S> old = rp.output;
+        if (old.bitsOfSlabRing>=rp.maxSlabBits || !Pipe.hasRoomForWrite(old, Pipe.EOF_SIZE)) {
+            return false;
+        }
+        Pipe<S> pipe = new Pipe<S>(old.config().grow2x());
+        pipe.initBuffers();
+        //the consumer must be able to find the new pipe once it reads the marker
+        rp.grown.add(pipe);
+        Pipe.publishAllBatchedWrites(old);
+        Pipe.publishEOF(old);
+
+        rp.replaced = old;
+        rp.replacedHead = Pipe.workingHeadPosition(old);
+        rp.output = pipe;
+        return true;
+    }
+
+    /**
+     * Returns true if a fragment can be read from input(rp). The marker which ends a replaced pipe is consumed here and
+     * is never seen by the caller, an EOF written by the producer is returned as usual.
+     */
+    public static <S extends MessageSchema> boolean hasContentToRead(ResizablePipe<S> rp) {
+        Pipe<S> pipe = rp.input;
+        while (Pipe.hasContentToRead(pipe) && !rp.grown.isEmpty() && Pipe.peekInt(pipe)<0) {
+            Pipe.takeMsgIdx(pipe);
+            Pipe.confirmLowLevelRead(pipe, Pipe.EOF_SIZE);
+            Pipe.releaseReadLock(pipe);
+            Pipe.releaseAllBatchedReads(pipe);
+            if (Pipe.contentRemaining(pipe)>0) {
+                throw new UnsupportedOperationException("Fragment written to "+pipe+" after it was replaced"+
+                                                        ", views must be taken again when ResizablePipe.output changes");
+            }
+            pipe = rp.input = rp.grown.poll();
+        }
+        return Pipe.hasContentToRead(pipe);
+    }
+
+}
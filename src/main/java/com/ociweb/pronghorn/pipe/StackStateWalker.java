@@ -109,13 +109,16 @@ class StackStateWalker {
 		final long target = ringBufferConsumer.from.fragDataSize[ringBufferConsumer.cursor] + ringBufferConsumer.nextWorkingTail; //One for the template ID NOTE: Caution, this simple implementation does NOT support preamble
 						
 		if (ringBuffer.llWrite.llwHeadPosCache >= target) {
-			prepReadFragment(ringBuffer, ringBufferConsumer, ringBufferConsumer.from.fragScriptSize[ringBufferConsumer.cursor], ringBufferConsumer.nextWorkingTail, target);
+			prepReadFragment(ringBuffer, ringBufferConsumer, ringBufferConsumer.nextWorkingTail, target);
 		} else {
 			//only update the cache with this CAS call if we are still waiting for data
 			if ((ringBuffer.llWrite.llwHeadPosCache = Pipe.headPosition(ringBuffer)) >= target) {
-				prepReadFragment(ringBuffer, ringBufferConsumer, ringBufferConsumer.from.fragScriptSize[ringBufferConsumer.cursor], ringBufferConsumer.nextWorkingTail, target);
+				prepReadFragment(ringBuffer, ringBufferConsumer, ringBufferConsumer.nextWorkingTail, target);
 			} else {
 				ringBufferConsumer.isNewMessage = false; 
+				if (null!=ringBuffer.metrics) {
+				    PipeMetrics.contentStall(ringBuffer.metrics);
+				}
 								
 				assert (ringBuffer.llWrite.llwHeadPosCache<=ringBufferConsumer.nextWorkingTail) : 
 					  "Partial fragment published!  expected "+(target-ringBufferConsumer.nextWorkingTail)+" but found "+(ringBuffer.llWrite.llwHeadPosCache-ringBufferConsumer.nextWorkingTail);
@@ -148,6 +151,9 @@ class StackStateWalker {
 			} else {
 				//rare slow case where we dont find any data
 				ringBufferConsumer.isNewMessage = false; 
+				if (null!=ringBuffer.metrics) {
+				    PipeMetrics.contentStall(ringBuffer.metrics);
+				}
 				return false;					
 			}
 		}
@@ -156,7 +162,7 @@ class StackStateWalker {
 
 
 	private static void prepReadFragment(Pipe ringBuffer,
-			final StackStateWalker ringBufferConsumer, final int scriptFragSize,
+			final StackStateWalker ringBufferConsumer,
 			long tmpNextWokingTail, final long target) {
 
 		//from the last known fragment move up the working tail position to this new fragment location
@@ -167,25 +173,22 @@ class StackStateWalker {
 		
 		assert(Pipe.getWorkingBlobRingTailPosition(ringBuffer) <= Pipe.getBlobRingHeadPosition(ringBuffer)) : "expected to have data up to "+Pipe.getWorkingBlobRingTailPosition(ringBuffer)+" but we only have "+Pipe.getBlobRingHeadPosition(ringBuffer);
 
-		int lastScriptPos = (ringBufferConsumer.nextCursor = ringBufferConsumer.cursor + scriptFragSize) -1;
-		prepReadFragment2(ringBuffer, ringBufferConsumer, tmpNextWokingTail, target, lastScriptPos, ringBufferConsumer.from.tokens[lastScriptPos]);	
+		ringBufferConsumer.nextCursor = ringBufferConsumer.from.fragNextCursor[ringBufferConsumer.cursor];
+		prepReadFragment2(ringBuffer, ringBufferConsumer, tmpNextWokingTail, target, ringBufferConsumer.from.fragWalkAction[ringBufferConsumer.cursor]);	
 	
 	}
 
 
 	private static void prepReadFragment2(Pipe ringBuffer,
 			final StackStateWalker ringBufferConsumer, long tmpNextWokingTail,
-			final long target, int lastScriptPos, int lastTokenOfFragment) {
+			final long target, int walkAction) {
 	    
 	    assert(isValidFragmentStart(ringBuffer, target)) : "Bad target of "+target+" for new fragment start";
 	    
-		//                                   11011    must not equal               10000
-        if ( (lastTokenOfFragment &  ( 0x1B <<TokenBuilder.SHIFT_TYPE)) != ( 0x10<<TokenBuilder.SHIFT_TYPE ) ) {
-        	 ringBufferConsumer.nextWorkingTail = target;//save the size of this new fragment we are about to read 
-        } else {
-        	 openOrCloseSequenceWhileInsideFragment(ringBuffer,	ringBufferConsumer, tmpNextWokingTail, lastScriptPos, lastTokenOfFragment);
-        	 ringBufferConsumer.nextWorkingTail = target;
+        if (FieldReferenceOffsetManager.WALK_NONE != walkAction) {
+        	 openOrCloseSequenceWhileInsideFragment(ringBuffer,	ringBufferConsumer, tmpNextWokingTail, walkAction);
         }
+        ringBufferConsumer.nextWorkingTail = target;//save the size of this new fragment we are about to read
         
 	}
 
@@ -227,26 +230,19 @@ class StackStateWalker {
 
     private static void openOrCloseSequenceWhileInsideFragment(
 			Pipe ringBuffer, final StackStateWalker ringBufferConsumer,
-			long tmpNextWokingTail, int lastScriptPos, int lastTokenOfFragment) {
+			long tmpNextWokingTail, int walkAction) {
 		//this is a group or groupLength that has appeared while inside a fragment that does not start a message
-
-		 //this single bit on indicates that this starts a sequence length  00100
-		 if ( (lastTokenOfFragment &  ( 0x04 <<TokenBuilder.SHIFT_TYPE)) == 0 ) {
-		     if (//if this is a closing sequence group.
-		             (lastTokenOfFragment & ( (OperatorMask.Group_Bit_Seq|OperatorMask.Group_Bit_Close) <<TokenBuilder.SHIFT_OPER)) == ((OperatorMask.Group_Bit_Seq|OperatorMask.Group_Bit_Close)<<TokenBuilder.SHIFT_OPER)          
-		             ) {    	         
-		         continueSequence(ringBufferConsumer);
-		     }
+		 if (FieldReferenceOffsetManager.WALK_CLOSE_SEQUENCE == walkAction) {
+		     continueSequence(ringBufferConsumer);
 		 } else {
-		     openSequenceWhileInsideFragment(ringBuffer, ringBufferConsumer, tmpNextWokingTail, lastScriptPos);
+		     openSequenceWhileInsideFragment(ringBuffer, ringBufferConsumer, tmpNextWokingTail);
 		 }
-		 
 	}
 
     private static void openSequenceWhileInsideFragment(Pipe ringBuffer, final StackStateWalker ringBufferConsumer,
-            long tmpNextWokingTail, int lastScriptPos) {
+            long tmpNextWokingTail) {
         //this is a groupLength Sequence that starts inside of a fragment 
-         int seqLength = Pipe.primaryBuffer(ringBuffer)[(int)(ringBufferConsumer.from.fragDataSize[lastScriptPos] + tmpNextWokingTail)&ringBuffer.mask];
+         int seqLength = Pipe.primaryBuffer(ringBuffer)[(int)(ringBufferConsumer.from.fragSeqLengthOffset[ringBufferConsumer.cursor] + tmpNextWokingTail)&ringBuffer.mask];
          //now start new sequence
          ringBufferConsumer.seqStack[++ringBufferConsumer.seqStackHead] = seqLength;
          ringBufferConsumer.seqCursors[ringBufferConsumer.seqStackHead] = ringBufferConsumer.nextCursor;
@@ -371,14 +367,10 @@ class StackStateWalker {
 	
 		ringBufferConsumer.cursor = ringBufferConsumer.msgIdx;  
 		
-		int lastScriptPos = (ringBufferConsumer.nextCursor = ringBufferConsumer.msgIdx + ringBufferConsumer.from.fragScriptSize[ringBufferConsumer.msgIdx]) -1;
-		if (TypeMask.GroupLength == ((ringBufferConsumer.from.tokens[lastScriptPos] >>> TokenBuilder.SHIFT_TYPE) & TokenBuilder.MASK_TYPE)) {
+		ringBufferConsumer.nextCursor = ringBufferConsumer.from.fragNextCursor[ringBufferConsumer.msgIdx];
+		if (FieldReferenceOffsetManager.WALK_OPEN_SEQUENCE == ringBufferConsumer.from.fragWalkAction[ringBufferConsumer.msgIdx]) {
 			//Can not assume end of message any more.
-			int seqLength = Pipe.primaryBuffer(ringBuffer)[(int)(ringBufferConsumer.from.fragDataSize[lastScriptPos] + tmpNextWokingTail)&ringBuffer.mask];
-            final StackStateWalker ringBufferConsumer1 = ringBufferConsumer;
-			//now start new sequence
-            ringBufferConsumer1.seqStack[++ringBufferConsumer1.seqStackHead] = seqLength;
-            ringBufferConsumer1.seqCursors[ringBufferConsumer1.seqStackHead] = ringBufferConsumer1.nextCursor;
+			openSequenceWhileInsideFragment(ringBuffer, ringBufferConsumer, tmpNextWokingTail);
 		}
 	}
 
@@ -474,7 +466,7 @@ class StackStateWalker {
 
 	private static boolean copyFragment1(Pipe inputRing, Pipe outputRing, long start, int spaceNeeded, int bytesToCopy) {
 		
-		if ((spaceNeeded >  outputRing.sizeOfSlabRing-(int)(Pipe.workingHeadPosition(outputRing) - Pipe.tailPosition(outputRing)) )) {
+		if ((spaceNeeded >  outputRing.sizeOfSlabRing-(int)(Pipe.workingHeadPosition(outputRing) - Pipe.producerTailPosition(outputRing)) )) {
 			return false;
 		}
 		copyFragment2(inputRing, outputRing, (int)start, spaceNeeded, bytesToCopy);		
@@ -515,11 +507,11 @@ class StackStateWalker {
     }
 
 	private static boolean hasRoomForFragmentOfSizeXSlow(Pipe pipe, long limit) {
-		return (pipe.llRead.llrTailPosCache =  Pipe.tailPosition(pipe)) >= limit;
+		return (pipe.llRead.llrTailPosCache =  Pipe.producerTailPosition(pipe)) >= limit;
 	}
 
     static boolean tryWriteFragment0(Pipe pipe, int cursorPosition, int fragSize, long target) {
-        assert(pipe.llRead.llrTailPosCache <= Pipe.tailPosition(pipe)) : "Tail cache corruption";
+        assert(pipe.llRead.llrTailPosCache <= Pipe.producerTailPosition(pipe)) : "Tail cache corruption";
         return tryWriteFragment1(pipe, cursorPosition, Pipe.from(pipe), fragSize, target, pipe.llRead.llrTailPosCache >=  target);
     }
     
@@ -531,9 +523,11 @@ class StackStateWalker {
             prepWriteFragment(pipe, cursorPosition, from, fragSize);
         } else {
             //only if there is no room should we hit the CAS tailPos and then try again.
-            hasRoom = (pipe.llRead.llrTailPosCache = Pipe.tailPosition(pipe)) >=  target;       
+            hasRoom = (pipe.llRead.llrTailPosCache = Pipe.producerTailPosition(pipe)) >=  target;       
             if (hasRoom) {      
                 prepWriteFragment(pipe, cursorPosition, from, fragSize);
+            } else if (null!=pipe.metrics) {
+                PipeMetrics.roomStall(pipe.metrics);
             }
         }
     
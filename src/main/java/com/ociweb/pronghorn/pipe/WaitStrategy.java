@@ -0,0 +1,102 @@
+package com.ociweb.pronghorn.pipe;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides what a thread does while it is blocked on a pipe waiting for room to write or for content to read.
+ *
+ * Each pipe uses the strategy of its PipeConfig so the trade between latency and CPU can be made per pipe.
+ * The idle method is called once per failed check with an iteration count which starts at zero for each wait.
+ */
+public abstract class WaitStrategy {
+
+    /**
+     * Never gives up the core, lowest latency but burns a full core while waiting.
+     */
+    public static final WaitStrategy BUSY_SPIN = new WaitStrategy() {
+        @Override
+        public void idle(Pipe<?> pipe, int iteration, boolean forContent) {
+        }
+    };
+
+    /**
+     * Yields on every check, this was the only behavior before wait strategies could be selected and is the default.
+     */
+    public static final WaitStrategy YIELD = new WaitStrategy() {
+        @Override
+        public void idle(Pipe<?> pipe, int iteration, boolean forContent) {
+            Thread.yield();
+        }
+    };
+
+    /**
+     * Busy spins for the given count of checks before yielding on each check.
+     */
+    public static WaitStrategy spinThenYield(final int spins) {
+        return new WaitStrategy() {
+            @Override
+            public void idle(Pipe<?> pipe, int iteration, boolean forContent) {
+                if (iteration >= spins) {
+                    Thread.yield();
+                }
+            }
+        };
+    }
+
+    /**
+     * Busy spins, then yields, then parks for the given nanoseconds on each check.  This bounds the CPU used by an idle
+     * stage while keeping the wake up latency under parkNanos plus the OS scheduling delay.
+     */
+    public static WaitStrategy spinThenPark(final int spins, final int yields, final long parkNanos) {
+        return new WaitStrategy() {
+            @Override
+            public void idle(Pipe<?> pipe, int iteration, boolean forContent) {
+                if (iteration >= spins) {
+                    if (iteration < spins+yields) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(pipe, parkNanos);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Parks the waiting thread until the other side publishes or releases.  The producer unparks a waiting consumer when
+     * it publishes the head and the consumer unparks a waiting producer when it releases the tail.  Only one waiting
+     * thread per side of each pipe is unparked, the park is bounded by maxParkNanos so any other waiter still makes progress.
+     */
+    public static WaitStrategy blocking(final long maxParkNanos) {
+        return new WaitStrategy(true) {
+            @Override
+            public void idle(Pipe<?> pipe, int iteration, boolean forContent) {
+                //registration must come before the condition is checked again, the first pass only registers
+                //so a publish which happens before the registration is never missed.
+                Pipe.registerWaiter(pipe, forContent);
+                if (iteration>0) {
+                    LockSupport.parkNanos(pipe, maxParkNanos);
+                }
+            }
+        };
+    }
+
+    final boolean wakesWaiters;
+
+    protected WaitStrategy() {
+        this(false);
+    }
+
+    WaitStrategy(boolean wakesWaiters) {
+        this.wakesWaiters = wakesWaiters;
+    }
+
+    /**
+     * Called each time the check for room or content fails.
+     * @param pipe the pipe being waited on
+     * @param iteration count of failed checks so far in this wait, starts at zero
+     * @param forContent true when the consumer waits for content, false when the producer waits for room
+     */
+    public abstract void idle(Pipe<?> pipe, int iteration, boolean forContent);
+
+}
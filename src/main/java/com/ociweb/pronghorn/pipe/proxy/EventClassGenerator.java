@@ -0,0 +1,370 @@
+package com.ociweb.pronghorn.pipe.proxy;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.tools.ToolProvider;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.pipe.PipeWriter;
+import com.ociweb.pronghorn.pipe.token.TokenBuilder;
+import com.ociweb.pronghorn.pipe.token.TypeMask;
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessCompiler;
+import com.ociweb.pronghorn.util.Appendables;
+
+/**
+ * Generates classes which implement the ProngTemplateMessage interfaces used by EventConsumer and EventProducer.
+ * Each annotated method calls PipeReader or PipeWriter directly with its LOC as a literal so there is no boxing,
+ * no Object[] of arguments and no dispatch through the invocation handlers.
+ *
+ * The generated code is the same as the anonymous classes in InputPipeReaderMethod and OutputPipeWriterMethod.
+ */
+public class EventClassGenerator {
+
+    private static final String tab = "    ";
+    private static final boolean hasCompiler = null!=ToolProvider.getSystemJavaCompiler();
+
+    //compiling is slow so each class is only built once for each interface, schema and message. The interface and
+    //schema are weak keys and the generated class, which refers to its interface, is softly held so it outlives its
+    //instances but the cache never keeps user classes or their loaders alive under memory pressure
+    private static final Map<Class<?>, Map<FieldReferenceOffsetManager, Map<Integer, SoftReference<Class<?>>>>> built =
+                                        new WeakHashMap<Class<?>, Map<FieldReferenceOffsetManager, Map<Integer, SoftReference<Class<?>>>>>();
+
+    /**
+     * Generated classes need a JDK and are loaded in their own class loader so only public interfaces can be implemented.
+     */
+    public static boolean isSupported(Class<?> clazz) {
+        if (!hasCompiler) {
+            return false;
+        }
+        Class<?> c = clazz;
+        while (null!=c) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+            c = c.getEnclosingClass();
+        }
+        return clazz.isInterface() && null!=clazz.getCanonicalName();
+    }
+
+    /**
+     * New instance of a generated class which writes the message msgIdx through the methods of clazz.
+     */
+    public static <T> T buildWriter(Pipe pipe, int msgIdx, Class<T> clazz) {
+        return newInstance(pipe, clazz, buildClass(pipe, msgIdx, clazz, true));
+    }
+
+    /**
+     * New instance of a generated class which reads the message msgIdx through the methods of clazz.
+     */
+    public static <T> T buildReader(Pipe pipe, int msgIdx, Class<T> clazz) {
+        return newInstance(pipe, clazz, buildClass(pipe, msgIdx, clazz, false));
+    }
+
+    private static <T> T newInstance(Pipe pipe, Class<T> clazz, Class<?> generated) {
+        try {
+            Constructor<?> constructor = generated.getConstructor(Pipe.class);
+            return clazz.cast(constructor.newInstance(pipe));
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Unable to construct generated class for "+clazz.getName(), e);
+        }
+    }
+
+    static synchronized Class<?> buildClass(Pipe pipe, int msgIdx, Class<?> clazz, boolean isWriter) {
+        Map<FieldReferenceOffsetManager, Map<Integer, SoftReference<Class<?>>>> bySchema = built.get(clazz);
+        if (null==bySchema) {
+            bySchema = new WeakHashMap<FieldReferenceOffsetManager, Map<Integer, SoftReference<Class<?>>>>();
+            built.put(clazz, bySchema);
+        }
+        Map<Integer, SoftReference<Class<?>>> byMessage = bySchema.get(Pipe.from(pipe));
+        if (null==byMessage) {
+            byMessage = new HashMap<Integer, SoftReference<Class<?>>>();
+            bySchema.put(Pipe.from(pipe), byMessage);
+        }
+        Integer key = (msgIdx<<1) | (isWriter ? 1 : 0);
+        SoftReference<Class<?>> ref = byMessage.get(key);
+        Class<?> result = null==ref ? null : ref.get();
+        if (null==result) {
+            result = compileClass(pipe, msgIdx, clazz, isWriter);
+            byMessage.put(key, new SoftReference<Class<?>>(result));
+        }
+        return result;
+    }
+
+    private static Class<?> compileClass(Pipe pipe, int msgIdx, Class<?> clazz, boolean isWriter) {
+        String className = clazz.getSimpleName()+(isWriter ? "PipeWriter" : "PipeReader")+msgIdx;
+        StringBuilder target = new StringBuilder();
+        try {
+            generate(target, className, pipe, msgIdx, clazz, isWriter);
+            return TemplateProcessCompiler.compile(TemplateProcessCompiler.PACKAGE_NAME, className, target, clazz.getClassLoader());
+        } catch (IOException e) {
+            throw new UnsupportedOperationException("Unable to generate code for "+clazz.getName(), e);
+        } catch (ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Unable to compile generated code for "+clazz.getName(), e);
+        }
+    }
+
+    static void generate(Appendable target, String className, Pipe pipe, int msgIdx, Class<?> clazz, boolean isWriter) throws IOException {
+        FieldReferenceOffsetManager from = Pipe.from(pipe);
+
+        target.append("package ").append(TemplateProcessCompiler.PACKAGE_NAME).append(";\n");
+        target.append("import ").append(Pipe.class.getCanonicalName()).append(";\n");
+        target.append("import ").append(PipeReader.class.getCanonicalName()).append(";\n");
+        target.append("import ").append(PipeWriter.class.getCanonicalName()).append(";\n");
+        target.append("\n");
+        target.append("public class ").append(className).append(" implements ").append(clazz.getCanonicalName()).append(" {\n");
+        target.append("\n");
+        target.append("private static final char[] EMPTY_CHAR = new char[0];\n");
+        target.append("private static final byte[] EMPTY_BYTES = new byte[0];\n");
+        target.append("private final Pipe pipe;\n");
+        target.append("\n");
+        target.append("public ").append(className).append("(Pipe pipe) {\n");
+        target.append(tab).append("this.pipe = pipe;\n");
+        target.append("}\n");
+
+        final int absent32 = FieldReferenceOffsetManager.getAbsent32Value(from);
+        final long absent64 = FieldReferenceOffsetManager.getAbsent64Value(from);
+
+        Method[] methods = clazz.getMethods();
+        for(int m = 0; m<methods.length; m++) {
+            Method method = methods[m];
+            if (!Modifier.isAbstract(method.getModifiers())) {
+                continue;
+            }
+            appendSignature(target, method);
+
+            ProngTemplateField fieldAnnonation = method.getAnnotation(ProngTemplateField.class);
+            if (null==fieldAnnonation) {
+                target.append(tab).append("throw new UnsupportedOperationException(\"No field mapped to this method\");\n");
+            } else {
+                int fieldLoc = FieldReferenceOffsetManager.lookupFieldLocator(fieldAnnonation.fieldId(), msgIdx, from);
+                int extractedType = (fieldLoc >> FieldReferenceOffsetManager.RW_FIELD_OFF_BITS) & TokenBuilder.MASK_TYPE;
+                String loc = Integer.toString(fieldLoc);
+                if (isWriter) {
+                    appendWrite(target, method, extractedType, loc, fieldAnnonation.decimalPlaces(), absent32, absent64);
+                    appendWriterReturn(target, method, clazz);
+                } else {
+                    appendRead(target, method, extractedType, loc, absent32, absent64);
+                }
+            }
+            target.append("}\n");
+        }
+        target.append("}\n");
+    }
+
+    private static void appendSignature(Appendable target, Method method) throws IOException {
+        Class<?>[] params = method.getParameterTypes();
+        target.append("\n");
+        target.append("public ").append(method.getReturnType().getCanonicalName()).append(' ').append(method.getName()).append('(');
+        for(int i = 0; i<params.length; i++) {
+            if (i>0) {
+                target.append(", ");
+            }
+            Appendables.appendValue(target.append(params[i].getCanonicalName()).append(" p"), i);
+        }
+        target.append(") {\n");
+    }
+
+    private static void appendWriterReturn(Appendable target, Method method, Class<?> clazz) throws IOException {
+        Class<?> returnType = method.getReturnType();
+        if (void.class == returnType) {
+            return;
+        }
+        if (returnType.isAssignableFrom(clazz)) {
+            target.append(tab).append("return this;\n");
+        } else if (boolean.class == returnType) {
+            target.append(tab).append("return false;\n");
+        } else if (returnType.isPrimitive()) {
+            target.append(tab).append("return 0;\n");
+        } else {
+            target.append(tab).append("return null;\n");
+        }
+    }
+
+    private static Appendable appendNumber(Appendable target, Class<?> type, String primitive, String var) throws IOException {
+        if (type.isPrimitive()) {
+            return target.append('(').append(primitive).append(')').append(var);
+        } else if (Number.class.isAssignableFrom(type)) {
+            return target.append(var).append('.').append(primitive).append("Value()");
+        } else {
+            return target.append("((Number)").append(var).append(").").append(primitive).append("Value()");
+        }
+    }
+
+    private static void appendWrite(Appendable target, Method method, int extractedType, String loc, int decimalPlaces, int absent32, long absent64) throws IOException {
+        Class<?>[] params = method.getParameterTypes();
+        if (params.length<1) {
+            throw new UnsupportedOperationException("Method "+method.getName()+" must take the value to be written");
+        }
+        Class<?> type = params[0];
+        boolean isOptional = 1==(1&extractedType) && !type.isPrimitive();
+        String pad = tab;
+        if (isOptional) {
+            target.append(tab).append("if (null==p0) {\n");
+            pad = tab+tab;
+            switch (extractedType) {
+                case TypeMask.IntegerSignedOptional:
+                case TypeMask.IntegerUnsignedOptional:
+                    Appendables.appendValue(target.append(pad).append("PipeWriter.writeInt(pipe, ").append(loc).append(", "), absent32).append(");\n");
+                    break;
+                case TypeMask.LongSignedOptional:
+                case TypeMask.LongUnsignedOptional:
+                    Appendables.appendValue(target.append(pad).append("PipeWriter.writeLong(pipe, ").append(loc).append(", "), absent64).append("L);\n");
+                    break;
+                case TypeMask.TextASCIIOptional:
+                    target.append(pad).append("PipeWriter.writeASCII(pipe, ").append(loc).append(", EMPTY_CHAR, 0, -1);\n");
+                    break;
+                case TypeMask.TextUTF8Optional:
+                    target.append(pad).append("PipeWriter.writeUTF8(pipe, ").append(loc).append(", EMPTY_CHAR, 0, -1);\n");
+                    break;
+                case TypeMask.DecimalOptional:
+                    Appendables.appendValue(Appendables.appendValue(target.append(pad).append("PipeWriter.writeDecimal(pipe, ").append(loc).append(", "), absent32).append(", "), absent64).append("L);\n");
+                    break;
+                case TypeMask.ByteVectorOptional:
+                    target.append(pad).append("PipeWriter.writeBytes(pipe, ").append(loc).append(", EMPTY_BYTES, 0, -1, 1);\n");
+                    break;
+            }
+            target.append(tab).append("} else {\n");
+        }
+
+        switch (extractedType) {
+            case TypeMask.IntegerUnsigned:
+            case TypeMask.IntegerUnsignedOptional:
+            case TypeMask.IntegerSigned:
+            case TypeMask.IntegerSignedOptional:
+                appendNumber(target.append(pad).append("PipeWriter.writeInt(pipe, ").append(loc).append(", "), type, "int", "p0").append(");\n");
+                break;
+            case TypeMask.LongUnsigned:
+            case TypeMask.LongUnsignedOptional:
+            case TypeMask.LongSigned:
+            case TypeMask.LongSignedOptional:
+                appendNumber(target.append(pad).append("PipeWriter.writeLong(pipe, ").append(loc).append(", "), type, "long", "p0").append(");\n");
+                break;
+            case TypeMask.TextASCII:
+            case TypeMask.TextASCIIOptional:
+                appendText(target.append(pad).append("PipeWriter.writeASCII(pipe, ").append(loc).append(", "), type).append(");\n");
+                break;
+            case TypeMask.TextUTF8:
+            case TypeMask.TextUTF8Optional:
+                appendText(target.append(pad).append("PipeWriter.writeUTF8(pipe, ").append(loc).append(", "), type).append(");\n");
+                break;
+            case TypeMask.Decimal:
+            case TypeMask.DecimalOptional:
+                appendNumber(target.append(pad).append("PipeWriter.writeDouble(pipe, ").append(loc).append(", "), type, "double", "p0");
+                Appendables.appendValue(target.append(", "), decimalPlaces).append(");\n");
+                break;
+            case TypeMask.ByteVector:
+            case TypeMask.ByteVectorOptional:
+                target.append(pad).append("PipeWriter.writeBytes(pipe, ").append(loc).append(", ");
+                if (ByteBuffer.class.isAssignableFrom(type)) {
+                    target.append("p0, ");
+                    if (params.length>1) {
+                        appendNumber(target, params[1], "int", "p1");
+                    } else {
+                        target.append("p0.remaining()");
+                    }
+                    target.append(");\n");
+                } else {
+                    target.append("(byte[])p0);\n");
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("No support yet for "+TypeMask.xmlTypeName[extractedType]);
+        }
+        if (isOptional) {
+            target.append(tab).append("}\n");
+        }
+    }
+
+    private static Appendable appendText(Appendable target, Class<?> type) throws IOException {
+        if (CharSequence.class.isAssignableFrom(type)) {
+            return target.append("p0");
+        } else {
+            return target.append("p0.toString()");
+        }
+    }
+
+    private static void appendRead(Appendable target, Method method, int extractedType, String loc, int absent32, long absent64) throws IOException {
+        Class<?> returnType = method.getReturnType();
+        Class<?>[] params = method.getParameterTypes();
+        boolean canBeNull = !returnType.isPrimitive();
+        //value is still read for void methods so any target argument is populated
+        String cast = void.class==returnType ? "" : "return ("+returnType.getCanonicalName()+")";
+        String absentReturn = void.class==returnType ? "return;\n" : (canBeNull ? "return null;\n" : "return 0;\n");
+
+        switch (extractedType) {
+            case TypeMask.IntegerUnsigned:
+            case TypeMask.IntegerSigned:
+                target.append(tab).append(cast).append("PipeReader.readInt(pipe, ").append(loc).append(");\n");
+                break;
+            case TypeMask.IntegerUnsignedOptional:
+            case TypeMask.IntegerSignedOptional:
+                target.append(tab).append("int value = PipeReader.readInt(pipe, ").append(loc).append(");\n");
+                appendOptionalReturn(target, canBeNull && void.class!=returnType, Integer.toString(absent32), cast);
+                break;
+            case TypeMask.LongUnsigned:
+            case TypeMask.LongSigned:
+                target.append(tab).append(cast).append("PipeReader.readLong(pipe, ").append(loc).append(");\n");
+                break;
+            case TypeMask.LongUnsignedOptional:
+            case TypeMask.LongSignedOptional:
+                target.append(tab).append("long value = PipeReader.readLong(pipe, ").append(loc).append(");\n");
+                appendOptionalReturn(target, canBeNull && void.class!=returnType, Long.toString(absent64)+"L", cast);
+                break;
+            case TypeMask.TextASCII:
+            case TypeMask.TextASCIIOptional:
+            case TypeMask.TextUTF8:
+            case TypeMask.TextUTF8Optional:
+                String readMethod = extractedType<TypeMask.TextUTF8 ? "readASCII" : "readUTF8";
+                if (1==(1&extractedType)) {
+                    target.append(tab).append("if (PipeReader.readDataLength(pipe, ").append(loc).append(")<0) {\n");
+                    target.append(tab).append(tab).append(absentReturn);
+                    target.append(tab).append("}\n");
+                }
+                target.append(tab).append(cast).append("PipeReader.").append(readMethod).append("(pipe, ").append(loc).append(", (Appendable)p0);\n");
+                break;
+            case TypeMask.Decimal:
+                target.append(tab).append(cast).append("PipeReader.readDouble(pipe, ").append(loc).append(");\n");
+                break;
+            case TypeMask.DecimalOptional:
+                target.append(tab).append("if (PipeReader.readDecimalExponent(pipe, ").append(loc).append(")==").append(Integer.toString(absent32)).append(") {\n");
+                target.append(tab).append(tab).append("return null;\n");
+                target.append(tab).append("}\n");
+                target.append(tab).append(cast).append("PipeReader.readDouble(pipe, ").append(loc).append(");\n");
+                break;
+            case TypeMask.ByteVector:
+            case TypeMask.ByteVectorOptional:
+                if (TypeMask.ByteVectorOptional==extractedType) {
+                    target.append(tab).append("if (PipeReader.readDataLength(pipe, ").append(loc).append(")<=0) {\n");
+                    target.append(tab).append(tab).append(absentReturn);
+                    target.append(tab).append("}\n");
+                }
+                target.append(tab).append(cast).append("PipeReader.readBytes(pipe, ").append(loc);
+                for(int i = 0; i<params.length; i++) {
+                    Appendables.appendValue(target.append(", p"), i);
+                }
+                target.append(");\n");
+                break;
+            default:
+                throw new UnsupportedOperationException("No support yet for "+TypeMask.xmlTypeName[extractedType]);
+        }
+    }
+
+    private static void appendOptionalReturn(Appendable target, boolean canBeNull, String absent, String cast) throws IOException {
+        if (canBeNull) {
+            target.append(tab).append("return value==").append(absent).append(" ? null : ").append(cast).append("value;\n");
+        } else {
+            target.append(tab).append(cast).append("value;\n");
+        }
+    }
+
+}
@@ -2,12 +2,17 @@ package com.ociweb.pronghorn.pipe.proxy;
 
 import java.lang.reflect.Proxy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeWriter;
 
 public class EventConsumer {
 
+	private static final Logger log = LoggerFactory.getLogger(EventConsumer.class);
+
 	private final Pipe output;	
 	private Object cached;
 	private int    cachedMsgId;
@@ -35,10 +40,7 @@ public class EventConsumer {
 
 		if (PipeWriter.tryWriteFragment(consumer.output, msgIdx)) {
 			
-			T result = (T) Proxy.newProxyInstance(
-								clazz.getClassLoader(),
-								new Class[] { clazz },
-								new OutputPipeInvocationHandler(consumer.output, msgIdx, clazz));	
+			T result = build(consumer.output, msgIdx, clazz);
 			
 			consumer.cached = result; //TODO: needs smarter pool but this is fine for now.
 			consumer.cachedMsgId = msgIdx;
@@ -50,6 +52,25 @@ public class EventConsumer {
 		}
 	}
 
+	/**
+	 * Generated classes call the pipe directly, the proxy is only used when they can not be built.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T build(Pipe pipe, int msgIdx, Class<T> clazz) {
+		if (EventClassGenerator.isSupported(clazz)) {
+			try {
+				return EventClassGenerator.buildWriter(pipe, msgIdx, clazz);
+			} catch (RuntimeException e) {
+				//any failure to generate, compile or load the class leaves the proxy which always works
+				log.info("Unable to generate class for {}, falling back to reflection proxy", clazz.getName(), e);
+			}
+		}
+		return (T) Proxy.newProxyInstance(
+						clazz.getClassLoader(),
+						new Class[] { clazz },
+						new OutputPipeInvocationHandler(pipe, msgIdx, clazz));
+	}
+
 	public static void publish(EventConsumer consumer, Object dq) {
 	    assert(null==consumer.cached || dq==consumer.cached);
 		PipeWriter.publishWrites(consumer.output);
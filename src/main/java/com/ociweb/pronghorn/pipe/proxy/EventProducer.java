@@ -2,12 +2,17 @@ package com.ociweb.pronghorn.pipe.proxy;
 
 import java.lang.reflect.Proxy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeReader;
 
 public class EventProducer {
 
+	private static final Logger log = LoggerFactory.getLogger(EventProducer.class);
+
 	private final Pipe input;	
 	private Object cached;
 	private int    cachedMsgId;
@@ -36,10 +41,7 @@ public class EventProducer {
 
 		if (PipeReader.tryReadFragment(consumer.input)) {
 			
-			T result = (T) Proxy.newProxyInstance(
-								clazz.getClassLoader(),
-								new Class[] { clazz },
-								new InputPipeInvocationHandler(consumer.input, PipeReader.getMsgIdx(consumer.input), clazz));	
+			T result = build(consumer.input, PipeReader.getMsgIdx(consumer.input), clazz);
 			
 			consumer.cached = result; //TODO: needs smarter pool but this is fine for now.
 			consumer.cachedMsgId = PipeReader.getMsgIdx(consumer.input);
@@ -51,6 +53,25 @@ public class EventProducer {
 		}
 	}
 
+	/**
+	 * Generated classes call the pipe directly, the proxy is only used when they can not be built.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T build(Pipe pipe, int msgIdx, Class<T> clazz) {
+		if (EventClassGenerator.isSupported(clazz)) {
+			try {
+				return EventClassGenerator.buildReader(pipe, msgIdx, clazz);
+			} catch (RuntimeException e) {
+				//any failure to generate, compile or load the class leaves the proxy which always works
+				log.info("Unable to generate class for {}, falling back to reflection proxy", clazz.getName(), e);
+			}
+		}
+		return (T) Proxy.newProxyInstance(
+						clazz.getClassLoader(),
+						new Class[] { clazz },
+						new InputPipeInvocationHandler(pipe, msgIdx, clazz));
+	}
+
 	public static void dispose(EventProducer consumer, Object dq) {
 	    assert(null==consumer.cached || dq==consumer.cached);
 		PipeReader.releaseReadLock(consumer.input);
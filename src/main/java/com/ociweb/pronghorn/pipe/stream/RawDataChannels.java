@@ -0,0 +1,155 @@
+package com.ociweb.pronghorn.pipe.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+/**
+ * Moves the blob content of many RawDataSchema fragments to or from an NIO channel with a single
+ * gathering write or scattering read. The ByteBuffers are the ones already wrapping the blob ring so
+ * no bytes are copied on the way to the channel.
+ *
+ * These use the low level API and must not be mixed with PipeReader or PipeWriter on the same pipe.
+ */
+public class RawDataChannels {
+
+    private static final int STEP = RawDataSchema.FROM.fragDataSize[RawDataSchema.MSG_CHUNKEDSTREAM_1];
+
+    /**
+     * Writes the bytes of every published fragment to the channel in one gathering write and then releases the
+     * fragments which were written in full. Stops before any EOF message or negative length fragment so the caller
+     * can deal with it.
+     *
+     * Non-blocking channels may accept only some of the bytes. The fragment cut short is left on the pipe unchanged
+     * and the blob working tail of this reader is moved past the bytes already written, so the next call continues
+     * from where this one stopped. The ring itself is never modified so broadcast consumers are not disturbed.
+     *
+     * @return count of bytes written, zero if the channel accepted nothing
+     */
+    public static int writeToChannel(Pipe<RawDataSchema> pipe, GatheringByteChannel channel) throws IOException {
+        assert(Pipe.from(pipe) == RawDataSchema.FROM);
+        if (!Pipe.hasContentToRead(pipe)) {
+            return 0;
+        }
+
+        final int[] slab = Pipe.slab(pipe);
+        final int mask = Pipe.slabMask(pipe);
+        final long head = Pipe.headPosition(pipe);
+        long position = Pipe.getWorkingTailPosition(pipe);
+
+        //find the run of complete fragments, their blob data is contiguous in the ring
+        int fragments = 0;
+        int total = 0;
+        int firstMeta = 0;
+        while (position+STEP <= head && slab[mask & (int)position] >= 0) {
+            int len = slab[mask & (int)(position+2)];
+            if (len < 0) {
+                break;
+            }
+            if (0 == fragments) {
+                firstMeta = slab[mask & (int)(position+1)];
+            }
+            total += len;
+            fragments++;
+            position += STEP;
+        }
+        if (0 == fragments) {
+            return 0;
+        }
+
+        //the working tail is only ahead of the first fragment when an earlier call wrote part of it
+        final int offset = Pipe.blobMask(pipe) & (Pipe.getWorkingBlobRingTailPosition(pipe) - Pipe.restorePosition(pipe, firstMeta & Pipe.RELATIVE_POS_MASK));
+        assert(offset < Math.max(1, slab[mask & (int)(Pipe.getWorkingTailPosition(pipe)+2)])) : "Blob working tail is not within the first fragment";
+
+        ByteBuffer[] buffers = Pipe.wrappedReadingBuffers(pipe, firstMeta, total);
+        int skip = Math.min(offset, buffers[0].remaining());
+        buffers[0].position(buffers[0].position()+skip);
+        buffers[1].position(buffers[1].position()+offset-skip);
+
+        int written = 0;
+        long count;
+        while (written < total-offset && (count = channel.write(buffers)) > 0) {
+            written += count;
+        }
+
+        int remaining = offset+written;
+        int consumed = offset; //bytes of the current fragment already counted in the working tail
+        while (--fragments >= 0) {
+            position = Pipe.getWorkingTailPosition(pipe);
+            int len = slab[mask & (int)(position+2)];
+            if (len > remaining) {
+                advanceBlobWorkingTail(pipe, remaining-consumed);
+                break;
+            }
+            Pipe.takeMsgIdx(pipe);
+            Pipe.takeRingByteMetaData(pipe);
+            Pipe.takeRingByteLen(pipe);
+            advanceBlobWorkingTail(pipe, len-consumed);
+            Pipe.confirmLowLevelRead(pipe, STEP);
+            Pipe.releaseReadLock(pipe);
+            remaining -= len;
+            consumed = 0;
+        }
+        return written;
+    }
+
+    private static void advanceBlobWorkingTail(Pipe<RawDataSchema> pipe, int bytes) {
+        Pipe.setBytesWorkingTail(pipe, Pipe.blobMask(pipe) & (Pipe.getWorkingBlobRingTailPosition(pipe)+bytes));
+    }
+
+    /**
+     * Fills as much of the free blob ring as the slab has room to describe with one scattering read and then
+     * publishes the bytes as fragments of no more than maxAvgVarLen each.
+     *
+     * @return count of bytes read, zero if there was no room or no data and -1 at the end of the channel
+     */
+    public static int readFromChannel(ScatteringByteChannel channel, Pipe<RawDataSchema> pipe) throws IOException {
+        assert(Pipe.from(pipe) == RawDataSchema.FROM);
+        if (!Pipe.hasRoomForWrite(pipe, STEP)) {
+            return 0;
+        }
+
+        //the slowest broadcast consumer limits the room
+        final int fragments = (int)((Pipe.producerTailPosition(pipe) + pipe.sizeOfSlabRing - Pipe.workingHeadPosition(pipe)) / STEP);
+        final int start = Pipe.getBlobWorkingHeadPosition(pipe);
+        final int blobUsed = pipe.byteMask & (start - Pipe.getBlobRingTailPosition(pipe));
+        if (0 == blobUsed && Pipe.contentRemaining(pipe) > 0) {
+            return 0; //blob ring is full
+        }
+        final int maxBytes = Math.min(fragments * pipe.maxAvgVarLen, pipe.sizeOfBlobRing - blobUsed);
+        if (maxBytes <= 0) {
+            return 0;
+        }
+
+        ByteBuffer[] buffers = Pipe.wrappedWritingBuffers(start, pipe);
+        final int writeToPos = start & pipe.byteMask;
+        final int endPos = writeToPos + maxBytes;
+        buffers[0].limit(Math.min(pipe.sizeOfBlobRing, endPos));
+        buffers[1].limit(endPos > pipe.sizeOfBlobRing ? endPos - pipe.sizeOfBlobRing : 0);
+
+        long count = channel.read(buffers);
+        if (count <= 0) {
+            return (int)count;
+        }
+
+        int remaining = (int)count;
+        int position = start;
+        while (remaining > 0) {
+            int size = Math.min(pipe.maxAvgVarLen, remaining);
+            Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            Pipe.validateVarLength(pipe, size);
+            Pipe.addBytePosAndLen(pipe, position, size);
+            Pipe.addAndGetBytesWorkingHeadPosition(pipe, size);
+            Pipe.confirmLowLevelWrite(pipe, STEP);
+            Pipe.publishWrites(pipe);
+            position += size;
+            remaining -= size;
+        }
+        return (int)count;
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.ociweb.pronghorn.pipe.stream;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+/**
+ * Appends the blob content of a RawDataSchema pipe to a file. Each call writes every published fragment with
+ * a single gathering write straight out of the blob ring, so the file is written in chunks up to the blob ring size.
+ */
+public class RawDataFileSink {
+
+    /** Never call force, leave it to the OS. */
+    public static final long SYNC_NEVER = -1;
+    /** Call force after every write. */
+    public static final long SYNC_EACH_WRITE = 0;
+
+    private final Pipe<RawDataSchema> pipe;
+    private final FileChannel channel;
+    private final long syncEveryBytes;
+    private final boolean syncMetaData;
+
+    private long unsyncedBytes;
+    private long totalBytesWritten;
+
+    /**
+     * @param syncEveryBytes SYNC_NEVER, SYNC_EACH_WRITE or the count of written bytes after which force is called
+     * @param syncMetaData passed to FileChannel.force, true to also sync the file length and times
+     */
+    public RawDataFileSink(Pipe<RawDataSchema> pipe, FileChannel channel, long syncEveryBytes, boolean syncMetaData) {
+        assert(Pipe.from(pipe) == RawDataSchema.FROM);
+        if (pipe.byteMask<=0) {
+            throw new UnsupportedOperationException("Pipe must have room to send blob data. Found size:"+ pipe.sizeOfBlobRing);
+        }
+        this.pipe = pipe;
+        this.channel = channel;
+        this.syncEveryBytes = syncEveryBytes;
+        this.syncMetaData = syncMetaData;
+    }
+
+    public RawDataFileSink(Pipe<RawDataSchema> pipe, FileChannel channel) {
+        this(pipe, channel, SYNC_NEVER, false);
+    }
+
+    /**
+     * Writes all the published data, if the pipe holds an end of stream marker (negative length or EOF message)
+     * it is consumed and -1 is returned.
+     *
+     * @return count of bytes written or -1 at the end of the stream
+     */
+    public int write() throws IOException {
+        int count = RawDataChannels.writeToChannel(pipe, channel);
+        if (count > 0) {
+            totalBytesWritten += count;
+            unsyncedBytes += count;
+            if (SYNC_NEVER != syncEveryBytes && unsyncedBytes > syncEveryBytes) {
+                sync();
+            }
+        }
+        if (Pipe.hasContentToRead(pipe) && isEndOfStream(pipe)) {
+            consumeEndOfStream(pipe);
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * Forces any written data to the device.
+     */
+    public void sync() throws IOException {
+        channel.force(syncMetaData);
+        unsyncedBytes = 0;
+    }
+
+    /**
+     * Syncs unless the policy is SYNC_NEVER and then closes the channel, the pipe is left as is.
+     */
+    public void close() throws IOException {
+        if (SYNC_NEVER != syncEveryBytes && unsyncedBytes > 0) {
+            sync();
+        }
+        channel.close();
+    }
+
+    public long totalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    private static boolean isEndOfStream(Pipe<RawDataSchema> pipe) {
+        return Pipe.peekInt(pipe) < 0 || Pipe.peekInt(pipe, 2) < 0;
+    }
+
+    private static void consumeEndOfStream(Pipe<RawDataSchema> pipe) {
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        if (msgIdx < 0) {
+            Pipe.confirmLowLevelRead(pipe, Pipe.EOF_SIZE);
+        } else {
+            int meta = Pipe.takeRingByteMetaData(pipe);
+            int len = Pipe.takeRingByteLen(pipe);
+            Pipe.bytePosition(meta, pipe, len);
+            Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        }
+        Pipe.releaseReadLock(pipe);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.ociweb.pronghorn.pipe.stream;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+/**
+ * Reads a file into a RawDataSchema pipe. Each call fills as much of the free blob ring as possible with a single
+ * scattering read directly into the ring and publishes it as fragments of at most maxAvgVarLen bytes.
+ */
+public class RawDataFileSource {
+
+    private final Pipe<RawDataSchema> pipe;
+    private final FileChannel channel;
+    private final boolean publishEndOfStream;
+
+    private long totalBytesRead;
+    private boolean isEndOfFile;
+
+    /**
+     * @param publishEndOfStream when true a zero length fragment with negative length is published after the last bytes
+     */
+    public RawDataFileSource(FileChannel channel, Pipe<RawDataSchema> pipe, boolean publishEndOfStream) {
+        assert(Pipe.from(pipe) == RawDataSchema.FROM);
+        if (pipe.byteMask<=0) {
+            throw new UnsupportedOperationException("Pipe must have room to send blob data. Found size:"+ pipe.sizeOfBlobRing);
+        }
+        this.channel = channel;
+        this.pipe = pipe;
+        this.publishEndOfStream = publishEndOfStream;
+    }
+
+    public RawDataFileSource(FileChannel channel, Pipe<RawDataSchema> pipe) {
+        this(channel, pipe, false);
+    }
+
+    /**
+     * @return count of bytes published, zero if the pipe had no room and -1 once the end of the file has been reached
+     */
+    public int read() throws IOException {
+        if (isEndOfFile) {
+            return -1;
+        }
+        int count = RawDataChannels.readFromChannel(channel, pipe);
+        if (count >= 0) {
+            totalBytesRead += count;
+            return count;
+        }
+        if (publishEndOfStream) {
+            if (!Pipe.hasRoomForWrite(pipe, Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1))) {
+                return 0; //try again once the consumer has made room
+            }
+            int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            Pipe.addNullByteArray(pipe);
+            Pipe.confirmLowLevelWrite(pipe, size);
+            Pipe.publishWrites(pipe);
+        }
+        isEndOfFile = true;
+        return -1;
+    }
+
+    public long totalBytesRead() {
+        return totalBytesRead;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.ociweb.pronghorn.pipe.util.build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import javax.tools.SimpleJavaFileObject;
+
+public class SimpleClassFileObject extends SimpleJavaFileObject {
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final String className;
+
+	public SimpleClassFileObject(String className) {
+		super(URI.create("bytes:///"+className.replace('.', '/')+Kind.CLASS.extension),Kind.CLASS);
+		this.className = className;
+	}
+
+	@Override
+	public OutputStream openOutputStream() {
+		//compiler writes the class file here instead of the disk
+		return bytes;
+	}
+
+	public byte[] getBytes() {
+		return bytes.toByteArray();
+	}
+
+}
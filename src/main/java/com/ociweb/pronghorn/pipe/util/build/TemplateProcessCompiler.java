@@ -0,0 +1,308 @@
+package com.ociweb.pronghorn.pipe.util.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.pronghorn.pipe.MessageSchema;
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.Pipe;
+
+/**
+ * Compiles and loads the generated low level readers and writers at runtime.  Schemas loaded with
+ * TemplateHandler.loadFrom get the same straight line field access as code generated at build time.
+ *
+ * The compile is done in memory with javax.tools so a JDK is required at runtime.  Each compile has its own class
+ * loader so the same class name can be built once for every schema.
+ */
+public class TemplateProcessCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateProcessCompiler.class);
+
+    public static final String PACKAGE_NAME = "com.ociweb.pronghorn.pipe.build";
+    private static final String READER_NAME = "GeneratedLowLevelReader";
+    private static final String WRITER_NAME = "GeneratedLowLevelWriter";
+
+    /**
+     * Generate, compile and start a reader which consumes every message on the input pipe.
+     */
+    public static <S extends MessageSchema> Runnable buildLowLevelReader(Pipe<S> input) {
+        StringBuilder target = new StringBuilder();
+        return build(new CompiledReaderGenerator(Pipe.schema(input), target), target, input);
+    }
+
+    /**
+     * Generate, compile and start a writer for the output pipe. The default writer has nothing to send, use a subclass
+     * of CompiledWriterGenerator which overrides bodyOfNextMessageIdx with build to supply messages.
+     */
+    public static <S extends MessageSchema> Runnable buildLowLevelWriter(Pipe<S> output) {
+        StringBuilder target = new StringBuilder();
+        return build(new CompiledWriterGenerator(Pipe.schema(output), target), target, output);
+    }
+
+    /**
+     * Run the generator into target then compile, load and construct the result.  The generated class must have a
+     * public constructor which takes the pipe, startup is called when the class has one.
+     */
+    public static <S extends MessageSchema> Runnable build(TemplateProcessGenerator generator, StringBuilder target, Pipe<S> pipe) {
+        if (null==generator.getClassName() || null==generator.getPackageName()) {
+            throw new UnsupportedOperationException(generator.getClass().getSimpleName()+" must override getClassName and getPackageName to be compiled");
+        }
+        try {
+            generator.processSchema();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Class<?> clazz;
+        try {
+            clazz = compile(generator.getPackageName(), generator.getClassName(), target);
+        } catch (ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Unable to compile generated code for "+Pipe.schemaName(pipe), e);
+        }
+        return newInstance(clazz, pipe);
+    }
+
+    /**
+     * Compile the source in memory and load the resulting class.
+     */
+    public static Class<?> compile(String packageName, String className, CharSequence source) throws ClassNotFoundException {
+        return compile(packageName, className, source, TemplateProcessCompiler.class.getClassLoader());
+    }
+
+    /**
+     * Compile the source in memory and load the resulting class with the given parent, needed when the source
+     * refers to classes only visible from that loader. Those classes must come from URLClassLoaders, their
+     * directories and jars are added to the compile class path.
+     */
+    public static Class<?> compile(String packageName, String className, CharSequence source, ClassLoader parent) throws ClassNotFoundException {
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (null==compiler) {
+            throw new UnsupportedOperationException("No Java compiler found, runtime code generation requires a JDK.");
+        }
+        String fullName = packageName+"."+className;
+
+        List<String> optionList = new ArrayList<String>();
+        optionList.addAll(Arrays.asList("-classpath", classPath(parent)));
+
+        List<JavaFileObject> toCompile = new ArrayList<JavaFileObject>();
+        toCompile.add(new SimpleSourceFileObject(className, source));
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        InMemoryFileManager fileManager = new InMemoryFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+        boolean compiled;
+        try {
+            compiled = compiler.getTask(null, fileManager, diagnostics, optionList, null, toCompile).call();
+        } finally {
+            //the standard file manager holds the classpath jars open until closed
+            closeQuietly(fileManager);
+        }
+
+        if (!compiled) {
+            for(Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                log.error("{}", d);
+            }
+            throw new ClassNotFoundException(diagnostics.getDiagnostics().isEmpty() ? "Compiler error" : diagnostics.getDiagnostics().get(0).toString());
+        }
+        return new ByteArrayClassLoader(fileManager.classes, parent).loadClass(fullName);
+    }
+
+    /**
+     * The system class path followed by every directory and jar of the URLClassLoaders from parent up, so source may
+     * refer to classes which only the parent loader can see.
+     */
+    static String classPath(ClassLoader parent) {
+        Set<String> entries = new LinkedHashSet<String>(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+        List<ClassLoader> loaders = new ArrayList<ClassLoader>();
+        ClassLoader loader = parent;
+        while (null!=loader) {
+            loaders.add(loader);
+            loader = loader.getParent();
+        }
+        //outer most loaders first, the same order the loaders delegate in
+        int i = loaders.size();
+        while (--i>=0) {
+            if (loaders.get(i) instanceof URLClassLoader) {
+                for(URL url : ((URLClassLoader)loaders.get(i)).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        try {
+                            entries.add(new File(url.toURI()).getPath());
+                        } catch (URISyntaxException e) {
+                            entries.add(url.getPath());
+                        }
+                    }
+                }
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for(String entry : entries) {
+            if (entry.length()>0) {
+                if (result.length()>0) {
+                    result.append(File.pathSeparatorChar);
+                }
+                result.append(entry);
+            }
+        }
+        return result.toString();
+    }
+
+    private static void closeQuietly(JavaFileManager fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            log.warn("Unable to close compiler file manager", e);
+        }
+    }
+
+    /**
+     * Construct the generated class with its pipe and call startup if it has one.
+     */
+    public static <S extends MessageSchema> Runnable newInstance(Class<?> clazz, Pipe<S> pipe) {
+        try {
+            Constructor<?> constructor = clazz.getConstructor(Pipe.class);
+            Runnable result = (Runnable)constructor.newInstance(pipe);
+            Method startup = findStartup(clazz);
+            if (null!=startup) {
+                startup.invoke(result);
+            }
+            return result;
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Generated class "+clazz.getName()+" must be Runnable with a public constructor taking the pipe", e);
+        }
+    }
+
+    private static Method findStartup(Class<?> clazz) {
+        try {
+            return clazz.getMethod("startup");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void appendPipeConstructor(Appendable target, MessageSchema schema, String className, String pipeVarName) throws IOException {
+        Class<?> schemaClass = schema.getClass();
+        target.append("public ").append(className).append("(").append(Pipe.class.getSimpleName());
+        target.append('<').append(schemaClass.getSimpleName()).append("> ").append(pipeVarName).append(") {\n");
+        target.append("    this.").append(pipeVarName).append(" = ").append(pipeVarName).append(";\n");
+        target.append("}\n");
+    }
+
+    private static void appendSchemaImport(Appendable target, MessageSchema schema) throws IOException {
+        //dynamic schemas are already imported by the generators
+        if (!(schema instanceof MessageSchemaDynamic)) {
+            target.append("import ").append(schema.getClass().getCanonicalName()).append(";\n");
+        }
+    }
+
+    /**
+     * Reader generator which adds the constructor needed by build, extend to add business logic.
+     */
+    public static class CompiledReaderGenerator extends TemplateProcessGeneratorLowLevelReader {
+
+        public CompiledReaderGenerator(MessageSchema schema, Appendable target) {
+            super(schema, target, READER_NAME+" implements Runnable", READER_NAME, PACKAGE_NAME);
+        }
+
+        @Override
+        protected void additionalImports(MessageSchema schema, Appendable target) {
+            try {
+                appendSchemaImport(target, schema);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected void buildConstructors(Appendable target, String className) throws IOException {
+            appendPipeConstructor(target, schema, className, "input");
+        }
+    }
+
+    /**
+     * Writer generator which adds the constructor needed by build, extend to add business logic.
+     */
+    public static class CompiledWriterGenerator extends TemplateProcessGeneratorLowLevelWriter {
+
+        public CompiledWriterGenerator(MessageSchema schema, Appendable target) {
+            super(schema, target, WRITER_NAME, "implements Runnable", "output", "private", false, PACKAGE_NAME);
+        }
+
+        @Override
+        protected void additionalImports(MessageSchema schema, Appendable target) {
+            try {
+                appendSchemaImport(target, schema);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected void buildConstructors(Appendable target, String className) throws IOException {
+            appendPipeConstructor(target, schema, className, pipeVarName);
+        }
+    }
+
+    /**
+     * Keeps the compiled classes in memory instead of writing them to disk.
+     */
+    private static class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, SimpleClassFileObject> classes = new HashMap<String, SimpleClassFileObject>();
+
+        InMemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            SimpleClassFileObject result = new SimpleClassFileObject(className);
+            classes.put(className, result);
+            return result;
+        }
+    }
+
+    private static class ByteArrayClassLoader extends ClassLoader {
+
+        private final Map<String, SimpleClassFileObject> classes;
+
+        ByteArrayClassLoader(Map<String, SimpleClassFileObject> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            SimpleClassFileObject found = classes.get(name);
+            if (null==found) {
+                return super.findClass(name);
+            }
+            byte[] bytes = found.getBytes();
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+}
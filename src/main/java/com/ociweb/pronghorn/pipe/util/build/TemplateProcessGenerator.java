@@ -21,6 +21,20 @@ public abstract class TemplateProcessGenerator {
         this.schema = schema;
     }
 
+    /**
+     * Simple name of the generated class, null unless the generator writes a class which TemplateProcessCompiler can build.
+     */
+    public String getClassName() {
+        return null;
+    }
+
+    /**
+     * Package of the generated class, null unless the generator writes a class which TemplateProcessCompiler can build.
+     */
+    public String getPackageName() {
+        return null;
+    }
+
     
     
 
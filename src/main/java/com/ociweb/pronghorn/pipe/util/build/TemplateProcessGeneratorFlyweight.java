@@ -0,0 +1,404 @@
+package com.ociweb.pronghorn.pipe.util.build;
+
+import static com.ociweb.pronghorn.util.Appendables.appendClass;
+import static com.ociweb.pronghorn.util.Appendables.appendStaticCall;
+import static com.ociweb.pronghorn.util.Appendables.appendValue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.MessageSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.pipe.PipeWriter;
+
+/**
+ * Generates one flyweight class per fragment with typed getters and setters for each field. The slab offset of every
+ * field is a literal in the generated code so there is no LOC to decode on each access.
+ *
+ * The flyweights are used with the high level API, wrap after PipeReader.tryReadFragment or PipeWriter.tryWriteFragment
+ * and before the matching releaseReadLock or publishWrites.
+ */
+public class TemplateProcessGeneratorFlyweight extends TemplateProcessGenerator {
+
+    private final Appendable bodyTarget;
+    private final String tab = "    ";
+    private final String className;
+    private final String packageName;
+    private final Class schemaClass;
+    private final Class pipeClass = Pipe.class;
+    private final FieldReferenceOffsetManager from;
+    private String fragmentName;
+
+    public TemplateProcessGeneratorFlyweight(MessageSchema schema, Appendable bodyTarget, String className, String packageName) {
+        super(schema);
+        this.bodyTarget = bodyTarget;
+        this.className = className;
+        this.packageName = packageName;
+        this.schemaClass = schema.getClass();
+        this.from = MessageSchema.from(schema);
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    @Override
+    protected void headerConstruction() throws IOException {
+        bodyTarget.append("package ").append(packageName).append(";\n");
+        bodyTarget.append("import ").append(Pipe.class.getCanonicalName()).append(";\n");
+        bodyTarget.append("import ").append(PipeReader.class.getCanonicalName()).append(";\n");
+        bodyTarget.append("import ").append(PipeWriter.class.getCanonicalName()).append(";\n");
+        bodyTarget.append("import ").append(schemaClass.getCanonicalName()).append(";\n");
+        bodyTarget.append("\n");
+        bodyTarget.append("public class ").append(className).append(" {\n");
+    }
+
+    @Override
+    protected void defineMembers() throws IOException {
+        bodyTarget.append("\n");
+        from.appendGUID(bodyTarget.append("private static final int[] FROM_GUID = ")).append(";\n");
+        bodyTarget.append("\n");
+        bodyTarget.append("/**\n * Confirm these flyweights were generated from the schema used by this pipe.\n */\n");
+        appendClass(bodyTarget.append("public static void validate("), pipeClass, schemaClass).append("pipe) {\n");
+        appendStaticCall(bodyTarget.append(tab), pipeClass, "from").append("pipe).validateGUID(FROM_GUID);\n");
+        bodyTarget.append("}\n");
+    }
+
+    @Override
+    protected void footerConstruction() throws IOException {
+        bodyTarget.append("}\n");
+    }
+
+    @Override
+    protected void processCallerPrep() throws IOException {
+    }
+
+    @Override
+    protected void processCaller(int cursor) throws IOException {
+    }
+
+    @Override
+    protected void processCallerPost() throws IOException {
+    }
+
+    @Override
+    protected void processCalleeOpen(int cursor) throws IOException {
+        fragmentName = appendFragmentName(new StringBuilder(), cursor).toString();
+
+        bodyTarget.append("\n");
+        bodyTarget.append("public static final class ").append(fragmentName).append(" {\n");
+        appendValue(bodyTarget.append(tab).append("public static final int FRAGMENT_IDX = "), cursor).append(";\n");
+        appendValue(bodyTarget.append(tab).append("public static final int FRAGMENT_SIZE = "), from.fragDataSize[cursor]).append(";\n");
+        appendValue(bodyTarget.append(tab).append("private static final int DEPTH = "), from.fragDepth[cursor]).append(";\n");
+        appendClass(bodyTarget.append(tab).append("private "), pipeClass, schemaClass).append("pipe;\n");
+        bodyTarget.append(tab).append("private int[] slab;\n");
+        bodyTarget.append(tab).append("private int mask;\n");
+        bodyTarget.append(tab).append("private long base;\n");
+
+        appendWrap("wrapForRead", PipeReader.class);
+        appendWrap("wrapForWrite", PipeWriter.class);
+    }
+
+    private void appendWrap(String methodName, Class api) throws IOException {
+        bodyTarget.append("\n");
+        appendClass(bodyTarget.append(tab).append("public ").append(fragmentName).append(' ').append(methodName).append('('), pipeClass, schemaClass).append("pipe) {\n");
+        bodyTarget.append(tab).append(tab).append("this.pipe = pipe;\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append("this.slab = "), pipeClass, "slab").append("pipe);\n");
+        bodyTarget.append(tab).append(tab).append("this.mask = pipe.mask;\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append("this.base = "), api, "structuredPositionForDepth").append("pipe, DEPTH);\n");
+        bodyTarget.append(tab).append(tab).append("return this;\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    @Override
+    protected void processCalleeClose(int cursor) throws IOException {
+        bodyTarget.append("}\n");
+    }
+
+    private Appendable appendFragmentName(Appendable target, int cursor) throws IOException {
+        if (null!=from.fieldNameScript[cursor]) {
+            //if this is NOT a message start then also prefix with its name
+            if ( Arrays.binarySearch(from.messageStarts, cursor)<0) {
+                appendMessageName(target, cursor);
+            }
+            target.append(from.fieldNameScript[cursor]);
+        } else {
+            //Go Up and find parent name then add cursor position to make it unique
+            int msgCursor = appendMessageName(target, cursor);
+            appendSequenceName(target, cursor, msgCursor);
+            target.append("End");
+        }
+        return target;
+    }
+
+    private void appendSequenceName(Appendable target, int cursor, int msgCursor) throws IOException {
+        int j = cursor;
+        final int depth = from.fragDepth[j];
+        String foundName = null;
+        while (--j>=msgCursor) {
+            if (from.fragDepth[j]==depth) {
+                if (null!=from.fieldNameScript[j]) {
+                    foundName = from.fieldNameScript[j];
+                }
+            }
+        }
+        target.append(foundName);
+    }
+
+    private int appendMessageName(Appendable target, int cursor) throws IOException {
+        int i = cursor;
+        while (--i>=0 && (null==from.fieldNameScript[i] || Arrays.binarySearch(from.messageStarts, i)<0)  ) {}
+        target.append(from.fieldNameScript[i]);
+        return i;
+    }
+
+    private Appendable appendAccessor(String prefix, String name, long id) throws IOException {
+        bodyTarget.append(tab).append("public ");
+        return appendFieldName(bodyTarget, prefix, name, id);
+    }
+
+    private Appendable appendFieldName(Appendable target, String prefix, String name, long id) throws IOException {
+        target.append(prefix);
+        if (null==name || name.length()==0) {
+            return appendValue(target.append("Field"), id);
+        }
+        return target.append(Character.toUpperCase(name.charAt(0))).append(name.substring(1).replace(' ', '_'));
+    }
+
+    private Appendable appendSlot(Appendable target, int fieldCursor, int extra) throws IOException {
+        return appendValue(target.append("slab[mask & (int)(base+"), from.fragDataSize[fieldCursor]+extra).append(")]");
+    }
+
+    private void appendIntField(String name, int fieldCursor, long id) throws IOException {
+        bodyTarget.append("\n");
+        appendAccessor("int get", name, id).append("() {\n");
+        appendSlot(bodyTarget.append(tab).append(tab).append("return "), fieldCursor, 0).append(";\n");
+        bodyTarget.append(tab).append("}\n");
+
+        appendAccessor(fragmentName+" set", name, id).append("(int value) {\n");
+        appendSlot(bodyTarget.append(tab).append(tab), fieldCursor, 0).append(" = value;\n");
+        bodyTarget.append(tab).append(tab).append("return this;\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    private void appendLongField(String name, int fieldCursor, long id, int extra, String suffix) throws IOException {
+        bodyTarget.append("\n");
+        appendAccessor("long get", name, id).append(suffix).append("() {\n");
+        appendValue(appendStaticCall(bodyTarget.append(tab).append(tab).append("return "), pipeClass, "readLong").append("slab, mask, base+"), from.fragDataSize[fieldCursor]+extra).append(");\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    private void appendLongSetter(Appendable target, int fieldCursor, int extra, String varName) throws IOException {
+        appendSlot(target.append(tab).append(tab), fieldCursor, extra).append(" = (int)(").append(varName).append(" >>> 32);\n");
+        appendSlot(target.append(tab).append(tab), fieldCursor, extra+1).append(" = (int)").append(varName).append(";\n");
+    }
+
+    private void appendMetaAndLength(int fieldCursor) throws IOException {
+        appendSlot(bodyTarget.append(tab).append(tab).append("int meta = "), fieldCursor, 0).append(";\n");
+        appendSlot(bodyTarget.append(tab).append(tab).append("int len = "), fieldCursor, 1).append(";\n");
+    }
+
+    private void appendLengthGetter(String name, int fieldCursor, long id) throws IOException {
+        bodyTarget.append("\n");
+        appendAccessor("int get", name, id).append("Length() {\n");
+        appendSlot(bodyTarget.append(tab).append(tab).append("return "), fieldCursor, 1).append(";\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    private void appendTextField(String name, int fieldCursor, long id, String readMethod, boolean isASCII) throws IOException {
+        appendLengthGetter(name, fieldCursor, id);
+
+        appendAccessor("<A extends Appendable> A get", name, id).append("(A target) {\n");
+        appendMetaAndLength(fieldCursor);
+        appendStaticCall(bodyTarget.append(tab).append(tab).append("return (A)"), pipeClass, readMethod).append("pipe, target, meta, len);\n");
+        bodyTarget.append(tab).append("}\n");
+
+        appendAccessor(fragmentName+" set", name, id).append("(CharSequence value) {\n");
+        bodyTarget.append(tab).append(tab).append("int len = null==value ? -1 : value.length();\n");
+        if (isASCII) {
+            appendStaticCall(bodyTarget.append(tab).append(tab), pipeClass, "validateVarLength").append("pipe, len);\n");
+            appendStaticCall(bodyTarget.append(tab).append(tab).append("int pos = "), pipeClass, "copyASCIIToBytes").append("value, 0, len, pipe);\n");
+        } else {
+            //the copy returns the count of bytes written, a null keeps the length of -1
+            appendStaticCall(bodyTarget.append(tab).append(tab).append("int pos = "), pipeClass, "getBlobWorkingHeadPosition").append("pipe);\n");
+            bodyTarget.append(tab).append(tab).append("if (null!=value) {\n");
+            appendStaticCall(bodyTarget.append(tab).append(tab).append(tab).append("len = "), pipeClass, "copyUTF8ToByte").append("value, 0, len, pipe);\n");
+            bodyTarget.append(tab).append(tab).append("}\n");
+            appendStaticCall(bodyTarget.append(tab).append(tab), pipeClass, "validateVarLength").append("pipe, len);\n");
+        }
+        appendValue(appendStaticCall(bodyTarget.append(tab).append(tab), pipeClass, "setBytePosAndLen").append("slab, mask, base+"), from.fragDataSize[fieldCursor]);
+        appendStaticCall(bodyTarget.append(", pos, len, "), pipeClass, "bytesWriteBase").append("pipe));\n");
+        bodyTarget.append(tab).append(tab).append("return this;\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    private void appendByteField(String name, int fieldCursor, long id) throws IOException {
+        appendLengthGetter(name, fieldCursor, id);
+
+        appendAccessor("int get", name, id).append("(byte[] target, int offset) {\n");
+        appendMetaAndLength(fieldCursor);
+        bodyTarget.append(tab).append(tab).append("if (len>0) {\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append(tab), pipeClass, "readBytes").append("pipe, target, offset, Integer.MAX_VALUE, meta, len);\n");
+        bodyTarget.append(tab).append(tab).append("}\n");
+        bodyTarget.append(tab).append(tab).append("return len;\n");
+        bodyTarget.append(tab).append("}\n");
+
+        //a null source is written as the length -1
+        appendAccessor(fragmentName+" set", name, id).append("(byte[] source, int offset, int len) {\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append("int pos = "), pipeClass, "getBlobWorkingHeadPosition").append("pipe);\n");
+        bodyTarget.append(tab).append(tab).append("if (null==source) {\n");
+        bodyTarget.append(tab).append(tab).append(tab).append("len = -1;\n");
+        bodyTarget.append(tab).append(tab).append("} else {\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append(tab), pipeClass, "validateVarLength").append("pipe, len);\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append(tab), pipeClass, "copyBytesFromToRing").append("source, offset, Integer.MAX_VALUE, ");
+        appendStaticCall(appendStaticCall(bodyTarget, pipeClass, "blob").append("pipe), pos, "), pipeClass, "blobMask").append("pipe), len);\n");
+        appendStaticCall(bodyTarget.append(tab).append(tab).append(tab), pipeClass, "addAndGetBytesWorkingHeadPosition").append("pipe, len);\n");
+        bodyTarget.append(tab).append(tab).append("}\n");
+        appendValue(appendStaticCall(bodyTarget.append(tab).append(tab), pipeClass, "setBytePosAndLen").append("slab, mask, base+"), from.fragDataSize[fieldCursor]);
+        appendStaticCall(bodyTarget.append(", pos, len, "), pipeClass, "bytesWriteBase").append("pipe));\n");
+        bodyTarget.append(tab).append(tab).append("return this;\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    private void appendDecimalField(String name, int fieldCursor, long id) throws IOException {
+        bodyTarget.append("\n");
+        appendAccessor("int get", name, id).append("Exponent() {\n");
+        appendSlot(bodyTarget.append(tab).append(tab).append("return "), fieldCursor, 0).append(";\n");
+        bodyTarget.append(tab).append("}\n");
+
+        appendLongField(name, fieldCursor, id, 1, "Mantissa");
+
+        appendAccessor(fragmentName+" set", name, id).append("(int exponent, long mantissa) {\n");
+        appendSlot(bodyTarget.append(tab).append(tab), fieldCursor, 0).append(" = exponent;\n");
+        appendLongSetter(bodyTarget, fieldCursor, 1, "mantissa");
+        bodyTarget.append(tab).append(tab).append("return this;\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    private void appendLong(String name, int fieldCursor, long id) throws IOException {
+        appendLongField(name, fieldCursor, id, 0, "");
+
+        appendAccessor(fragmentName+" set", name, id).append("(long value) {\n");
+        appendLongSetter(bodyTarget, fieldCursor, 0, "value");
+        bodyTarget.append(tab).append(tab).append("return this;\n");
+        bodyTarget.append(tab).append("}\n");
+    }
+
+    @Override
+    protected void processByteArrayOptional(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendByteField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processByteArray(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendByteField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processTextUTF8Optional(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendTextField(name, fieldCursor, id, "readOptionalUTF8", false);
+    }
+
+    @Override
+    protected void processTextUTF8(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendTextField(name, fieldCursor, id, "readUTF8", false);
+    }
+
+    @Override
+    protected void processTextASCIIOptional(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendTextField(name, fieldCursor, id, "readOptionalASCII", true);
+    }
+
+    @Override
+    protected void processTextASCII(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendTextField(name, fieldCursor, id, "readASCII", true);
+    }
+
+    @Override
+    protected void processDecimalOptional(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendDecimalField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processDecimal(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendDecimalField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processLongUnsignedOptional(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendLong(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processLongSignedOptional(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendLong(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processLongUnsigned(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendLong(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processLongSigned(String name, int idx, int fieldCursor, long id) throws IOException {
+        appendLong(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processIntegerUnsignedOptional(String name, int i, int fieldCursor, long id) throws IOException {
+        appendIntField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processIntegerSignedOptional(String name, int i, int fieldCursor, long id) throws IOException {
+        appendIntField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void processIntegerUnsigned(String name, int i, int fieldCursor, long id) throws IOException {
+        appendIntField(name, fieldCursor, id);
+    }
+
+    @Override
+    protected void pronghornIntegerSigned(String name, int i, int fieldCursor, long id) throws IOException {
+        appendIntField(name, fieldCursor, id);
+    }
+
+    @Override //group length is the last field of the fragment
+    protected void processSequenceOpen(int fragmentCursor, String name, int idx, int fieldCursor, long id) throws IOException {
+        appendIntField(from.fieldNameScript[fieldCursor], fieldCursor, from.fieldIdScript[fieldCursor]);
+    }
+
+    @Override
+    protected void processDictionary() throws IOException {
+        //nothing to do
+    }
+
+    @Override
+    protected void postProcessSequence(int fieldCursor) throws IOException {
+    }
+
+    @Override
+    protected void processMessageClose(String name, long id, boolean needsToCloseFragment) throws IOException {
+    }
+
+    @Override
+    protected boolean processSequenceInstanceClose(String name, long id, int fieldCursor) throws IOException {
+        return true;
+    }
+
+    @Override
+    protected void processFragmentOpen(String name, int fieldCursor, long id) throws IOException {
+    }
+
+    @Override
+    protected void processFragmentClose(int fragmentCursor) throws IOException {
+    }
+
+}
@@ -2,6 +2,7 @@ package com.ociweb.pronghorn.pipe.util.build;
 
 import static com.ociweb.pronghorn.util.Appendables.*;
 
+import java.io.DataInput;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -131,6 +132,8 @@ public class TemplateProcessGeneratorLowLevelReader extends TemplateProcessGener
           bodyTarget.append(tab).append("navState = new ").append(LowLevelStateManager.class.getSimpleName()).append("(").append(pipeClass.getSimpleName()).append(".from(").append(pipeVarName).append("));\n"); 
         }  
         
+        //the same ids were already seen when the members were defined
+        workspacesDefinedCount = 0;
         for(int cursor = 0; cursor<from.tokens.length; cursor++) {
             String name = from.fieldNameScript[cursor];
             long id = from.fieldIdScript[cursor];
@@ -599,19 +602,7 @@ public class TemplateProcessGeneratorLowLevelReader extends TemplateProcessGener
         fragmentParaArgs[fragmentParaCount] = WORKSPACE;
         fragmentParaSuff[fragmentParaCount++] = appendHexDigits(new StringBuilder(), id); 
         
-        appendWorkspaceName(bodyTarget.append("this."), id).append(".openLowLevelAPIField();\n");
-        
-        if (!inLinedMethod) {
-            appendWorkspaceName(bodyTarget.append("DataInput "), id).append(" =  ");
-        } else {
-            bodyTarget.append(tab).append(tab).append(tab);
-        }
-        appendWorkspaceName(bodyTarget.append("this."), id).append(".nullable()"); 
-        
-        if (!inLinedMethod) {            
-            bodyTarget.append(";\n");
-        }
-                
+        appendByteArrayRead(id, ".nullable()");
     }
 
     @Override
@@ -621,11 +612,25 @@ public class TemplateProcessGeneratorLowLevelReader extends TemplateProcessGener
         fragmentParaArgs[fragmentParaCount] = WORKSPACE;
         fragmentParaSuff[fragmentParaCount++] = appendHexDigits(new StringBuilder(), id); 
 
-        appendWorkspaceName(bodyTarget, id).append(".openLowLevelAPIField()"); 
+        appendByteArrayRead(id, "");
+    }
+
+    private void appendByteArrayRead(long id, String suffix) throws IOException {
+        
+        if (!inLinedMethod) {
+            appendWorkspaceName(bodyTarget.append(tab).append("DataInput "), id).append(" = ");
+        } else {
+            if (fragmentBusinessComma) {
+                bodyTarget.append(",\n");
+            }
+            bodyTarget.append(tab).append(tab).append(tab);
+        }
+        appendWorkspaceName(bodyTarget.append("this."), id).append(".openLowLevelAPIFieldReader()").append(suffix); 
         if (!inLinedMethod) {   
             bodyTarget.append(";\n");
+        } else {
+            fragmentBusinessComma = true;
         }
-        
     }
 
     private void appendTextRead(long id, String methodName) throws IOException {
@@ -962,6 +967,7 @@ public class TemplateProcessGeneratorLowLevelReader extends TemplateProcessGener
         bodyTarget.append("import ").append(Appendables.class.getCanonicalName()).append(";\n");
         bodyTarget.append("import ").append(MessageSchemaDynamic.class.getCanonicalName()).append(";\n");
         bodyTarget.append("import ").append(DataInputBlobReader.class .getCanonicalName()).append(";\n");
+        bodyTarget.append("import ").append(DataInput.class.getCanonicalName()).append(";\n");
         
         additionalImports(schema, bodyTarget);
         
@@ -6,6 +6,7 @@ import static com.ociweb.pronghorn.util.Appendables.appendStaticCall;
 import static com.ociweb.pronghorn.util.Appendables.appendValue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
@@ -811,6 +812,7 @@ public class TemplateProcessGeneratorLowLevelWriter extends TemplateProcessGener
         bodyTarget.append("import ").append(Appendables.class.getCanonicalName()).append(";\n");
         bodyTarget.append("import ").append(MessageSchemaDynamic.class.getCanonicalName()).append(";\n");
         bodyTarget.append("import ").append(DataOutputBlobWriter.class .getCanonicalName()).append(";\n");
+        bodyTarget.append("import ").append(ByteBuffer.class.getCanonicalName()).append(";\n");
        
 
         additionalImports(schema, bodyTarget);
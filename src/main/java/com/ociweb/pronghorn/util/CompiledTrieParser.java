@@ -0,0 +1,11 @@
+package com.ociweb.pronghorn.util;
+
+/**
+ * A TrieParser turned into generated code by TrieParserCompiler. Results, consumed bytes and captured fields are
+ * the same as TrieParserReader.query on the trie it was built from.
+ */
+public interface CompiledTrieParser {
+
+    long query(TrieParserReader reader, byte[] source, int sourcePos, long sourceLength, int sourceMask, long unfoundResult);
+
+}
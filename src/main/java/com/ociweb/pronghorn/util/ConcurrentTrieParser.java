@@ -0,0 +1,89 @@
+package com.ociweb.pronghorn.util;
+
+/**
+ * One TrieParser shared by many reader threads while a single writer keeps adding patterns.
+ *
+ * Readers never take a lock, each query reads the current version once and runs against it with the thread's own
+ * TrieParserReader. Writes are copy-on-write, the writer copies the current version, inserts into the copy and then
+ * publishes it with a volatile write, so a reader sees either the old or the new trie but never one being changed.
+ * Old versions are left for the garbage collector once the last reader using them returns.
+ *
+ * Each single insert copies the whole trie so batches of changes should be built into a new TrieParser and
+ * published with replace.
+ */
+public class ConcurrentTrieParser {
+
+    private volatile TrieParser current;
+    private volatile long version; //only written while holding the trie lock, read without one
+
+    public ConcurrentTrieParser(TrieParser initial) {
+        this.current = initial;
+    }
+
+    public ConcurrentTrieParser(int size, int resultSize, boolean skipDeepChecks, boolean supportsExtraction) {
+        this(new TrieParser(size, resultSize, skipDeepChecks, supportsExtraction));
+    }
+
+    /**
+     * The trie as published right now, it will never be modified so it may be held for a series of queries
+     * which must all see the same patterns. It must not be modified by the caller either.
+     */
+    public static TrieParser snapshot(ConcurrentTrieParser trie) {
+        return trie.current;
+    }
+
+    /**
+     * Count of versions published since construction.
+     */
+    public static long version(ConcurrentTrieParser trie) {
+        return trie.version;
+    }
+
+    public static void setValue(ConcurrentTrieParser trie, byte[] source, int offset, int length, int mask, long value) {
+        synchronized (trie) {
+            TrieParser copy = copyForWrite(trie.current);
+            copy.setValue(source, offset, length, mask, value);
+            publish(trie, copy);
+        }
+    }
+
+    public static void setUTF8Value(ConcurrentTrieParser trie, CharSequence cs, int value) {
+        synchronized (trie) {
+            TrieParser copy = copyForWrite(trie.current);
+            copy.setUTF8Value(cs, value);
+            publish(trie, copy);
+        }
+    }
+
+    public static void setUTF8Value(ConcurrentTrieParser trie, CharSequence cs, CharSequence suffix, int value) {
+        synchronized (trie) {
+            TrieParser copy = copyForWrite(trie.current);
+            copy.setUTF8Value(cs, suffix, value);
+            publish(trie, copy);
+        }
+    }
+
+    /**
+     * Swap in a completely rebuilt trie, eg after a configuration change. The caller must not modify it afterwards.
+     */
+    public static void replace(ConcurrentTrieParser trie, TrieParser replacement) {
+        synchronized (trie) {
+            publish(trie, replacement);
+        }
+    }
+
+    private static void publish(ConcurrentTrieParser trie, TrieParser next) {
+        trie.version++;
+        trie.current = next;
+    }
+
+    //grow once the trie is half full so inserts do not run out of room
+    private static TrieParser copyForWrite(TrieParser source) {
+        int size = source.data.length;
+        if (source.getLimit() > (size>>1)) {
+            size <<= 1;
+        }
+        return new TrieParser(source, size);
+    }
+
+}
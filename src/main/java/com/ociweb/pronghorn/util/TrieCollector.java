@@ -9,6 +9,7 @@ public class TrieCollector {
     private final TrieParser trie;
     private final TrieParserReader reader;
     private int squenceCount = 0;
+    private long[] batchResults = new long[0];
     
     private final static int MAX_TEXT_LENGTH = 1024;
     private final Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance,3,MAX_TEXT_LENGTH));
@@ -30,6 +31,21 @@ public class TrieCollector {
         } 
     }
     
+    /**
+     * Values for many sequences in the same backing array, known ones are found with one batch query and only
+     * the new ones are added one at a time in order so repeats within the batch get the same value.
+     */
+    public void valuesOf(byte[] data, int[] offsets, int[] lengths, int count, int mask, int[] target) {
+        if (batchResults.length<count) {
+            batchResults = new long[count];
+        }
+        TrieParserReader.query(reader, trie, data, offsets, lengths, count, mask, -1, batchResults);
+        for (int i = 0; i<count; i++) {
+            int value = (int)batchResults[i];
+            target[i] = value>0 ? value : valueOf(data, offsets[i], lengths[i], mask);
+        }
+    }
+    
     public int valueOfUTF8(CharSequence cs) {
         
         pipe.reset();
@@ -122,6 +122,18 @@ public class TrieParser {
         
     }
     
+    /**
+     * Independent copy holding the same patterns, size may be larger than the source to leave room for more.
+     */
+    public TrieParser(TrieParser source, int size) {
+        this(size, source.SIZE_OF_RESULT, source.skipDeepChecks, '%'==source.ESCAPE_BYTE);
+        if (size<source.limit) {
+            throw new UnsupportedOperationException("Size "+size+" is too small to hold "+source.limit);
+        }
+        System.arraycopy(source.data, 0, this.data, 0, source.limit);
+        this.limit = source.limit;
+        this.maxExtractedFields = source.maxExtractedFields;
+    }
     
     public int getLimit() {
         return limit;
@@ -0,0 +1,447 @@
+package com.ociweb.pronghorn.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessCompiler;
+
+/**
+ * Turns a finished TrieParser into a generated class so lookups run as straight line branching code instead of
+ * interpreting the short[] node program. Runs become inlined byte compares, branch values become if/else on the
+ * tested bit and numeric or byte extractions become direct calls with their type and stop values as constants.
+ *
+ * The TrieParserReader alternate stack is resolved while generating: every alternate path becomes a method which
+ * is called when the current path fails, so the search order, safe points and captured fields all match
+ * TrieParserReader.query exactly. The trie is read once, later changes to it are not seen by the compiled class.
+ */
+public class TrieParserCompiler {
+
+    public static final String PACKAGE_NAME = "com.ociweb.pronghorn.util.build";
+    private static final String CLASS_NAME = "GeneratedTrieParser";
+
+    //keep generated methods well under the size the JIT refuses to compile
+    private static final int MAX_METHOD_CHARS = 6000;
+    private static final int BYTES_PER_COMPARE = 8;
+    private static final String ARGS = "r, s, m, len, unfound, safe";
+
+    private final TrieParser trie;
+    private final short[] data;
+    private final Map<String, State> states = new HashMap<String, State>();
+    private final List<State> pending = new ArrayList<State>();
+    private final StringBuilder constants = new StringBuilder();
+    private int stopArrays;
+    private int epochs;
+
+    private static class Frame {
+        final int epoch; //matching epochs mean no bytes were consumed or captured in between
+        Frame(int epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private static class Entry {
+        final int pos;
+        final int runLength;
+        final Frame frame;
+        Entry(int pos, int runLength, Frame frame) {
+            this.pos = pos;
+            this.runLength = runLength;
+            this.frame = frame;
+        }
+    }
+
+    private static class State {
+        final int pos;
+        final int runLength;
+        final int epoch;
+        final Entry[] stack;
+        String name;
+        State(int pos, int runLength, int epoch, Entry[] stack) {
+            this.pos = pos;
+            this.runLength = runLength;
+            this.epoch = epoch;
+            this.stack = stack;
+        }
+    }
+
+    private static class Method {
+        final StringBuilder body = new StringBuilder();
+        final Map<Frame, String> vars = new IdentityHashMap<Frame, String>();
+        int nextVar;
+        int indent = 2;
+    }
+
+    private TrieParserCompiler(TrieParser trie) {
+        this.trie = trie;
+        this.data = Arrays.copyOf(trie.data, trie.getLimit());
+    }
+
+    /**
+     * Generate, compile and load the parser. Requires a JDK at runtime, see TemplateProcessCompiler.
+     */
+    public static CompiledTrieParser compile(TrieParser trie) {
+        StringBuilder target = new StringBuilder();
+        try {
+            generateSource(trie, CLASS_NAME, target);
+            return (CompiledTrieParser)TemplateProcessCompiler.compile(PACKAGE_NAME, CLASS_NAME, target).newInstance();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Unable to compile trie parser", e);
+        } catch (InstantiationException e) {
+            throw new UnsupportedOperationException("Unable to compile trie parser", e);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Unable to compile trie parser", e);
+        }
+    }
+
+    /**
+     * Write the java source of the parser, useful for checking generated code into a project instead of compiling at runtime.
+     */
+    public static void generateSource(TrieParser trie, String className, Appendable target) throws IOException {
+        new TrieParserCompiler(trie).generate(className, target);
+    }
+
+    private void generate(String className, Appendable target) throws IOException {
+
+        StringBuilder methods = new StringBuilder();
+        String first = null;
+        if (data.length>0) {
+            first = register(new State(0, 0, epochs++, new Entry[0]));
+            while (!pending.isEmpty()) {
+                State state = pending.remove(pending.size()-1);
+                methods.append(buildMethod(state));
+            }
+        }
+
+        target.append("package ").append(PACKAGE_NAME).append(";\n\n");
+        target.append("import ").append(CompiledTrieParser.class.getName()).append(";\n");
+        target.append("import ").append(TrieParserReader.class.getName()).append(";\n\n");
+        target.append("public class ").append(className).append(" implements ").append(CompiledTrieParser.class.getSimpleName()).append(" {\n\n");
+        target.append(constants);
+        target.append("    public long query(TrieParserReader r, byte[] s, int sourcePos, long len, int m, long unfound) {\n");
+        if (null==first) {
+            target.append("        return unfound;\n");
+        } else {
+            target.append("        TrieParserReader.compiledStart(r, s);\n");
+            target.append("        return ").append(first).append("(").append(ARGS.replace("safe", "false")).append(", sourcePos);\n");
+        }
+        target.append("    }\n\n");
+        target.append(methods);
+        target.append("}\n");
+    }
+
+    private String register(State state) {
+        String key = key(state);
+        State found = states.get(key);
+        if (null==found) {
+            state.name = "n"+states.size()+"_"+state.pos;
+            states.put(key, state);
+            pending.add(state);
+            found = state;
+        }
+        return found.name;
+    }
+
+    private static List<Frame> frames(Entry[] stack) {
+        List<Frame> frames = new ArrayList<Frame>();
+        for (Entry e : stack) {
+            if (!frames.contains(e.frame)) {
+                frames.add(e.frame);
+            }
+        }
+        return frames;
+    }
+
+    private static String key(State state) {
+        List<Frame> frames = frames(state.stack);
+        List<Integer> epochs = new ArrayList<Integer>();
+        epochs.add(state.epoch);
+        StringBuilder key = new StringBuilder();
+        key.append(state.pos).append(':').append(state.runLength);
+        for (Entry e : state.stack) {
+            if (!epochs.contains(e.frame.epoch)) {
+                epochs.add(e.frame.epoch);
+            }
+            key.append('|').append(e.pos).append(',').append(e.runLength).append(',')
+               .append(frames.indexOf(e.frame)).append(',').append(epochs.indexOf(e.frame.epoch));
+        }
+        return key.toString();
+    }
+
+    private String buildMethod(State state) {
+        Method method = new Method();
+        StringBuilder signature = new StringBuilder();
+        signature.append("    private static long ").append(state.name);
+        signature.append("(TrieParserReader r, byte[] s, int m, long len, long unfound, boolean safe, int p");
+        for (Frame f : frames(state.stack)) {
+            String v = Integer.toString(method.nextVar++);
+            method.vars.put(f, v);
+            signature.append(", int p").append(v).append(", int c").append(v);
+        }
+        signature.append(") {\n");
+        emit(method, state.pos, state.runLength, state.epoch, state.stack, true);
+        return signature.append(method.body).append("    }\n\n").toString();
+    }
+
+    private static void line(Method method, String text) {
+        int i = method.indent;
+        while (--i>=0) {
+            method.body.append("    ");
+        }
+        method.body.append(text).append('\n');
+    }
+
+    private String call(Method method, State state, String sourcePos) {
+        String name = register(state);
+        StringBuilder result = new StringBuilder();
+        result.append("return ").append(name).append('(').append(ARGS).append(", ").append(sourcePos);
+        for (Frame f : frames(state.stack)) {
+            String v = method.vars.get(f);
+            result.append(", p").append(v).append(", c").append(v);
+        }
+        return result.append(");").toString();
+    }
+
+    /**
+     * Code for trying the next alternate on the stack, the same as tryNextChoiceOnStack. The run length restored
+     * comes from the slot below the entry, this matches where TrieParserReader.pushAlt stores it.
+     */
+    private void popNext(Method method, Entry[] stack) {
+        if (0==stack.length) {
+            line(method, "return unfound;");
+            return;
+        }
+        int top = stack.length-1;
+        Entry entry = stack[top];
+        int runLength = top>0 ? stack[top-1].runLength : 0;
+        String v = method.vars.get(entry.frame);
+        line(method, "TrieParserReader.compiledRestoreCapturedPos(r, c"+v+");");
+        line(method, call(method, new State(entry.pos, runLength, entry.frame.epoch, Arrays.copyOf(stack, top)), "p"+v));
+    }
+
+    private void emit(Method method, int pos, int runLength, int epoch, Entry[] stack, boolean first) {
+        while (true) {
+            if (!first && method.body.length()>MAX_METHOD_CHARS) {
+                line(method, call(method, new State(pos, runLength, epoch, stack), "p"));
+                return;
+            }
+            first = false;
+
+            switch (data[pos]) {
+                case TrieParser.TYPE_END:
+                    line(method, "return TrieParserReader.compiledMatch(r, p, "+endValue(pos+1)+");");
+                    return;
+
+                case TrieParser.TYPE_SAFE_END:
+                    {
+                        String value = endValue(pos+1);
+                        line(method, "TrieParserReader.compiledSafePoint(r, p, "+value+");");
+                        line(method, "safe = true;");
+                        line(method, "if ("+runLength+"==len) {");
+                        line(method, "    return TrieParserReader.compiledMatch(r, p, "+value+");");
+                        line(method, "}");
+                        pos += trie.SIZE_OF_SAFE_END;
+                    }
+                    break;
+
+                case TrieParser.TYPE_RUN:
+                    {
+                        int run = data[pos+1];
+                        if (trie.skipDeepChecks && 0==stack.length) {
+                            //without a safe point or alternates the interpreter does not check these bytes
+                            line(method, "if (safe) {");
+                            method.indent++;
+                            emitRunCompare(method, pos+2, run, null);
+                            method.indent--;
+                            line(method, "}");
+                        } else {
+                            emitRunCompare(method, pos+2, run, stack);
+                        }
+                        line(method, "p += "+run+";");
+                        runLength += run;
+                        epoch = epochs++;
+                        pos += TrieParser.SIZE_OF_RUN+run;
+                    }
+                    break;
+
+                case TrieParser.TYPE_BRANCH_VALUE:
+                    {
+                        short criteria = data[pos+1];
+                        int jump = (((int)data[pos+2])<<15) | (0x7FFF&data[pos+3]);
+                        int bit = 0xFF & criteria;
+                        int whenSet   = TrieParser.jumpOnBit((short)bit, criteria, jump, pos+3);
+                        int whenClear = TrieParser.jumpOnBit((short)0, criteria, jump, pos+3);
+                        line(method, "if (0!=(s[m & p] & "+bit+")) {");
+                        method.indent++;
+                        emit(method, whenSet, runLength, epoch, stack, false);
+                        method.indent--;
+                        line(method, "} else {");
+                        method.indent++;
+                        emit(method, whenClear, runLength, epoch, stack, false);
+                        method.indent--;
+                        line(method, "}");
+                    }
+                    return;
+
+                case TrieParser.TYPE_VALUE_NUMERIC:
+                    line(method, "if ((p = TrieParserReader.compiledParseNumeric(r, s, p, len-"+runLength+", m, "+data[pos+1]+"))<0) {");
+                    line(method, "    return unfound;");
+                    line(method, "}");
+                    epoch = epochs++;
+                    pos += TrieParser.SIZE_OF_VALUE_NUMERIC;
+                    break;
+
+                case TrieParser.TYPE_VALUE_BYTES:
+                    emitBytes(method, pos, runLength, epoch, stack);
+                    return;
+
+                case TrieParser.TYPE_ALT_BRANCH:
+                    {
+                        List<Integer> leaves = new ArrayList<Integer>();
+                        expandAlt(pos, leaves);
+                        Frame frame = new Frame(epoch);
+                        String v = Integer.toString(method.nextVar++);
+                        method.vars.put(frame, v);
+                        line(method, "int p"+v+" = p;");
+                        line(method, "int c"+v+" = TrieParserReader.compiledCapturedPos(r);");
+
+                        Entry[] pushed = Arrays.copyOf(stack, stack.length+leaves.size());
+                        for (int i = 0; i<leaves.size(); i++) {
+                            pushed[stack.length+i] = new Entry(leaves.get(i), runLength, frame);
+                        }
+                        //take the top alternate now, nothing has moved so only the run length may change
+                        int top = pushed.length-1;
+                        pos = pushed[top].pos;
+                        runLength = top>0 ? pushed[top-1].runLength : 0;
+                        stack = Arrays.copyOf(pushed, top);
+                    }
+                    break;
+
+                default:
+                    throw new UnsupportedOperationException("Unrecognized trie value "+data[pos]+" at "+pos);
+            }
+        }
+    }
+
+    private void emitRunCompare(Method method, int dataPos, int run, Entry[] stack) {
+        int i = 0;
+        while (i<run) {
+            int limit = Math.min(run, i+BYTES_PER_COMPARE);
+            StringBuilder test = new StringBuilder("if (");
+            while (i<limit) {
+                test.append("s[m & (p+").append(i).append(")]!=").append(data[dataPos+i]);
+                if (++i<limit) {
+                    test.append(" || ");
+                }
+            }
+            line(method, test.append(") {").toString());
+            method.indent++;
+            if (null==stack) {
+                line(method, "return TrieParserReader.compiledUseSafePoint(r);");
+            } else {
+                line(method, "if (safe) {");
+                line(method, "    return TrieParserReader.compiledUseSafePoint(r);");
+                line(method, "}");
+                popNext(method, stack);
+            }
+            method.indent--;
+            line(method, "}");
+        }
+    }
+
+    /**
+     * Byte extraction, alternates which also extract bytes from this same position are taken off the stack and
+     * scanned for together just like TrieParserReader.scanAllStackPos.
+     */
+    private void emitBytes(Method method, int pos, int runLength, int epoch, Entry[] stack) {
+        List<Short> stops = new ArrayList<Short>();
+        List<Integer> continues = new ArrayList<Integer>();
+        stops.add(data[pos+1]);
+        continues.add(pos+TrieParser.SIZE_OF_VALUE_BYTES);
+
+        int size = stack.length;
+        int i = size;
+        while (--i>=0) {
+            Entry e = stack[i];
+            if (TrieParser.TYPE_VALUE_BYTES == data[e.pos]) {
+                short newStop = data[e.pos+1];
+                int entryRunLength = i>0 ? stack[i-1].runLength : 0;
+                if (e.frame.epoch!=epoch || runLength!=entryRunLength || stops.contains(newStop)) {
+                    break;
+                }
+                continues.add(e.pos+TrieParser.SIZE_OF_VALUE_BYTES);
+                stops.add(newStop);
+                size--; //the interpreter drops the top entry
+            }
+        }
+        Entry[] rest = Arrays.copyOf(stack, size);
+
+        if (1==stops.size()) {
+            line(method, "if ((p = TrieParserReader.compiledParseBytes(r, s, p, len-"+runLength+", m, (short)"+stops.get(0)+"))<0) {");
+        } else {
+            String name = "STOPS_"+stopArrays++;
+            constants.append("    private static final short[] ").append(name).append(" = new short[] {");
+            for (int j = 0; j<stops.size(); j++) {
+                constants.append(j>0 ? ", " : "").append(stops.get(j));
+            }
+            constants.append("};\n\n");
+            line(method, "if ((p = TrieParserReader.compiledParseBytes(r, s, p, len-"+runLength+", m, "+name+", "+stops.size()+"))<0) {");
+        }
+        method.indent++;
+        popNext(method, rest);
+        method.indent--;
+        line(method, "}");
+
+        int next = epochs++;
+        if (1==stops.size()) {
+            emit(method, continues.get(0), runLength, next, rest, false);
+        } else {
+            line(method, "switch ((short)s[m & (p-1)]) {");
+            for (int j = 0; j<stops.size(); j++) {
+                line(method, (j<stops.size()-1 ? "case "+stops.get(j) : "default")+": {");
+                method.indent++;
+                emit(method, continues.get(j), runLength, next, rest, false);
+                method.indent--;
+                line(method, "}");
+            }
+            line(method, "}");
+        }
+    }
+
+    /**
+     * Same order as TrieParserReader.altBranch, the last leaf added is the first one tried.
+     */
+    private void expandAlt(int pos, List<Integer> leaves) {
+        int p = pos+1;
+        int jump = (((int)data[p])<<15) | (0x7FFF&data[p+1]);
+        int local = p+TrieParser.BRANCH_JUMP_SIZE;
+        int far = p+jump+TrieParser.BRANCH_JUMP_SIZE;
+        short peekNextType = data[local];
+        if (TrieParser.TYPE_VALUE_BYTES == peekNextType || TrieParser.TYPE_VALUE_NUMERIC == peekNextType) {
+            expandLeaf(local, leaves);
+            expandLeaf(far, leaves);
+        } else {
+            expandLeaf(far, leaves);
+            expandLeaf(local, leaves);
+        }
+    }
+
+    private void expandLeaf(int pos, List<Integer> leaves) {
+        if (TrieParser.TYPE_ALT_BRANCH == data[pos]) {
+            expandAlt(pos, leaves);
+        } else {
+            leaves.add(pos);
+        }
+    }
+
+    private String endValue(int pos) {
+        return TrieParser.readEndValue(data, pos, trie.SIZE_OF_RESULT)+"L";
+    }
+
+}
@@ -33,6 +33,22 @@ public class TrieParserReader {
     private int     saveCapturedLen = -1;
     private int     safeSourcePos = -1;
     
+    //state kept while a resumable parse waits for more input
+    private boolean suspended;
+    private boolean suspendedSafePoint;
+    private int     suspendedScanNode = -1;
+    private int     suspendedScanFrom;
+    private TrieParser suspendedTrie;
+    
+    //working state for each key of a batch query
+    public static final int BATCH_LANES = 16;
+    private final int[]     laneKey = new int[BATCH_LANES];
+    private final int[]     lanePos = new int[BATCH_LANES];
+    private final int[]     laneSource = new int[BATCH_LANES];
+    private final int[]     laneRun = new int[BATCH_LANES];
+    private final long[]    laneSafe = new long[BATCH_LANES];
+    private final boolean[] laneHasSafe = new boolean[BATCH_LANES];
+    
 
     private final static int MAX_ALT_DEPTH = 256; //full recursion on alternate paths from a single point.
     private int altStackPos = 0;
@@ -174,6 +190,7 @@ public class TrieParserReader {
         that.sourcePos     = offset;
         that.sourceLen     = length;
         that.sourceMask    = mask;        
+        that.suspended     = false;
     }
     
     public static void parseSetup(TrieParserReader that, byte[] source, int mask) {
@@ -261,6 +278,57 @@ public class TrieParserReader {
                 
     }
 
+    public static long parseNext(TrieParserReader reader, CompiledTrieParser trie) {
+        return trie.query(reader, reader.sourceBacking, reader.sourcePos, reader.sourceLen, reader.sourceMask, -1);
+    }
+
+    public static long parseNext(TrieParserReader reader, ConcurrentTrieParser trie) {
+        return parseNext(reader, ConcurrentTrieParser.snapshot(trie));
+    }
+
+    /**
+     * Same as parseNext except when the input ends part way through a pattern the parse is suspended and
+     * needMoreResult is returned. Add the bytes which follow in the same backing ring with parseSetupGrow and call
+     * again to continue from the saved node, bytes already matched or scanned are not read again and fields
+     * captured so far are kept. Call parseFinishSuspended when no more input will come.
+     * 
+     * A pattern which is also the prefix of a longer one is only returned once the next byte rules out the
+     * longer one, or by parseFinishSuspended at the end of the input.
+     */
+    public static long parseNextResumable(TrieParserReader reader, TrieParser trie, long needMoreResult) {
+        if (!reader.suspended) {
+            if (trie.getLimit()<=0) {
+                return -1;
+            }
+            initForQuery(reader, trie, reader.sourceBacking, reader.sourcePos);
+            reader.suspendedSafePoint = false;
+            reader.suspendedScanNode = -1;
+        }
+        reader.suspended = false;
+        reader.suspendedTrie = trie;
+        return resumableQuery(reader, trie, reader.sourceBacking, reader.sourceMask, reader.sourcePos+reader.sourceLen, -1, needMoreResult, false);
+    }
+    
+    public static boolean parseHasSuspended(TrieParserReader reader) {
+        return reader.suspended;
+    }
+    
+    /**
+     * Ends a suspended parse when no more input will come. A number cut off by the end of the input is taken as
+     * complete so the pattern holding it can still match, otherwise returns the longest pattern already matched
+     * or unfoundResult.
+     */
+    public static long parseFinishSuspended(TrieParserReader reader, long unfoundResult) {
+        if (!reader.suspended) {
+            return unfoundResult;
+        }
+        reader.suspended = false;
+        long result = resumableQuery(reader, reader.suspendedTrie, reader.sourceBacking, reader.sourceMask, reader.sourcePos+reader.sourceLen, unfoundResult, unfoundResult, true);
+        reader.suspendedScanNode = -1;
+        reader.suspendedTrie = null;
+        return result;
+    }
+
     private static void reportError(TrieParserReader reader, int debugPos, int debugLen) {
         String input = "";
   
@@ -356,6 +424,116 @@ public class TrieParserReader {
     }
     
     
+    public static long query(TrieParserReader reader, CompiledTrieParser trie,
+                            byte[] source, int sourcePos, long sourceLength, int sourceMask, final long unfoundResult) {
+        return trie.query(reader, source, sourcePos, sourceLength, sourceMask, unfoundResult);
+    }
+    
+    public static long query(TrieParserReader reader, ConcurrentTrieParser trie,
+                            byte[] source, int sourcePos, long sourceLength, int sourceMask, final long unfoundResult) {
+        return query(reader, ConcurrentTrieParser.snapshot(trie), source, sourcePos, sourceLength, sourceMask, unfoundResult);
+    }
+    
+    /**
+     * Looks up many keys held in the same backing array, results[i] gets the value for the key at keyPositions[i].
+     * Up to BATCH_LANES keys walk the trie together one node each per round so the loads of one key overlap the
+     * cache misses of the others. The results are exactly those of calling query for each key, keys which reach
+     * an alternate branch or extraction are finished with the regular query.
+     */
+    public static void query(TrieParserReader reader, TrieParser trie, byte[] source, int[] keyPositions, int[] keyLengths,
+                             int keyCount, int sourceMask, final long unfoundResult, long[] results) {
+        if (trie.getLimit()<=0) {
+            Arrays.fill(results, 0, keyCount, unfoundResult);
+            return;
+        }
+        final int[] laneKey = reader.laneKey;
+        final int[] lanePos = reader.lanePos;
+        final int[] laneSource = reader.laneSource;
+        final int[] laneRun = reader.laneRun;
+        final long[] laneSafe = reader.laneSafe;
+        final boolean[] laneHasSafe = reader.laneHasSafe;
+        
+        int next = 0;
+        int active = 0;
+        while (next<keyCount || active>0) {
+            while (active<BATCH_LANES && next<keyCount) {
+                laneKey[active] = next;
+                lanePos[active] = 0;
+                laneSource[active] = keyPositions[next];
+                laneRun[active] = 0;
+                laneHasSafe[active] = false;
+                active++;
+                next++;
+            }
+            int lane = active;
+            while (--lane>=0) {
+                if (batchStep(reader, trie, source, keyPositions, keyLengths, sourceMask, unfoundResult, results, lane)) {
+                    //finished, the last active lane takes this slot
+                    active--;
+                    laneKey[lane] = laneKey[active];
+                    lanePos[lane] = lanePos[active];
+                    laneSource[lane] = laneSource[active];
+                    laneRun[lane] = laneRun[active];
+                    laneSafe[lane] = laneSafe[active];
+                    laneHasSafe[lane] = laneHasSafe[active];
+                }
+            }
+        }
+    }
+    
+    /**
+     * One node of one lane, the same steps query takes while its alternate stack is empty.
+     * 
+     * @return true when the result for this lane has been written
+     */
+    private static boolean batchStep(TrieParserReader reader, TrieParser trie, byte[] source, int[] keyPositions, int[] keyLengths,
+                                     int sourceMask, long unfoundResult, long[] results, int lane) {
+        final short[] localData = trie.data;
+        final int key = reader.laneKey[lane];
+        int pos = reader.lanePos[lane];
+        
+        switch (localData[pos]) {
+            case TrieParser.TYPE_BRANCH_VALUE:
+                reader.lanePos[lane] = TrieParser.jumpOnBit((short) source[sourceMask & reader.laneSource[lane]], localData[pos+1], (((int)localData[pos+2])<<15) | (0x7FFF&localData[pos+3]), pos+3);
+                return false;
+            case TrieParser.TYPE_RUN:
+                {
+                    int run = localData[pos+1];
+                    int src = reader.laneSource[lane];
+                    if (!(trie.skipDeepChecks && !reader.laneHasSafe[lane])) {
+                        int i = 0;
+                        while (i<run && localData[pos+2+i] == source[sourceMask & (src+i)]) {
+                            i++;
+                        }
+                        if (i<run) {
+                            results[key] = reader.laneHasSafe[lane] ? reader.laneSafe[lane] : unfoundResult;
+                            return true;
+                        }
+                    }
+                    reader.lanePos[lane] = pos+TrieParser.SIZE_OF_RUN+run;
+                    reader.laneSource[lane] = src+run;
+                    reader.laneRun[lane] += run;
+                }
+                return false;
+            case TrieParser.TYPE_SAFE_END:
+                reader.laneSafe[lane] = TrieParser.readEndValue(localData, pos+1, trie.SIZE_OF_RESULT);
+                reader.laneHasSafe[lane] = true;
+                if (keyLengths[key] == reader.laneRun[lane]) {
+                    results[key] = reader.laneSafe[lane];
+                    return true;
+                }
+                reader.lanePos[lane] = pos+trie.SIZE_OF_SAFE_END;
+                return false;
+            case TrieParser.TYPE_END:
+                results[key] = TrieParser.readEndValue(localData, pos+1, trie.SIZE_OF_RESULT);
+                return true;
+            default:
+                //alternates and extractions need the full interpreter
+                results[key] = query(reader, trie, source, keyPositions[key], keyLengths[key], sourceMask, unfoundResult);
+                return true;
+        }
+    }
+    
     private int pos;
     private int runLength;
     private int type;
@@ -471,6 +649,217 @@ public class TrieParserReader {
         
     }
 
+    private static long resumableQuery(TrieParserReader reader, TrieParser trie, byte[] source, int sourceMask, int end,
+                                       final long unfoundResult, final long needMoreResult, final boolean atEnd) {
+        
+        final short[] localData = trie.data;
+        boolean hasSafePoint = reader.suspendedSafePoint;
+        
+        top:
+        while (reader.type != TrieParser.TYPE_END) {  
+            int t = reader.type;
+            if (t==TrieParser.TYPE_BRANCH_VALUE) {
+                if (reader.localSourcePos >= end) {
+                    return suspend(reader, hasSafePoint, needMoreResult, atEnd, unfoundResult);
+                }
+                reader.pos = TrieParser.jumpOnBit((short) source[sourceMask & reader.localSourcePos], localData[reader.pos++], (((int)localData[reader.pos++])<<15) | (0x7FFF&localData[reader.pos]), reader.pos);
+                
+            } else if (t == TrieParser.TYPE_RUN) {
+                //nothing moves until the whole run is known to match so a suspend repeats only this run
+                int run = localData[reader.pos];
+                int available = Math.min(run, end-reader.localSourcePos);
+                if (!(trie.skipDeepChecks && !hasSafePoint && 0==reader.altStackPos)) {
+                    int i = 0;
+                    while (i<available && localData[reader.pos+1+i] == source[sourceMask & (reader.localSourcePos+i)]) {
+                        i++;
+                    }
+                    if (i<available) {
+                        if (hasSafePoint) {
+                            return useSafePointConsumed(reader);
+                        } else if (reader.altStackPos > 0) {                                
+                            tryNextChoiceOnStack(reader, localData);
+                            continue top;                                
+                        } else {
+                            return unfoundResult;
+                        }
+                    }
+                }
+                if (available<run) {
+                    return suspend(reader, hasSafePoint, needMoreResult, atEnd, unfoundResult);
+                }
+                reader.pos += 1+run;
+                reader.localSourcePos += run;
+                reader.runLength += run;
+                
+            } else if (t == TrieParser.TYPE_SAFE_END) {                    
+                //unlike query the end of the input is not a reason to stop, more may still arrive
+                recordSafePointEnd(reader, reader.localSourcePos, reader.pos, trie);  
+                hasSafePoint = true;
+                reader.pos += trie.SIZE_OF_RESULT;
+                
+            } else if (t == TrieParser.TYPE_VALUE_BYTES) {
+                if (!resumableBytes(reader, trie, source, sourceMask, end)) {
+                    return suspend(reader, hasSafePoint, needMoreResult, atEnd, unfoundResult);
+                }
+                if (reader.localSourcePos<0) {
+                    if (reader.altStackPos > 0) {
+                        tryNextChoiceOnStack(reader, localData);
+                        continue top;
+                    } else {
+                        return unfoundResult;
+                    }
+                }
+                
+            } else if (t == TrieParser.TYPE_VALUE_NUMERIC) {
+                if (reader.localSourcePos >= end) {
+                    return suspend(reader, hasSafePoint, needMoreResult, atEnd, unfoundResult);
+                }
+                int capturedPos = reader.capturedPos;
+                int temp = parseNumeric(reader, source, reader.localSourcePos, end-reader.localSourcePos, sourceMask, (int)localData[reader.pos]);
+                if (temp<0) {
+                    return unfoundResult;
+                }
+                if (temp>=end && !atEnd) {
+                    //the digits may continue in the next input
+                    reader.capturedPos = capturedPos;
+                    return suspend(reader, hasSafePoint, needMoreResult, atEnd, unfoundResult);
+                }
+                reader.pos++;
+                reader.localSourcePos = temp;
+                
+            } else if (t == TrieParser.TYPE_ALT_BRANCH) {
+                processAltBranch(reader, localData);                 
+            } else  {                
+                throw new UnsupportedOperationException("Bad jump length now at position "+(reader.pos-1)+" type found "+reader.type);
+            }
+           
+            reader.type = localData[reader.pos++]; 
+        }
+        
+        reader.sourceLen -= (reader.localSourcePos-reader.sourcePos);
+        reader.sourcePos = reader.localSourcePos;
+        
+        return TrieParser.readEndValue(localData, reader.pos, trie.SIZE_OF_RESULT);
+    }
+    
+    /**
+     * Byte extraction which remembers how far it has already looked for the stop values.
+     * 
+     * @return false if the input ended before any stop value was found
+     */
+    private static boolean resumableBytes(TrieParserReader reader, TrieParser trie, byte[] source, int sourceMask, int end) {
+        final int nodePos = reader.pos;
+        final int stackPos = reader.altStackPos;
+        
+        short stopValue = trie.data[reader.pos++];
+        int stopCount = 0;
+        reader.workingMultiContinue[stopCount] = reader.pos;
+        reader.workingMultiStops[stopCount++] = stopValue;
+        if (reader.altStackPos>0) {
+            stopCount = scanAllStackPos(reader, reader.localSourcePos, trie.data, reader.runLength, stopCount);
+        }
+        
+        int x = (nodePos==reader.suspendedScanNode) ? reader.suspendedScanFrom : reader.localSourcePos;
+        reader.suspendedScanNode = -1;
+        int lim = reader.localSourcePos+sourceMask;
+        while (x<end && x<lim && equalsNone(source[sourceMask & x], reader.workingMultiStops, stopCount)) {
+            x++;
+        }
+        if (x>=lim) {
+            //too long to ever fit in the ring
+            reader.localSourcePos = -1;
+            return true;
+        }
+        if (x>=end) {
+            //put back the alternates merged into this scan, they are merged again on resume
+            reader.altStackPos = stackPos;
+            reader.pos = nodePos;
+            reader.suspendedScanNode = nodePos;
+            reader.suspendedScanFrom = x;
+            return false;
+        }
+        
+        reader.capturedPos = extractedBytesRange(reader.capturedValues, reader.capturedPos, reader.localSourcePos, x-reader.localSourcePos, sourceMask);
+        reader.localSourcePos = x+1;
+        if (stopCount>1) {
+            reader.pos = adjustConntinueFrom(reader, source, reader.localSourcePos, sourceMask, reader.pos, stopCount);
+        }
+        return true;
+    }
+    
+    private static long suspend(TrieParserReader reader, boolean hasSafePoint, long needMoreResult, boolean atEnd, long unfoundResult) {
+        if (atEnd) {
+            //no more input will come so this path can not complete
+            return hasSafePoint ? useSafePointConsumed(reader) : unfoundResult;
+        }
+        reader.suspended = true;
+        reader.suspendedSafePoint = hasSafePoint;
+        return needMoreResult;
+    }
+    
+    //moves the source position past the safe point match, the length recorded with the safe point may since have grown
+    private static long useSafePointConsumed(TrieParserReader reader) {
+        reader.localSourcePos = reader.safeSourcePos;
+        reader.capturedPos = reader.safeCapturedPos;
+        reader.sourceLen -= (reader.safeSourcePos-reader.sourcePos);
+        reader.sourcePos = reader.safeSourcePos;
+        return reader.safeReturnValue;
+    }
+    
+    ////////////////////////////////////////////////////////////////////
+    //support for code generated by TrieParserCompiler, not for general use
+    ////////////////////////////////////////////////////////////////////
+    
+    public static void compiledStart(TrieParserReader reader, byte[] source) {
+        reader.capturedPos = 0;
+        reader.capturedBlobArray = source;
+    }
+    
+    public static int compiledCapturedPos(TrieParserReader reader) {
+        return reader.capturedPos;
+    }
+    
+    public static void compiledRestoreCapturedPos(TrieParserReader reader, int capturedPos) {
+        reader.capturedPos = capturedPos;
+    }
+    
+    public static long compiledMatch(TrieParserReader reader, int localSourcePos, long value) {
+        reader.sourceLen -= (localSourcePos-reader.sourcePos);
+        reader.sourcePos = localSourcePos;
+        return value;
+    }
+    
+    public static void compiledSafePoint(TrieParserReader reader, int localSourcePos, long value) {
+        reader.safeReturnValue = value;
+        reader.safeCapturedPos = reader.capturedPos;
+        reader.saveCapturedLen = reader.sourceLen;
+        reader.safeSourcePos = localSourcePos;
+    }
+    
+    public static long compiledUseSafePoint(TrieParserReader reader) {
+        return useSafePoint(reader);
+    }
+    
+    public static int compiledParseNumeric(TrieParserReader reader, byte[] source, int sourcePos, long remainingLen, int sourceMask, int numType) {
+        return parseNumeric(reader, source, sourcePos, remainingLen, sourceMask, numType);
+    }
+    
+    public static int compiledParseBytes(TrieParserReader reader, byte[] source, int sourcePos, long remainingLen, int sourceMask, short stopValue) {
+        return parseBytes(reader, source, sourcePos, remainingLen, sourceMask, stopValue);
+    }
+    
+    public static int compiledParseBytes(TrieParserReader reader, byte[] source, int sourcePos, long remainingLen, int sourceMask, short[] stopValues, int stopValuesCount) {
+        int x = sourcePos;
+        int lim = (int)Math.min(remainingLen, sourceMask);
+        do {
+        } while (--lim >= 0 && equalsNone(source[sourceMask & x++], stopValues, stopValuesCount));
+        if (lim<0) {//not found!
+            return -1;
+        }
+        reader.capturedPos = extractedBytesRange(reader.capturedValues, reader.capturedPos, sourcePos, (x-sourcePos)-1, sourceMask);
+        return x;
+    }
+    
     private static void parseBytes(TrieParserReader reader, TrieParser trie, byte[] source, long sourceLength,
             int sourceMask) {
         short stopValue = trie.data[reader.pos++];
@@ -0,0 +1,255 @@
+package com.ociweb.pronghorn.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+/**
+ * Finds every occurrence of every pattern held in a TrieParser anywhere in a stream of bytes, in one pass,
+ * instead of querying at each position with TrieParserReader. The literal patterns are read out of the trie
+ * into an Aho-Corasick automaton whose failure links are folded into a full 256 way transition table, so each
+ * input byte costs one table lookup.
+ *
+ * The automaton state carries over between calls so matches may span fragments and the end of the ring.
+ * Match positions are counted in bytes since the last reset. Only literal patterns are supported, tries
+ * holding %b or numeric extractions are rejected.
+ *
+ * The tables are read only and may be shared, give each stream its own scanner with new TrieParserScanner(shared).
+ */
+public class TrieParserScanner {
+
+    public interface MatchListener {
+
+        /**
+         * @param value the value stored with the pattern in the trie
+         * @param endPosition stream position just after the last byte of the match
+         * @param length length of the pattern, the match starts at endPosition-length
+         */
+        void match(long value, long endPosition, int length);
+
+    }
+
+    private static final int NONE = -1;
+
+    private final int[] next;     //state<<8 | byte to the next state
+    private final long[] values;  //value of the pattern ending at each state
+    private final int[] lengths;  //depth of each state
+    private final int[] report;   //first state with a value on the suffix chain, this one included, or NONE
+    private final int[] reportNext;
+
+    private int state;
+    private long position;
+
+    public TrieParserScanner(TrieParser trie) {
+        List<byte[]> patterns = new ArrayList<byte[]>();
+        List<Long> patternValues = new ArrayList<Long>();
+        if (trie.getLimit()>0) {
+            collect(trie, 0, new byte[0], patterns, patternValues);
+        }
+
+        int maxStates = 1;
+        for (byte[] p : patterns) {
+            maxStates += p.length;
+        }
+        int[] goTo = new int[maxStates<<8];
+        Arrays.fill(goTo, NONE);
+        long[] localValues = new long[maxStates];
+        boolean[] hasValue = new boolean[maxStates];
+        int[] localLengths = new int[maxStates];
+        int states = 1;
+
+        for (int i = 0; i<patterns.size(); i++) {
+            byte[] p = patterns.get(i);
+            int s = 0;
+            for (int j = 0; j<p.length; j++) {
+                int idx = (s<<8) | (0xFF & p[j]);
+                if (NONE == goTo[idx]) {
+                    localLengths[states] = j+1;
+                    goTo[idx] = states++;
+                }
+                s = goTo[idx];
+            }
+            if (!hasValue[s]) {
+                hasValue[s] = true;
+                localValues[s] = patternValues.get(i);
+            }
+        }
+
+        this.next = new int[states<<8];
+        this.values = Arrays.copyOf(localValues, states);
+        this.lengths = Arrays.copyOf(localLengths, states);
+        this.report = new int[states];
+        this.reportNext = new int[states];
+
+        //breadth first so every failure target is finished before it is used
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        report[0] = NONE;
+        reportNext[0] = NONE;
+        for (int b = 0; b<256; b++) {
+            int t = goTo[b];
+            if (NONE == t) {
+                next[b] = 0;
+            } else {
+                next[b] = t;
+                fail[t] = 0;
+                queue[tail++] = t;
+            }
+        }
+        while (head<tail) {
+            int s = queue[head++];
+            reportNext[s] = report[fail[s]];
+            report[s] = hasValue[s] ? s : reportNext[s];
+            int base = s<<8;
+            int failBase = fail[s]<<8;
+            for (int b = 0; b<256; b++) {
+                int t = goTo[base | b];
+                if (NONE == t) {
+                    next[base | b] = next[failBase | b];
+                } else {
+                    next[base | b] = t;
+                    fail[t] = next[failBase | b];
+                    queue[tail++] = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * New scanner sharing the tables of another but starting from the beginning of a new stream.
+     */
+    public TrieParserScanner(TrieParserScanner automaton) {
+        this.next = automaton.next;
+        this.values = automaton.values;
+        this.lengths = automaton.lengths;
+        this.report = automaton.report;
+        this.reportNext = automaton.reportNext;
+    }
+
+    //walks every path through the node program, the runs after each branch hold the full bytes of each side
+    private static void collect(TrieParser trie, int pos, byte[] prefix, List<byte[]> patterns, List<Long> patternValues) {
+        short[] data = trie.data;
+        while (true) {
+            switch (data[pos]) {
+                case TrieParser.TYPE_RUN:
+                    {
+                        int run = data[pos+1];
+                        int start = prefix.length;
+                        prefix = Arrays.copyOf(prefix, start+run);
+                        for (int i = 0; i<run; i++) {
+                            prefix[start+i] = (byte)data[pos+2+i];
+                        }
+                        pos += TrieParser.SIZE_OF_RUN+run;
+                    }
+                    break;
+                case TrieParser.TYPE_BRANCH_VALUE:
+                    {
+                        short criteria = data[pos+1];
+                        int jump = (((int)data[pos+2])<<15) | (0x7FFF&data[pos+3]);
+                        collect(trie, TrieParser.jumpOnBit((short)(0xFF&criteria), criteria, jump, pos+3), prefix, patterns, patternValues);
+                        collect(trie, TrieParser.jumpOnBit((short)0, criteria, jump, pos+3), prefix, patterns, patternValues);
+                    }
+                    return;
+                case TrieParser.TYPE_ALT_BRANCH:
+                    {
+                        int jump = (((int)data[pos+1])<<15) | (0x7FFF&data[pos+2]);
+                        collect(trie, pos+1+TrieParser.BRANCH_JUMP_SIZE, prefix, patterns, patternValues);
+                        collect(trie, pos+1+jump+TrieParser.BRANCH_JUMP_SIZE, prefix, patterns, patternValues);
+                    }
+                    return;
+                case TrieParser.TYPE_SAFE_END:
+                    patterns.add(prefix);
+                    patternValues.add(TrieParser.readEndValue(data, pos+1, trie.SIZE_OF_RESULT));
+                    pos += trie.SIZE_OF_SAFE_END;
+                    break;
+                case TrieParser.TYPE_END:
+                    patterns.add(prefix);
+                    patternValues.add(TrieParser.readEndValue(data, pos+1, trie.SIZE_OF_RESULT));
+                    return;
+                case TrieParser.TYPE_VALUE_BYTES:
+                case TrieParser.TYPE_VALUE_NUMERIC:
+                    throw new UnsupportedOperationException("Only literal patterns can be scanned, found an extraction after "+new String(prefix));
+                default:
+                    throw new UnsupportedOperationException("Unrecognized trie value "+data[pos]+" at "+pos);
+            }
+        }
+    }
+
+    public static void reset(TrieParserScanner scanner) {
+        scanner.state = 0;
+        scanner.position = 0;
+    }
+
+    /**
+     * Count of bytes scanned since the last reset.
+     */
+    public static long position(TrieParserScanner scanner) {
+        return scanner.position;
+    }
+
+    /**
+     * Scan the next bytes of the stream, every match ending in these bytes is passed to the listener.
+     *
+     * @return count of matches found
+     */
+    public static int scan(TrieParserScanner scanner, byte[] source, int sourcePos, int sourceLength, int sourceMask, MatchListener listener) {
+        final int[] localNext = scanner.next;
+        final int[] localReport = scanner.report;
+        int s = scanner.state;
+        int matches = 0;
+        for (int i = 0; i<sourceLength; i++) {
+            s = localNext[(s<<8) | (0xFF & source[sourceMask & (sourcePos+i)])];
+            int r = localReport[s];
+            if (NONE != r) {
+                long end = scanner.position+i+1;
+                do {
+                    listener.match(scanner.values[r], end, scanner.lengths[r]);
+                    matches++;
+                } while (NONE != (r = scanner.reportNext[r]));
+            }
+        }
+        scanner.state = s;
+        scanner.position += sourceLength;
+        return matches;
+    }
+
+    /**
+     * Scan and release every fragment waiting on the pipe. An end of stream fragment or the shutdown message is
+     * consumed, resets the scanner for the next stream and stops the scan.
+     *
+     * @return count of matches found
+     */
+    public static int scan(TrieParserScanner scanner, Pipe<RawDataSchema> pipe, MatchListener listener) {
+        assert(Pipe.from(pipe) == RawDataSchema.FROM);
+        int matches = 0;
+        while (Pipe.hasContentToRead(pipe)) {
+            int msgIdx = Pipe.takeMsgIdx(pipe);
+            if (msgIdx<0) {
+                Pipe.confirmLowLevelRead(pipe, Pipe.EOF_SIZE);
+                Pipe.releaseReadLock(pipe);
+                reset(scanner);
+                break;
+            }
+            int meta = Pipe.takeRingByteMetaData(pipe);
+            int len = Pipe.takeRingByteLen(pipe);
+            if (len>0) {
+                matches += scan(scanner, Pipe.byteBackingArray(meta, pipe), Pipe.bytePosition(meta, pipe, len), len, Pipe.blobMask(pipe), listener);
+            } else {
+                Pipe.bytePosition(meta, pipe, len);
+            }
+            Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+            Pipe.releaseReadLock(pipe);
+            if (len<0) {
+                reset(scanner);
+                break;
+            }
+        }
+        return matches;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ASCIINumbersTest {
+
+    private static final int FLAT = Integer.MAX_VALUE;
+
+    private static long parseLong(String text) {
+        byte[] b = text.getBytes();
+        return ASCIINumbers.parseLong(b, 0, FLAT, b.length);
+    }
+
+    private static double parseDouble(String text) {
+        byte[] b = text.getBytes();
+        return ASCIINumbers.parseDouble(b, 0, FLAT, b.length);
+    }
+
+    private static void assertRejected(String text) {
+        try {
+            parseLong(text);
+            fail("expected "+text+" to be rejected");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void formatMatchesToString() {
+        byte[] target = new byte[32];
+        long[] values = new long[] {0, 9, 10, 99, 100, 101, 65536, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            long neg = value<0 ? value : -value;
+            int start = ASCIINumbers.writeDigitsBackwards(target, FLAT, neg, target.length);
+            String expected = Long.toString(value).replace("-", "");
+            assertEquals(expected, new String(target, start, target.length-start));
+        }
+    }
+
+    @Test
+    public void parseLongLimits() {
+        assertEquals(0, parseLong("0"));
+        assertEquals(-5, parseLong("-5"));
+        assertEquals(5, parseLong("+5"));
+        assertEquals(Long.MAX_VALUE, parseLong(Long.toString(Long.MAX_VALUE)));
+        assertEquals(Long.MIN_VALUE, parseLong(Long.toString(Long.MIN_VALUE)));
+        assertRejected("9223372036854775808");
+        assertRejected("-9223372036854775809");
+        assertRejected("12a4");
+        assertRejected("-");
+        assertRejected("");
+    }
+
+    @Test
+    public void parseDoubleMatchesJDK() {
+        String[] values = new String[] {"0", "-0", "12.125", "-0.5", "3.14159", "1e3", "6.02E23", "0.000123", "12345678901234567890.5", ".25"};
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value), parseDouble(value), 0d);
+        }
+    }
+
+}
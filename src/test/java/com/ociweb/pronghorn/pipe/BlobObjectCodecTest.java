@@ -0,0 +1,96 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class BlobObjectCodecTest {
+
+    private static class Trade {
+        int quantity;
+        long price;
+        final StringBuilder symbol = new StringBuilder();
+    }
+
+    private static final BlobObjectCodec.Serializer<Trade> TRADE = new BlobObjectCodec.Serializer<Trade>() {
+
+        @Override
+        public void write(Trade object, DataOutputBlobWriter<?> writer) {
+            DataOutputBlobWriter.writePackedInt(writer, object.quantity);
+            DataOutputBlobWriter.writePackedLong(writer, object.price);
+            DataOutputBlobWriter.writePackedChars(writer, object.symbol);
+        }
+
+        @Override
+        public Trade read(Trade reuse, DataInputBlobReader<?> reader) {
+            Trade trade = null==reuse ? new Trade() : reuse;
+            trade.quantity = DataInputBlobReader.readPackedInt(reader);
+            trade.price = DataInputBlobReader.readPackedLong(reader);
+            trade.symbol.setLength(0);
+            try {
+                DataInputBlobReader.readPackedChars(reader, trade.symbol);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return trade;
+        }
+    };
+
+    @Test
+    public void roundTripWithPooledInstances() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 256));
+        pipe.initBuffers();
+        BlobObjectCodec codec = BlobObjectCodec.register(new BlobObjectCodec(), 3, Trade.class, TRADE);
+
+        DataOutputBlobWriter<RawDataSchema> out = new DataOutputBlobWriter<RawDataSchema>(pipe);
+        DataInputBlobReader<RawDataSchema> in = new DataInputBlobReader<RawDataSchema>(pipe);
+
+        Trade trade = new Trade();
+        trade.quantity = 100;
+        trade.price = 123456789L;
+        trade.symbol.append("OCI");
+
+        assertTrue(PipeWriter.tryWriteFragment(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1));
+        out.openField();
+        out.writeObject(trade, codec);
+        trade.quantity = -7;
+        trade.symbol.append("WEB");
+        out.writeObject(trade, codec);
+        out.writeObject(null, codec);
+        int length = out.closeHighLevelField(RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2);
+        PipeWriter.publishWrites(pipe);
+        assertTrue("packed form should be small, was "+length, length < 48);
+
+        assertTrue(PipeReader.tryReadFragment(pipe));
+        in.openHighLevelAPIField(RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2);
+
+        Trade first = (Trade)in.readObject(codec);
+        assertEquals(100, first.quantity);
+        assertEquals(123456789L, first.price);
+        assertEquals("OCI", first.symbol.toString());
+
+        //pool of one, the same instance is filled again
+        Trade second = (Trade)in.readObject(codec);
+        assertSame(first, second);
+        assertEquals(-7, second.quantity);
+        assertEquals("OCIWEB", second.symbol.toString());
+
+        assertNull(in.readObject(codec));
+        PipeReader.releaseReadLock(pipe);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unregisteredClass() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 256));
+        pipe.initBuffers();
+        DataOutputBlobWriter<RawDataSchema> out = new DataOutputBlobWriter<RawDataSchema>(pipe);
+        out.openField();
+        out.writeObject("not registered", new BlobObjectCodec());
+    }
+
+}
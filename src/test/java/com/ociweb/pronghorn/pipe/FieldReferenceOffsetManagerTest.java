@@ -0,0 +1,47 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.schema.loader.TemplateHandler;
+import com.ociweb.pronghorn.pipe.token.OperatorMask;
+import com.ociweb.pronghorn.pipe.token.TokenBuilder;
+import com.ociweb.pronghorn.pipe.token.TypeMask;
+
+public class FieldReferenceOffsetManagerTest {
+
+    @Test
+    public void walkPlanMatchesTokens() throws Exception {
+        FieldReferenceOffsetManager from = TemplateHandler.loadFrom("/template/smallExample.xml");
+
+        int opens = 0;
+        int closes = 0;
+        int cursor = 0;
+        while (cursor < from.fragScriptSize.length) {
+            if (0 != from.fragScriptSize[cursor]) {
+                int lastScriptPos = cursor + from.fragScriptSize[cursor] - 1;
+                int token = from.tokens[lastScriptPos];
+                assertEquals(cursor + from.fragScriptSize[cursor], from.fragNextCursor[cursor]);
+
+                int expected = FieldReferenceOffsetManager.WALK_NONE;
+                if (TypeMask.GroupLength == TokenBuilder.extractType(token)) {
+                    expected = FieldReferenceOffsetManager.WALK_OPEN_SEQUENCE;
+                    assertEquals(from.fragDataSize[lastScriptPos], from.fragSeqLengthOffset[cursor]);
+                    opens++;
+                } else if (TypeMask.Group == TokenBuilder.extractType(token)
+                           && 0 != (OperatorMask.Group_Bit_Seq & TokenBuilder.extractOper(token))
+                           && 0 != (OperatorMask.Group_Bit_Close & TokenBuilder.extractOper(token))) {
+                    expected = FieldReferenceOffsetManager.WALK_CLOSE_SEQUENCE;
+                    closes++;
+                }
+                assertEquals(expected, from.fragWalkAction[cursor]);
+            }
+            cursor++;
+        }
+        //Trucks has one sequence, TrucksMark2 has a nested pair
+        assertEquals(3, opens);
+        assertEquals(3, closes);
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OffHeapPipeTest {
+
+    private static final int SIZE = RawDataSchema.FROM.fragDataSize[RawDataSchema.MSG_CHUNKEDSTREAM_1];
+
+    @Test
+    public void roundTripWrapsBothRings() {
+        OffHeapPipe<RawDataSchema> pipe = new OffHeapPipe<RawDataSchema>(PipeConfig.offHeap(RawDataSchema.instance, (byte)4, (byte)7)).initBuffers();
+        try {
+            byte[] target = new byte[pipe.maxVarLen];
+            int next = 0;
+            int expected = 0;
+            while (next<500) {
+                while (OffHeapPipe.hasRoomForWrite(pipe, SIZE) && next<500) {
+                    write(pipe, value(next++, pipe.maxVarLen));
+                }
+                assertFalse(OffHeapPipe.hasRoomForWrite(pipe, SIZE) && next<500);
+                //read half of what is waiting so the positions keep moving across the end of each ring
+                int count = 1+(OffHeapPipe.contentRemaining(pipe)/SIZE)/2;
+                while (--count>=0) {
+                    byte[] value = value(expected++, pipe.maxVarLen);
+                    assertEquals(value.length, read(pipe, target));
+                    assertArrayEquals(value, Arrays.copyOf(target, value.length));
+                }
+            }
+            while (OffHeapPipe.hasContentToRead(pipe)) {
+                byte[] value = value(expected++, pipe.maxVarLen);
+                assertEquals(value.length, read(pipe, target));
+                assertArrayEquals(value, Arrays.copyOf(target, value.length));
+            }
+            assertEquals(next, expected);
+            assertEquals(0, OffHeapPipe.contentRemaining(pipe));
+        } finally {
+            OffHeapPipe.free(pipe);
+        }
+    }
+
+    @Test
+    public void nullFieldAndEOF() {
+        OffHeapPipe<RawDataSchema> pipe = new OffHeapPipe<RawDataSchema>(PipeConfig.offHeap(RawDataSchema.instance, (byte)4, (byte)6)).initBuffers();
+        try {
+            OffHeapPipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            OffHeapPipe.addNullByteArray(pipe);
+            OffHeapPipe.confirmLowLevelWrite(pipe, SIZE);
+            assertEquals(0, OffHeapPipe.publishWrites(pipe));
+            assertTrue(OffHeapPipe.hasRoomForWrite(pipe, Pipe.EOF_SIZE));
+            OffHeapPipe.publishEOF(pipe);
+
+            assertEquals(-1, read(pipe, new byte[4]));
+            assertTrue(OffHeapPipe.hasContentToRead(pipe));
+            assertEquals(-1, OffHeapPipe.takeMsgIdx(pipe));
+            OffHeapPipe.confirmLowLevelRead(pipe, Pipe.EOF_SIZE);
+            assertEquals(0, OffHeapPipe.releaseReadLock(pipe));
+            assertFalse(OffHeapPipe.hasContentToRead(pipe));
+        } finally {
+            OffHeapPipe.free(pipe);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void fieldLargerThanLimit() {
+        OffHeapPipe<RawDataSchema> pipe = new OffHeapPipe<RawDataSchema>(PipeConfig.offHeap(RawDataSchema.instance, (byte)4, (byte)6)).initBuffers();
+        try {
+            OffHeapPipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            OffHeapPipe.addByteArray(new byte[pipe.maxVarLen+1], 0, pipe.maxVarLen+1, pipe);
+        } finally {
+            OffHeapPipe.free(pipe);
+        }
+    }
+
+    @Test
+    public void blobMayPassTheArrayLimit() {
+        PipeConfig<RawDataSchema> config = PipeConfig.offHeap(RawDataSchema.instance, (byte)10, (byte)34);
+        assertTrue(config.isOffHeap());
+        assertTrue(config.grow2x().isOffHeap());
+        //only the sizes are checked, the rings are not allocated
+        OffHeapPipe<RawDataSchema> pipe = new OffHeapPipe<RawDataSchema>(config);
+        assertEquals(1L<<34, pipe.sizeOfBlobRing);
+        assertEquals((1L<<34)/FieldReferenceOffsetManager.maxVarLenFieldsPerPrimaryRingSize(RawDataSchema.FROM, 1<<10), pipe.maxVarLen);
+        assertFalse(OffHeapPipe.isInit(pipe));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void heapPipeRejectsOffHeapConfig() {
+        new Pipe<RawDataSchema>(PipeConfig.offHeap(RawDataSchema.instance, (byte)4, (byte)6));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void heapConfigKeepsArrayLimit() {
+        new PipeConfig<RawDataSchema>((byte)10, (byte)(PipeConfig.MAX_RING_BITS+1), null, RawDataSchema.instance);
+    }
+
+    @Test
+    public void producerAndConsumerThreads() throws InterruptedException {
+        final OffHeapPipe<RawDataSchema> pipe = new OffHeapPipe<RawDataSchema>(PipeConfig.offHeap(RawDataSchema.instance, (byte)6, (byte)10)).initBuffers();
+        final int total = 100000;
+        try {
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int i = 0;
+                    while (i<total) {
+                        if (OffHeapPipe.hasRoomForWrite(pipe, SIZE)) {
+                            write(pipe, value(i++, pipe.maxVarLen));
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            final int[] received = new int[1];
+            final boolean[] ordered = new boolean[]{true};
+            Thread consumer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] target = new byte[pipe.maxVarLen];
+                    while (received[0]<total) {
+                        if (OffHeapPipe.hasContentToRead(pipe)) {
+                            byte[] value = value(received[0]++, pipe.maxVarLen);
+                            int len = read(pipe, target);
+                            ordered[0] &= len==value.length && Arrays.equals(value, Arrays.copyOf(target, len));
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            producer.start();
+            consumer.start();
+            producer.join(20000);
+            consumer.join(20000);
+            assertFalse(consumer.isAlive());
+            assertEquals(total, received[0]);
+            assertTrue(ordered[0]);
+        } finally {
+            OffHeapPipe.free(pipe);
+        }
+    }
+
+    private static byte[] value(int i, int maxLen) {
+        byte[] result = new byte[i%(maxLen+1)];
+        int j = result.length;
+        while (--j>=0) {
+            result[j] = (byte)(i+j);
+        }
+        return result;
+    }
+
+    private static void write(OffHeapPipe<RawDataSchema> pipe, byte[] value) {
+        int size = OffHeapPipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        OffHeapPipe.addByteArray(value, 0, value.length, pipe);
+        OffHeapPipe.confirmLowLevelWrite(pipe, size);
+        OffHeapPipe.publishWrites(pipe);
+    }
+
+    private static int read(OffHeapPipe<RawDataSchema> pipe, byte[] target) {
+        assertTrue(OffHeapPipe.hasContentToRead(pipe));
+        int msgIdx = OffHeapPipe.takeMsgIdx(pipe);
+        int len = OffHeapPipe.takeByteArray(pipe, target, 0);
+        OffHeapPipe.confirmLowLevelRead(pipe, OffHeapPipe.sizeOf(pipe, msgIdx));
+        OffHeapPipe.releaseReadLock(pipe);
+        return len;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PipeAdaptiveBatchTest {
+
+    @Test
+    public void publishBatchFollowsFill() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 256, 64));
+        pipe.initBuffers();
+        Pipe.setAdaptivePublishBatchSize(pipe);
+        assertEquals(1, Pipe.getPublishBatchSize(pipe));
+
+        //consumer is absent so the pipe fills and the batch grows
+        int written = 0;
+        while (Pipe.contentRemaining(pipe) < pipe.sizeOfSlabRing*3/4 && Pipe.hasRoomForWrite(pipe)) {
+            write(pipe);
+            written++;
+        }
+        int grown = Pipe.getPublishBatchSize(pipe);
+        assertTrue("batch did not grow "+grown, grown>1);
+        assertTrue(grown <= Pipe.computeMaxBatchSize(pipe, 3));
+
+        //consumer catches up, once the pipe is nearly empty every batch shrinks again
+        Pipe.publishAllBatchedWrites(pipe);
+        while (written>0) {
+            read(pipe);
+            written--;
+        }
+        int i = 64;
+        while (--i>=0) {
+            write(pipe);
+            Pipe.publishAllBatchedWrites(pipe);
+            read(pipe);
+        }
+        assertEquals(1, Pipe.getPublishBatchSize(pipe));
+    }
+
+    @Test
+    public void releaseBatchFollowsFill() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 256, 64));
+        pipe.initBuffers();
+        Pipe.setAdaptiveReleaseBatchSize(pipe);
+
+        //little waiting content, producer has room so the consumer releases in larger batches
+        int i = 64;
+        while (--i>=0) {
+            write(pipe);
+            read(pipe);
+        }
+        assertTrue(Pipe.getReleaseBatchSize(pipe)>1);
+
+        //nearly full pipe, producer needs room so the release batch shrinks
+        Pipe.releaseAllBatchedReads(pipe);
+        while (Pipe.hasRoomForWrite(pipe)) {
+            write(pipe);
+        }
+        i = 200;
+        while (--i>=0) {
+            read(pipe);
+            if (Pipe.hasRoomForWrite(pipe)) {
+                write(pipe);
+            }
+        }
+        assertEquals(1, Pipe.getReleaseBatchSize(pipe));
+    }
+
+    @Test
+    public void adaptBatchBounds() {
+        assertEquals(2, Pipe.adaptBatch(1, 600, 1024, 8, true));
+        assertEquals(8, Pipe.adaptBatch(8, 600, 1024, 8, true));
+        assertEquals(4, Pipe.adaptBatch(8, 10, 1024, 8, true));
+        assertEquals(1, Pipe.adaptBatch(1, 10, 1024, 8, true));
+        assertEquals(5, Pipe.adaptBatch(5, 300, 1024, 8, true));
+        assertEquals(2, Pipe.adaptBatch(1, 10, 1024, 8, false));
+        assertEquals(4, Pipe.adaptBatch(8, 600, 1024, 8, false));
+    }
+
+    private static void write(Pipe<RawDataSchema> pipe) {
+        assertTrue(Pipe.hasRoomForWrite(pipe));
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addBytePosAndLen(pipe, Pipe.getBlobWorkingHeadPosition(pipe), 0);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static void read(Pipe<RawDataSchema> pipe) {
+        assertTrue(Pipe.hasContentToRead(pipe));
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        Pipe.takeRingByteMetaData(pipe);
+        Pipe.takeRingByteLen(pipe);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PipeBroadcastTest {
+
+    @Test
+    public void everyConsumerSeesEveryFragment() {
+
+        PipeConfig<RawDataSchema> config = new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64);
+        Pipe<RawDataSchema> source = new Pipe<RawDataSchema>(config);
+        source.initBuffers();
+        Pipe<RawDataSchema> tapA = Pipe.broadcastConsumer(source);
+        Pipe<RawDataSchema> tapB = Pipe.broadcastConsumer(source);
+        tapA.initBuffers();
+        tapB.initBuffers();
+
+        assertEquals(3, Pipe.broadcastConsumerCount(source));
+        assertTrue(Pipe.isBroadcastConsumer(tapA));
+        assertFalse(Pipe.isBroadcastConsumer(source));
+
+        int next = 0;
+        while (Pipe.hasRoomForWrite(source)) {
+            writeText(source, "value"+next++);
+        }
+        assertTrue(next>0);
+
+        //source and tapA catch up but tapB still holds the space
+        int i = 0;
+        while (i<next) {
+            assertEquals("value"+i, readText(source));
+            assertEquals("value"+i, readText(tapA));
+            i++;
+        }
+        assertFalse(Pipe.hasContentToRead(source));
+        assertFalse(Pipe.hasContentToRead(tapA));
+        assertFalse(Pipe.hasRoomForWrite(source));
+
+        //releasing the slowest consumer makes room for the producer
+        assertEquals("value0", readText(tapB));
+        assertTrue(Pipe.hasRoomForWrite(source));
+        writeText(source, "value"+next++);
+
+        i = 1;
+        while (i<next) {
+            assertEquals("value"+i, readText(tapB));
+            i++;
+        }
+        assertEquals("value"+(next-1), readText(source));
+        assertEquals("value"+(next-1), readText(tapA));
+        assertFalse(Pipe.hasContentToRead(tapB));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void consumersMustBeAddedBeforeWrites() {
+        PipeConfig<RawDataSchema> config = new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64);
+        Pipe<RawDataSchema> source = new Pipe<RawDataSchema>(config);
+        source.initBuffers();
+        writeText(source, "early");
+        Pipe.broadcastConsumer(source);
+    }
+
+    private static void writeText(Pipe<RawDataSchema> pipe, String text) {
+        assertTrue(Pipe.hasRoomForWrite(pipe));
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addASCII(text, pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static String readText(Pipe<RawDataSchema> pipe) {
+        assertTrue(Pipe.hasContentToRead(pipe));
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, msgIdx);
+        int meta = Pipe.takeRingByteMetaData(pipe);
+        int len = Pipe.takeRingByteLen(pipe);
+        String result = Pipe.readASCII(pipe, new StringBuilder(), meta, len).toString();
+        Pipe.bytePosition(meta, pipe, len);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return result;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class PipeCheckpointTest {
+
+    @Test
+    public void restoreUnreleasedFragments() throws IOException {
+
+        PipeConfig<RawDataSchema> config = new PipeConfig<RawDataSchema>(RawDataSchema.instance, 16, 64);
+        File file = File.createTempFile("pipeCheckpoint", ".dat");
+        file.deleteOnExit();
+
+        Pipe<RawDataSchema> first = new Pipe<RawDataSchema>(config);
+        first.initBuffers();
+        PipeCheckpoint cp = new PipeCheckpoint(file, config);
+        assertFalse(PipeCheckpoint.hasImage(cp));
+
+        //run the ring around a few times so the image must handle the wrap
+        int next = 0;
+        int expected = 0;
+        int round = 5;
+        while (--round>=0) {
+            int w = 7;
+            while (--w>=0) {
+                writeText(first, "value"+next++);
+            }
+            PipeCheckpoint.save(cp, first);
+            int r = 5;
+            while (--r>=0) {
+                assertEquals("value"+expected++, readText(first));
+            }
+            PipeCheckpoint.save(cp, first);
+        }
+        PipeCheckpoint.close(cp);
+
+        //simulate the restart, nothing is shared with the first pipe except the file
+        Pipe<RawDataSchema> second = new Pipe<RawDataSchema>(config);
+        second.initBuffers();
+        PipeCheckpoint cp2 = new PipeCheckpoint(file, config);
+        assertTrue(PipeCheckpoint.restore(cp2, second));
+
+        int replayFrom = expected;
+        while (expected<next) {
+            assertEquals("value"+expected++, readTextWithoutRelease(second));
+        }
+        assertFalse(Pipe.hasContentToRead(second));
+
+        //unreleased fragments can still be replayed after the restart
+        Pipe.replayUnReleased(second);
+        assertTrue(Pipe.isReplaying(second));
+        assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(second));
+        int meta = Pipe.takeRingByteMetaData(second);
+        int len = Pipe.takeRingByteLen(second);
+        assertEquals("value"+replayFrom, Pipe.readASCII(second, new StringBuilder(), meta, len).toString());
+        Pipe.cancelReplay(second);
+        Pipe.releaseAllPendingReadLock(second);
+
+        //producer continues where the first run left off
+        writeText(second, "after");
+        assertEquals("after", readText(second));
+
+        PipeCheckpoint.close(cp2);
+    }
+
+    private static void writeText(Pipe<RawDataSchema> pipe, String text) {
+        assertTrue(Pipe.hasRoomForWrite(pipe));
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addASCII(text, pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static String readText(Pipe<RawDataSchema> pipe) {
+        String result = readField(pipe);
+        Pipe.releaseReadLock(pipe);
+        return result;
+    }
+
+    private static String readTextWithoutRelease(Pipe<RawDataSchema> pipe) {
+        String result = readField(pipe);
+        Pipe.readNextWithoutReleasingReadLock(pipe);
+        return result;
+    }
+
+    private static String readField(Pipe<RawDataSchema> pipe) {
+        assertTrue(Pipe.hasContentToRead(pipe));
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, msgIdx);
+        int meta = Pipe.takeRingByteMetaData(pipe);
+        int len = Pipe.takeRingByteLen(pipe);
+        String result = Pipe.readASCII(pipe, new StringBuilder(), meta, len).toString();
+        Pipe.bytePosition(meta, pipe, len); //moves the blob tail forward so releases publish it
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        return result;
+    }
+
+}
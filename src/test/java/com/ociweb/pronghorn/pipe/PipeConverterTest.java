@@ -155,4 +155,68 @@ public class PipeConverterTest {
     }
     
     
+    @Test
+    public void textNumbersRoundTrip() {
+    
+        //small blob ring so many of the values wrap
+        Pipe<RawDataSchema> ring = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        ring.initBuffers();
+        
+        long[] values = new long[] {0, 7, -7, 42, 99, 100, -100, 12345, 1234567890123L, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        int i = 0;
+        while (i<values.length*5) {
+            long value = values[i%values.length];
+            Pipe.addMsgIdx(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            Pipe.addLongAsASCII(ring, value);
+            Pipe.confirmLowLevelWrite(ring, Pipe.sizeOf(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1));
+            Pipe.publishWrites(ring);
+            
+            assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(ring));
+            int meta = Pipe.takeRingByteMetaData(ring);
+            int len = Pipe.takeRingByteLen(ring);
+            assertEquals(Long.toString(value).length(), len);
+            assertEquals(value, Pipe.readTextAsLong(ring, meta, len));
+            if (value>=Integer.MIN_VALUE && value<=Integer.MAX_VALUE) {
+                assertEquals((int)value, Pipe.readTextAsInt(ring, meta, len));
+            }
+            Pipe.bytePosition(meta, ring, len);
+            Pipe.confirmLowLevelRead(ring, Pipe.sizeOf(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1));
+            Pipe.releaseReadLock(ring);
+            i++;
+        }
+    }
+    
+    @Test
+    public void textDecimalRoundTrip() {
+    
+        Pipe<RawDataSchema> ring = new Pipe<RawDataSchema>(new PipeConfig((byte)7, (byte)16, null, RawDataSchema.instance));
+        ring.initBuffers();
+        
+        Pipe.validateVarLength(ring, 7);
+        Pipe.addDecimalAsASCII(2, 123456, ring);
+        Pipe.addBytePosAndLen(ring,0,7);
+        Pipe.publishWrites(ring);
+        
+        int meta = Pipe.takeRingByteMetaData(ring);
+        int len = Pipe.takeRingByteLen(ring);
+        
+        assertEquals(123456, Pipe.readTextAsDecimalMantissa(ring, meta, len, 2));
+        assertEquals(1234560, Pipe.readTextAsDecimalMantissa(ring, meta, len, 3));
+        assertEquals(12345, Pipe.readTextAsDecimalMantissa(ring, meta, len, 1));
+        assertEquals(1234.56d, Pipe.readTextAsDouble(ring, meta, len), 0d);
+        
+        ring.reset();
+        byte[] text = "-12.50".getBytes();
+        Pipe.addMsgIdx(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addByteArray(text, 0, text.length, ring);
+        Pipe.confirmLowLevelWrite(ring, Pipe.sizeOf(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1));
+        Pipe.publishWrites(ring);
+        
+        DataInputBlobReader<RawDataSchema> reader = new DataInputBlobReader<RawDataSchema>(ring);
+        assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(ring));
+        reader.openLowLevelAPIField();
+        assertEquals(-1250, reader.readTextAsDecimalMantissa(2));
+        assertFalse(reader.hasRemainingBytes());
+    }
+    
 }
@@ -3,6 +3,7 @@ package com.ociweb.pronghorn.pipe;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -1036,9 +1037,148 @@ public class PipeDataCopy {
 		
 	}
 	
+	@Test
+	public void publishedRunCopy() {
+		
+		Pipe<RawDataSchema> input = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 16));
+		Pipe<RawDataSchema> output = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 16));
+		input.initBuffers();
+		output.initBuffers();
+		
+		int size = Pipe.sizeOf(input, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+		int total = 0;
+		int round = 0;
+		while (round<20) { //enough rounds to wrap both rings many times
+			int i = 3;
+			while (--i>=0) {
+				assertTrue(Pipe.hasRoomForWrite(input, size));
+				Pipe.addMsgIdx(input, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+				Pipe.addASCII("run"+(total+i), input);
+				Pipe.confirmLowLevelWrite(input, size);
+				Pipe.publishWrites(input);
+			}
+			assertEquals(3*size, Pipe.copyPublishedRun(input, output));
+			assertEquals(0, Pipe.copyPublishedRun(input, output));
+			assertEquals(0, Pipe.contentRemaining(input));
+			Pipe.releaseAllBatchedReads(input);
+			
+			i = 3;
+			while (--i>=0) {
+				assertTrue(Pipe.hasContentToRead(output));
+				assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(output));
+				int meta = Pipe.takeRingByteMetaData(output);
+				int len = Pipe.takeRingByteLen(output);
+				assertEquals("run"+(total+i), Pipe.readASCII(output, new StringBuilder(), meta, len).toString());
+				Pipe.bytePosition(meta, output, len); //moves the blob working tail
+				Pipe.confirmLowLevelRead(output, size);
+				Pipe.releaseReadLock(output);
+			}
+			Pipe.releaseAllBatchedReads(output);
+			total += 3;
+			round++;
+		}
+		assertEquals(0, Pipe.contentRemaining(output));
+	}
 	
+	@Test
+	public void publishedRunCopyWithStaleHead() {
+		
+		Pipe<RawDataSchema> input = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 16));
+		Pipe<RawDataSchema> output = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 16));
+		input.initBuffers();
+		output.initBuffers();
+		
+		int size = Pipe.sizeOf(input, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+		String[] text = new String[]{"first", "second", "third"};
+		for (int i = 0; i<text.length; i++) {
+			Pipe.addMsgIdx(input, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+			Pipe.addASCII(text[i], input);
+			Pipe.confirmLowLevelWrite(input, size);
+			Pipe.publishWrites(input);
+			if (0==i) {
+				//consumer caches the head while only the first fragment is published
+				assertTrue(Pipe.hasContentToRead(input));
+			}
+		}
+		
+		//only the first fragment and its bytes may move, the rest are taken by the next copy
+		assertEquals(size, Pipe.copyPublishedRun(input, output));
+		assertEquals(2*size, Pipe.copyPublishedRun(input, output));
+		Pipe.releaseAllBatchedReads(input);
+		
+		for (int i = 0; i<text.length; i++) {
+			assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(output));
+			int meta = Pipe.takeRingByteMetaData(output);
+			int len = Pipe.takeRingByteLen(output);
+			assertEquals(text[i], Pipe.readASCII(output, new StringBuilder(), meta, len).toString());
+			Pipe.bytePosition(meta, output, len);
+			Pipe.confirmLowLevelRead(output, size);
+			Pipe.releaseReadLock(output);
+		}
+		assertEquals(0, Pipe.contentRemaining(output));
+	}
 	
+	@Test
+	public void publishedRunCopyWhileProducing() throws InterruptedException {
+		
+		final Pipe<RawDataSchema> input = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 16, 32));
+		Pipe<RawDataSchema> output = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 64, 32));
+		input.initBuffers();
+		output.initBuffers();
+		
+		final int size = Pipe.sizeOf(input, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+		final int messages = 5000;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		
+		//the producer moves the blob head before each publish so the consumer often sees bytes of unpublished fragments
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					int i = 0;
+					while (i<messages) {
+						if (Pipe.hasRoomForWrite(input, size)) {
+							Pipe.addMsgIdx(input, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+							Pipe.addASCII(text(i++), input);
+							Pipe.confirmLowLevelWrite(input, size);
+							Pipe.publishWrites(input);
+						} else {
+							Thread.yield();
+						}
+					}
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		});
+		producer.start();
+		
+		StringBuilder target = new StringBuilder();
+		int expected = 0;
+		while (expected<messages && null==failure.get()) {
+			Pipe.copyPublishedRun(input, output);
+			Pipe.releaseAllBatchedReads(input);
+			while (Pipe.hasContentToRead(output)) {
+				assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(output));
+				int meta = Pipe.takeRingByteMetaData(output);
+				int len = Pipe.takeRingByteLen(output);
+				target.setLength(0);
+				assertEquals(text(expected++), Pipe.readASCII(output, target, meta, len).toString());
+				Pipe.bytePosition(meta, output, len);
+				Pipe.confirmLowLevelRead(output, size);
+				Pipe.releaseReadLock(output);
+			}
+			Pipe.releaseAllBatchedReads(output);
+		}
+		producer.join();
+		assertNull(failure.get());
+		assertEquals(messages, expected);
+		assertEquals(0, Pipe.contentRemaining(output));
+	}
 	
-	
+	private static String text(int i) {
+		//varied lengths so the blob run never lines up with the slab run
+		return "m"+i+"abcdefghijklmnopqrstuvwxyz".substring(0, i%23);
+	}
 	
 }
@@ -0,0 +1,155 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+public class PipeMetricsTest {
+
+    @Test
+    public void countsFragmentsBytesAndStalls() throws Exception {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        PipeMetrics metrics = PipeMetrics.attach(pipe, 1);
+
+        assertFalse(Pipe.hasContentToRead(pipe));
+        assertEquals(1, PipeMetrics.contentStalls(metrics));
+
+        int count = 0;
+        while (Pipe.hasRoomForWrite(pipe)) {
+            write(pipe, "abc");
+            count++;
+        }
+        assertEquals(1, PipeMetrics.roomStalls(metrics));
+        assertEquals(count, PipeMetrics.fragmentsPublished(metrics));
+        assertEquals(3*count, PipeMetrics.bytesPublished(metrics));
+        assertTrue(PipeMetrics.slabFillPercent(metrics)>50);
+        assertTrue(PipeMetrics.blobFillPercent(metrics)>0);
+
+        int i = count;
+        while (--i>=0) {
+            read(pipe);
+        }
+        assertEquals(count, PipeMetrics.fragmentsReleased(metrics));
+        assertEquals(3*count, PipeMetrics.bytesReleased(metrics));
+        assertEquals(0, PipeMetrics.slabFillPercent(metrics));
+
+        Histogram latency = PipeMetrics.latency(metrics, new Histogram(3));
+        assertEquals(count, latency.getTotalCount());
+
+        ObjectName name = PipeMetrics.register(metrics, "metricsTest");
+        try {
+            assertEquals(Long.valueOf(count), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FragmentsReleased"));
+            assertEquals(Long.valueOf(count), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LatencyCount"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+
+        PipeMetrics.resetLatency(metrics);
+        assertEquals(0, PipeMetrics.latency(metrics, latency).getTotalCount());
+    }
+
+    @Test
+    public void highLevelApiIsCounted() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        PipeMetrics metrics = PipeMetrics.attach(pipe, 0);
+
+        assertTrue(PipeWriter.tryWriteFragment(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1));
+        PipeWriter.writeBytes(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, new byte[]{1,2,3,4});
+        PipeWriter.publishWrites(pipe);
+        assertEquals(1, PipeMetrics.fragmentsPublished(metrics));
+        assertEquals(4, PipeMetrics.bytesPublished(metrics));
+
+        assertTrue(PipeReader.tryReadFragment(pipe));
+        PipeReader.releaseReadLock(pipe);
+        assertFalse(PipeReader.tryReadFragment(pipe));
+        assertEquals(1, PipeMetrics.fragmentsReleased(metrics));
+        assertEquals(4, PipeMetrics.bytesReleased(metrics));
+        assertEquals(1, PipeMetrics.contentStalls(metrics));
+    }
+
+    @Test
+    public void endOfStreamDoesNotReuseOldSample() throws InterruptedException {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        PipeMetrics metrics = PipeMetrics.attach(pipe, 1);
+
+        //stamp every publish time slot then let the stamps age
+        int count = 0;
+        while (Pipe.hasRoomForWrite(pipe)) {
+            write(pipe, "abc");
+            count++;
+        }
+        int i = count;
+        while (--i>=0) {
+            read(pipe);
+        }
+        Thread.sleep(100);
+        PipeMetrics.resetLatency(metrics);
+
+        Pipe.publishEOF(pipe);
+        assertTrue(Pipe.hasContentToRead(pipe));
+        assertEquals(-1, Pipe.takeMsgIdx(pipe));
+        Pipe.confirmLowLevelRead(pipe, Pipe.EOF_SIZE);
+        Pipe.releaseReadLock(pipe);
+
+        assertEquals(count+1, PipeMetrics.fragmentsPublished(metrics));
+        assertEquals(count+1, PipeMetrics.fragmentsReleased(metrics));
+        Histogram latency = PipeMetrics.latency(metrics, new Histogram(3));
+        assertEquals(1, latency.getTotalCount());
+        assertTrue(latency.getMaxValue() < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void multiProducerCommitsAreCounted() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        PipeMetrics metrics = PipeMetrics.attach(pipe, 2);
+        PipeMultiProducer<RawDataSchema> mp = new PipeMultiProducer<RawDataSchema>(pipe);
+
+        int count = 0;
+        long pos;
+        while ((pos = PipeMultiProducer.tryClaim(mp, RawDataSchema.MSG_CHUNKEDSTREAM_1))>=0) {
+            PipeMultiProducer.writeBytes(mp, pos, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, new byte[]{1,2,3}, 0, 3);
+            PipeMultiProducer.commit(mp, pos);
+            count++;
+        }
+        assertEquals(count, PipeMetrics.fragmentsPublished(metrics));
+
+        int i = count;
+        while (--i>=0) {
+            read(pipe);
+        }
+        assertEquals(count, PipeMetrics.fragmentsReleased(metrics));
+        //the consumer releases the whole blob region of each fragment so that is what is published
+        assertEquals(PipeMetrics.bytesReleased(metrics), PipeMetrics.bytesPublished(metrics));
+        assertEquals(count/2, PipeMetrics.latency(metrics, new Histogram(3)).getTotalCount());
+    }
+
+    private static void write(Pipe<RawDataSchema> pipe, String text) {
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addASCII(text, pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static void read(Pipe<RawDataSchema> pipe) {
+        assertTrue(Pipe.hasContentToRead(pipe));
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        int meta = Pipe.takeRingByteMetaData(pipe);
+        int len = Pipe.takeRingByteLen(pipe);
+        Pipe.bytePosition(meta, pipe, len);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PipeMultiProducerTest {
+
+    @Test
+    public void outOfOrderCommitsPublishInOrder() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 6, 64));
+        pipe.initBuffers();
+        PipeMultiProducer<RawDataSchema> mp = new PipeMultiProducer<RawDataSchema>(pipe);
+
+        long first = PipeMultiProducer.tryClaim(mp, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        long second = PipeMultiProducer.tryClaim(mp, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        assertTrue(second>first);
+
+        writeText(mp, second, "second");
+        PipeMultiProducer.commit(mp, second);
+        //the second fragment is complete but must wait for the first
+        assertFalse(Pipe.hasContentToRead(pipe));
+
+        writeText(mp, first, "first");
+        PipeMultiProducer.commit(mp, first);
+        assertEquals("first", readText(pipe));
+        assertEquals("second", readText(pipe));
+        assertFalse(Pipe.hasContentToRead(pipe));
+    }
+
+    @Test
+    public void claimFailsWhenFull() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        PipeMultiProducer<RawDataSchema> mp = new PipeMultiProducer<RawDataSchema>(pipe);
+
+        int count = 0;
+        long pos;
+        while ((pos = PipeMultiProducer.tryClaim(mp, RawDataSchema.MSG_CHUNKEDSTREAM_1))>=0) {
+            writeText(mp, pos, "v"+count++);
+            PipeMultiProducer.commit(mp, pos);
+        }
+        assertEquals(pipe.sizeOfSlabRing/Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1), count);
+
+        assertEquals("v0", readText(pipe));
+        assertTrue(PipeMultiProducer.tryClaim(mp, RawDataSchema.MSG_CHUNKEDSTREAM_1)>=0);
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        final Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 64));
+        pipe.initBuffers();
+        final PipeMultiProducer<RawDataSchema> mp = new PipeMultiProducer<RawDataSchema>(pipe);
+
+        final int producers = 4;
+        final int perProducer = 20000;
+        Thread[] threads = new Thread[producers];
+        int t = producers;
+        while (--t>=0) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int i = 0;
+                    while (i<perProducer) {
+                        long pos = PipeMultiProducer.tryClaim(mp, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+                        if (pos>=0) {
+                            writeText(mp, pos, id+":"+i++);
+                            PipeMultiProducer.commit(mp, pos);
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        int[] expected = new int[producers];
+        int total = producers*perProducer;
+        while (total>0) {
+            if (Pipe.hasContentToRead(pipe)) {
+                String text = readText(pipe);
+                int split = text.indexOf(':');
+                int id = Integer.parseInt(text.substring(0, split));
+                //each producer publishes its own values in order
+                assertEquals(expected[id]++, Integer.parseInt(text.substring(split+1)));
+                total--;
+            } else {
+                Thread.yield();
+            }
+        }
+        t = producers;
+        while (--t>=0) {
+            threads[t].join();
+            assertEquals(perProducer, expected[t]);
+        }
+    }
+
+    private static void writeText(PipeMultiProducer<RawDataSchema> mp, long pos, String text) {
+        byte[] bytes = text.getBytes();
+        PipeMultiProducer.writeBytes(mp, pos, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, bytes, 0, bytes.length);
+    }
+
+    private static String readText(Pipe<RawDataSchema> pipe) {
+        assertTrue(Pipe.hasContentToRead(pipe));
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, msgIdx);
+        int meta = Pipe.takeRingByteMetaData(pipe);
+        int len = Pipe.takeRingByteLen(pipe);
+        String result = Pipe.readASCII(pipe, new StringBuilder(), meta, len).toString();
+        Pipe.bytePosition(meta, pipe, len);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return result;
+    }
+
+}
@@ -79,6 +79,40 @@ public class PipeSingleTemplateUTF8Test {
         }    
     }
 
+    @Test
+    public void mostlyASCIIWrapsBlobRing() throws Exception {
+        //small blob so the ASCII runs are cut by the end of the ring in many different places
+        Pipe<RawDataSchema> ring = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 256));
+        ring.initBuffers();
+        StringBuilder target = new StringBuilder();
+        char[] target2 = new char[64];
+
+        int i = 300;
+        while (--i>=0) {
+            String text = ("{\"px\":"+i+",\"sym\":\"\u00e9\u20ac"+(i%7)+"\"}").substring(0, 5+(i%17));
+
+            byte[] expectedBytes = text.getBytes("UTF-8");
+            byte[] encoded = new byte[expectedBytes.length];
+            assertEquals(expectedBytes.length, Pipe.convertToUTF8(text, 0, text.length(), encoded, 0, Integer.MAX_VALUE));
+            assertTrue(Arrays.equals(expectedBytes, encoded));
+
+            assertTrue(PipeWriter.tryWriteFragment(ring, FRAG_LOC));
+            if (0==(i&1)) {
+                PipeWriter.writeUTF8(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, text);
+            } else {
+                PipeWriter.writeUTF8(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, text.toCharArray());
+            }
+            PipeWriter.publishWrites(ring);
+
+            assertTrue(PipeReader.tryReadFragment(ring));
+            target.setLength(0);
+            assertEquals(text, PipeReader.readUTF8(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, target).toString());
+            int len = PipeReader.readUTF8(ring, RawDataSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2, target2, 0);
+            assertEquals(text, new String(target2, 0, len));
+            PipeReader.releaseReadLock(ring);
+        }
+    }
+
 	private void populateRingBufferWithUTF8(Pipe pipe, int blockSize, int testSize) {
 		int j = testSize;
         while (true) {
@@ -0,0 +1,67 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PipeSpliceTest {
+
+    @Test
+    public void routeByHeaderWithoutCopy() {
+        Pipe<RawDataSchema> input = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 64));
+        input.initBuffers();
+        PipeSplice<RawDataSchema> splice = new PipeSplice<RawDataSchema>(input, 2);
+        Pipe<RawDataSchema> evens = PipeSplice.output(splice, 0);
+        Pipe<RawDataSchema> odds = PipeSplice.output(splice, 1);
+
+        int written = 0;
+        int nextEven = 0;
+        int nextOdd = 1;
+        int rounds = 20; //enough to wrap the rings several times
+        while (--rounds>=0) {
+            while (Pipe.hasRoomForWrite(input)) {
+                write(input, written++);
+            }
+            //outputs hold the space until they read so nothing more can be written
+            while (Pipe.hasContentToRead(input)) {
+                //the router only looks at the length field of the header
+                int len = Pipe.peekInt(input, 2);
+                PipeSplice.route(splice, 1 << (len&1));
+            }
+            assertFalse(Pipe.hasRoomForWrite(input));
+
+            while (PipeSplice.hasContentToRead(splice, 0)) {
+                assertEquals(nextEven, read(evens));
+                nextEven += 2;
+            }
+            while (PipeSplice.hasContentToRead(splice, 1)) {
+                assertEquals(nextOdd, read(odds));
+                nextOdd += 2;
+            }
+            assertTrue(Pipe.hasRoomForWrite(input));
+        }
+        assertEquals(written, (nextEven + nextOdd - 1)/2);
+    }
+
+    private static void write(Pipe<RawDataSchema> pipe, int value) {
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        //the length of the text is odd for odd values so routing can be done on the length
+        Pipe.addASCII(String.format("%06d", value)+((value&1)==0 ? "" : "_"), pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static int read(Pipe<RawDataSchema> pipe) {
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        int meta = Pipe.takeRingByteMetaData(pipe);
+        int len = Pipe.takeRingByteLen(pipe);
+        String text = Pipe.readASCII(pipe, new StringBuilder(), meta, len).toString();
+        Pipe.bytePosition(meta, pipe, len);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return Integer.parseInt(text.substring(0, 6));
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ResizablePipeTest {
+
+    private static final PipeConfig<RawDataSchema> SMALL = new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 16);
+    private static final int SIZE = RawDataSchema.FROM.fragDataSize[RawDataSchema.MSG_CHUNKEDSTREAM_1];
+
+    @Test
+    public void growKeepsOrderAcrossPipes() {
+        ResizablePipe<RawDataSchema> rp = new ResizablePipe<RawDataSchema>(SMALL, (byte)(SMALL.slabBits+2));
+        Pipe<RawDataSchema> first = ResizablePipe.output(rp);
+
+        int next = 0;
+        int expected = 0;
+        //a slow consumer which reads one fragment for every three written
+        while (ResizablePipe.hasRoomForWrite(rp, SIZE)) {
+            writeText(ResizablePipe.output(rp), "grow"+next++);
+            if (0==next%3) {
+                assertTrue(ResizablePipe.hasContentToRead(rp));
+                assertEquals("grow"+expected++, readText(ResizablePipe.input(rp)));
+            }
+        }
+        //growth stops at the max bits
+        assertEquals(SMALL.slabBits+2, ResizablePipe.output(rp).bitsOfSlabRing);
+        //the first pipe was never changed
+        assertEquals(SMALL.slabBits, first.bitsOfSlabRing);
+
+        while (ResizablePipe.hasContentToRead(rp)) {
+            assertEquals("grow"+expected++, readText(ResizablePipe.input(rp)));
+        }
+        assertEquals(next, expected);
+        assertTrue(ResizablePipe.output(rp) == ResizablePipe.input(rp));
+        assertEquals(0, Pipe.contentRemaining(first));
+    }
+
+    @Test
+    public void outputStreamStageKeepsWorkingAcrossGrow() {
+        ResizablePipe<RawDataSchema> rp = new ResizablePipe<RawDataSchema>(SMALL, (byte)(SMALL.slabBits+6));
+        WriterStage writer = new WriterStage(rp);
+        ReaderStage reader = new ReaderStage(rp);
+
+        int next = 0;
+        int expected = 0;
+        while (next<200) {
+            assertTrue(writer.write("stream"+next++));
+            if (0==next%4) {
+                assertEquals("stream"+expected++, reader.read());
+            }
+        }
+        int grown = ResizablePipe.output(rp).bitsOfSlabRing-SMALL.slabBits;
+        assertTrue(grown>1);
+        assertEquals(grown, writer.pipeChanges);
+        while (expected<next) {
+            assertEquals("stream"+expected++, reader.read());
+        }
+        assertEquals(grown, reader.pipeChanges);
+        assertFalse(ResizablePipe.hasContentToRead(rp));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void staleViewIsDetected() {
+        ResizablePipe<RawDataSchema> rp = new ResizablePipe<RawDataSchema>(SMALL, (byte)(SMALL.slabBits+1));
+        Pipe<RawDataSchema> first = ResizablePipe.output(rp);
+        DataOutputBlobWriter<RawDataSchema> held = Pipe.outputStream(first);
+
+        while (ResizablePipe.hasRoomForWrite(rp, SIZE) && first==ResizablePipe.output(rp)) {
+            writeText(first, "fill");
+        }
+        //the consumer reads to the end of the replaced pipe and moves on
+        while (ResizablePipe.hasContentToRead(rp)) {
+            assertEquals("fill", readText(ResizablePipe.input(rp)));
+        }
+        //still writing with the view of the replaced pipe
+        Pipe.addMsgIdx(first, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        DataOutputBlobWriter.openField(held);
+        held.writeUTF("stale");
+        DataOutputBlobWriter.closeLowLevelField(held);
+        Pipe.confirmLowLevelWrite(first, SIZE);
+        Pipe.publishWrites(first);
+
+        ResizablePipe.hasRoomForWrite(rp, SIZE);
+    }
+
+    @Test
+    public void producerEOFIsReturned() {
+        ResizablePipe<RawDataSchema> rp = new ResizablePipe<RawDataSchema>(SMALL, (byte)(SMALL.slabBits+1));
+        int next = 0;
+        while (ResizablePipe.hasRoomForWrite(rp, SIZE) && SMALL.slabBits==ResizablePipe.output(rp).bitsOfSlabRing) {
+            writeText(ResizablePipe.output(rp), "eof"+next++);
+        }
+        assertTrue(ResizablePipe.hasRoomForWrite(rp, Pipe.EOF_SIZE));
+        Pipe.publishEOF(ResizablePipe.output(rp));
+
+        int expected = 0;
+        while (expected<next) {
+            assertTrue(ResizablePipe.hasContentToRead(rp));
+            assertEquals("eof"+expected++, readText(ResizablePipe.input(rp)));
+        }
+        assertTrue(ResizablePipe.hasContentToRead(rp));
+        assertEquals(-1, Pipe.peekInt(ResizablePipe.input(rp)));
+    }
+
+    @Test
+    public void growWhileRunning() throws InterruptedException {
+        final ResizablePipe<RawDataSchema> rp = new ResizablePipe<RawDataSchema>(SMALL, (byte)(SMALL.slabBits+4));
+        final int total = 100000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int i = 0;
+                while (i<total) {
+                    if (ResizablePipe.hasRoomForWrite(rp, SIZE)) {
+                        writeText(ResizablePipe.output(rp), Integer.toString(i++));
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        final int[] received = new int[1];
+        final boolean[] ordered = new boolean[]{true};
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (received[0]<total) {
+                    if (ResizablePipe.hasContentToRead(rp)) {
+                        ordered[0] &= Integer.toString(received[0]++).equals(readText(ResizablePipe.input(rp)));
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join(20000);
+        consumer.join(20000);
+        assertFalse(consumer.isAlive());
+        assertEquals(total, received[0]);
+        assertTrue(ordered[0]);
+    }
+
+    /**
+     * Producer stage which keeps the output stream between fragments and only takes a new one when the pipe changes.
+     */
+    private static class WriterStage {
+        private final ResizablePipe<RawDataSchema> rp;
+        private Pipe<RawDataSchema> pipe;
+        private DataOutputBlobWriter<RawDataSchema> out;
+        private int pipeChanges;
+
+        WriterStage(ResizablePipe<RawDataSchema> rp) {
+            this.rp = rp;
+            this.pipe = ResizablePipe.output(rp);
+            this.out = Pipe.outputStream(pipe);
+        }
+
+        boolean write(String text) {
+            if (!ResizablePipe.hasRoomForWrite(rp, SIZE)) {
+                return false;
+            }
+            if (pipe!=ResizablePipe.output(rp)) {
+                pipe = ResizablePipe.output(rp);
+                out = Pipe.outputStream(pipe);
+                pipeChanges++;
+            }
+            Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            DataOutputBlobWriter.openField(out);
+            out.writeUTF(text);
+            DataOutputBlobWriter.closeLowLevelField(out);
+            Pipe.confirmLowLevelWrite(pipe, SIZE);
+            Pipe.publishWrites(pipe);
+            return true;
+        }
+    }
+
+    private static class ReaderStage {
+        private final ResizablePipe<RawDataSchema> rp;
+        private Pipe<RawDataSchema> pipe;
+        private DataInputBlobReader<RawDataSchema> in;
+        private int pipeChanges;
+
+        ReaderStage(ResizablePipe<RawDataSchema> rp) {
+            this.rp = rp;
+            this.pipe = ResizablePipe.input(rp);
+            this.in = Pipe.inputStream(pipe);
+        }
+
+        String read() {
+            assertTrue(ResizablePipe.hasContentToRead(rp));
+            if (pipe!=ResizablePipe.input(rp)) {
+                pipe = ResizablePipe.input(rp);
+                in = Pipe.inputStream(pipe);
+                pipeChanges++;
+            }
+            int msgIdx = Pipe.takeMsgIdx(pipe);
+            DataInputBlobReader.openLowLevelAPIField(in);
+            String result = in.readUTF();
+            Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+            Pipe.releaseReadLock(pipe);
+            return result;
+        }
+    }
+
+    private static void writeText(Pipe<RawDataSchema> pipe, String text) {
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addASCII(text, pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+    }
+
+    private static String readText(Pipe<RawDataSchema> pipe) {
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        int meta = Pipe.takeRingByteMetaData(pipe);
+        int len = Pipe.takeRingByteLen(pipe);
+        String result = Pipe.readASCII(pipe, new StringBuilder(), meta, len).toString();
+        Pipe.bytePosition(meta, pipe, len);
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return result;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.ociweb.pronghorn.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class WaitStrategyTest {
+
+    @Test
+    public void blockingConsumerIsWokenByPublish() throws InterruptedException {
+        //the park limit is far longer than the test so only the unpark from the producer can end the wait in time
+        roundTrip(WaitStrategy.blocking(TimeUnit.SECONDS.toNanos(30)));
+    }
+
+    @Test
+    public void spinThenParkConsumer() throws InterruptedException {
+        roundTrip(WaitStrategy.spinThenPark(100, 10, TimeUnit.MICROSECONDS.toNanos(50)));
+    }
+
+    @Test
+    public void spinThenYieldConsumer() throws InterruptedException {
+        roundTrip(WaitStrategy.spinThenYield(100));
+    }
+
+    @Test
+    public void blockingBroadcastConsumersAreWokenByPublish() throws InterruptedException {
+        WaitStrategy strategy = WaitStrategy.blocking(TimeUnit.SECONDS.toNanos(30));
+        final Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64).waitStrategy(strategy));
+        pipe.initBuffers();
+        final Pipe<RawDataSchema> second = Pipe.broadcastConsumer(pipe);
+        second.initBuffers();
+        assertTrue(strategy == second.config().waitStrategy());
+
+        final int count = 1000;
+        long[] sum = new long[2];
+        Thread[] consumers = new Thread[]{consumer(pipe, count, sum, 0), consumer(second, count, sum, 1)};
+        long start = System.nanoTime();
+        produce(pipe, count);
+        for (Thread t : consumers) {
+            t.join(TimeUnit.SECONDS.toMillis(20));
+            assertTrue("consumer was not woken", !t.isAlive());
+        }
+        assertTrue(System.nanoTime()-start < TimeUnit.SECONDS.toNanos(20));
+        assertEquals(0, sum[0]+sum[1]);
+    }
+
+    private static void roundTrip(WaitStrategy strategy) throws InterruptedException {
+        PipeConfig<RawDataSchema> config = new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64).waitStrategy(strategy);
+        assertTrue(strategy == config.waitStrategy());
+
+        final Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(config);
+        pipe.initBuffers();
+
+        final int count = 1000;
+        long[] sum = new long[1];
+        Thread consumer = consumer(pipe, count, sum, 0);
+
+        long start = System.nanoTime();
+        produce(pipe, count);
+        consumer.join(TimeUnit.SECONDS.toMillis(20));
+        assertTrue("consumer was not woken", !consumer.isAlive());
+        assertTrue(System.nanoTime()-start < TimeUnit.SECONDS.toNanos(20));
+        assertEquals(0, sum[0]);
+    }
+
+    private static Thread consumer(final Pipe<RawDataSchema> pipe, final int count, final long[] sum, final int idx) {
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int i = count;
+                while (--i>=0) {
+                    Pipe.spinBlockForContent(pipe);
+                    int msgIdx = Pipe.takeMsgIdx(pipe);
+                    sum[idx] += Pipe.takeValue(pipe);
+                    Pipe.takeValue(pipe); //length
+                    Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+                    Pipe.releaseReadLock(pipe);
+                }
+            }
+        });
+        consumer.start();
+        return consumer;
+    }
+
+    private static void produce(Pipe<RawDataSchema> pipe, int count) {
+        int i = count;
+        while (--i>=0) {
+            //the producer blocks for room with the same strategy so both sides are exercised
+            Pipe.spinBlockForRoom(pipe, Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1));
+            int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            Pipe.addBytePosAndLen(pipe, Pipe.getBlobWorkingHeadPosition(pipe), 0);
+            Pipe.confirmLowLevelWrite(pipe, size);
+            Pipe.publishWrites(pipe);
+        }
+    }
+
+}
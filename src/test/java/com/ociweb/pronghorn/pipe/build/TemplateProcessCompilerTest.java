@@ -0,0 +1,128 @@
+package com.ociweb.pronghorn.pipe.build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import javax.tools.ToolProvider;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+import com.ociweb.pronghorn.pipe.schema.loader.TemplateHandler;
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessCompiler;
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessGenerator;
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessGeneratorLowLevelWriter;
+
+public class TemplateProcessCompilerTest {
+
+    private static final int SAMPLE_IDX = 4;
+
+    @Test
+    public void compiledWriterAndReaderForLoadedSchema() throws ParserConfigurationException, SAXException, IOException {
+
+        FieldReferenceOffsetManager from = TemplateHandler.loadFrom("/template/smallExample.xml");
+        MessageSchemaDynamic schema = new MessageSchemaDynamic(from);
+        Pipe<MessageSchemaDynamic> pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(schema, 10, 64));
+        pipe.initBuffers();
+
+        //writer which sends three sample messages and then has nothing more to do
+        StringBuilder source = new StringBuilder();
+        TemplateProcessCompiler.CompiledWriterGenerator generator = new TemplateProcessCompiler.CompiledWriterGenerator(schema, source) {
+            @Override
+            protected void additionalMembers(Appendable target) throws IOException {
+                target.append("private int count;\n");
+            }
+            @Override
+            protected void bodyOfNextMessageIdx(Appendable target) throws IOException {
+                target.append("    return count++<3 ? ").append(Integer.toString(SAMPLE_IDX)).append(" : DO_NOTHING;\n");
+            }
+        };
+        Runnable writer = TemplateProcessCompiler.build(generator, source, pipe);
+        writer.run();
+        assertEquals(3*Pipe.sizeOf(pipe, SAMPLE_IDX), Pipe.contentRemaining(pipe));
+
+        Runnable reader = TemplateProcessCompiler.buildLowLevelReader(pipe);
+        assertTrue(reader.getClass().getName().startsWith(TemplateProcessCompiler.PACKAGE_NAME));
+        int i = 3;
+        while (--i>=0) {
+            reader.run();
+        }
+        assertEquals(0, Pipe.contentRemaining(pipe));
+        assertFalse(Pipe.hasContentToRead(pipe));
+    }
+
+    @Test
+    public void compiledReaderForStaticSchema() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+
+        int size = Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        Pipe.addASCII("hello", pipe);
+        Pipe.confirmLowLevelWrite(pipe, size);
+        Pipe.publishWrites(pipe);
+
+        Runnable reader = TemplateProcessCompiler.buildLowLevelReader(pipe);
+        reader.run();
+        assertEquals(0, Pipe.contentRemaining(pipe));
+
+        //the default writer has nothing to send
+        Runnable writer = TemplateProcessCompiler.buildLowLevelWriter(pipe);
+        writer.run();
+        assertEquals(0, Pipe.contentRemaining(pipe));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void generatorWithoutClassNameIsRejected() {
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        StringBuilder target = new StringBuilder();
+        //subclasses written before the name accessors existed inherit the null defaults
+        TemplateProcessGenerator generator = new TemplateProcessGeneratorLowLevelWriter(RawDataSchema.instance, target, TemplateProcessCompiler.PACKAGE_NAME) {
+            @Override
+            public String getClassName() {
+                return null;
+            }
+        };
+        TemplateProcessCompiler.build(generator, target, pipe);
+    }
+
+    @Test
+    public void compilesAgainstClassesOnlyTheParentCanSee() throws Exception {
+        //a class compiled into its own directory which is not on the class path
+        File dir = Files.createTempDirectory("parentOnly").toFile();
+        File source = new File(dir, "ParentOnly.java");
+        FileWriter writer = new FileWriter(source);
+        writer.write("package parentonly; public class ParentOnly { public static int value() { return 42; } }");
+        writer.close();
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", dir.getPath(), source.getPath()));
+
+        URLClassLoader parent = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            Class<?> clazz = TemplateProcessCompiler.compile(TemplateProcessCompiler.PACKAGE_NAME, "UsesParentOnly",
+                    "package "+TemplateProcessCompiler.PACKAGE_NAME+"; public class UsesParentOnly { public static int value() { return parentonly.ParentOnly.value(); } }", parent);
+            assertEquals(42, clazz.getMethod("value").invoke(null));
+        } finally {
+            parent.close();
+        }
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void reportsCompileErrors() throws ClassNotFoundException {
+        TemplateProcessCompiler.compile(TemplateProcessCompiler.PACKAGE_NAME, "Broken", "package "+TemplateProcessCompiler.PACKAGE_NAME+"; public class Broken { int x = ; }");
+    }
+
+}
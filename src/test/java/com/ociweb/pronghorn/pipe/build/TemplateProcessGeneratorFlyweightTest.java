@@ -0,0 +1,171 @@
+package com.ociweb.pronghorn.pipe.build;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.pipe.PipeWriter;
+import com.ociweb.pronghorn.pipe.schema.loader.TemplateHandler;
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessCompiler;
+import com.ociweb.pronghorn.pipe.util.build.TemplateProcessGeneratorFlyweight;
+
+public class TemplateProcessGeneratorFlyweightTest {
+
+    private static final String CLASS_NAME = "SmallExampleFlyweights";
+
+    @Test
+    public void flyweightsMatchHighLevelAPI() throws Exception {
+
+        FieldReferenceOffsetManager from = TemplateHandler.loadFrom("/template/smallExample.xml");
+        MessageSchemaDynamic schema = new MessageSchemaDynamic(from);
+        Pipe<MessageSchemaDynamic> pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(schema, 10, 64));
+        pipe.initBuffers();
+
+        StringBuilder target = new StringBuilder();
+        TemplateProcessGeneratorFlyweight generator = new TemplateProcessGeneratorFlyweight(schema, target, CLASS_NAME, TemplateProcessCompiler.PACKAGE_NAME);
+        generator.processSchema();
+        Class<?> flyweights = TemplateProcessCompiler.compile(generator.getPackageName(), CLASS_NAME, target);
+        flyweights.getMethod("validate", Pipe.class).invoke(null, pipe);
+
+        Class<?> sampleClass = flyweights.getClassLoader().loadClass(flyweights.getName()+"$Sample");
+        Class<?> boxesClass = flyweights.getClassLoader().loadClass(flyweights.getName()+"$Boxes");
+        int sampleIdx = sampleClass.getField("FRAGMENT_IDX").getInt(null);
+        int boxesIdx = boxesClass.getField("FRAGMENT_IDX").getInt(null);
+        assertEquals(FieldReferenceOffsetManager.lookupTemplateLocator("Sample", from), sampleIdx);
+        assertEquals(FieldReferenceOffsetManager.lookupTemplateLocator("Boxes", from), boxesIdx);
+
+        Object sample = sampleClass.newInstance();
+        Object boxes = boxesClass.newInstance();
+
+        //write with the flyweights
+        assertTrue(PipeWriter.tryWriteFragment(pipe, sampleIdx));
+        Object w = sampleClass.getMethod("wrapForWrite", Pipe.class).invoke(sample, pipe);
+        sampleClass.getMethod("setYear", int.class).invoke(w, 2016);
+        sampleClass.getMethod("setMonth", int.class).invoke(w, 7);
+        sampleClass.getMethod("setDate", int.class).invoke(w, 4);
+        sampleClass.getMethod("setWeight", int.class, long.class).invoke(w, 2, 12345678901L);
+        PipeWriter.publishWrites(pipe);
+
+        assertTrue(PipeWriter.tryWriteFragment(pipe, boxesIdx));
+        w = boxesClass.getMethod("wrapForWrite", Pipe.class).invoke(boxes, pipe);
+        boxesClass.getMethod("setCount", int.class).invoke(w, 42);
+        boxesClass.getMethod("setOwner", CharSequence.class).invoke(w, "owner");
+        PipeWriter.publishWrites(pipe);
+
+        //read with the high level API using LOCs
+        assertTrue(PipeReader.tryReadFragment(pipe));
+        assertEquals(sampleIdx, PipeReader.getMsgIdx(pipe));
+        assertEquals(2016, PipeReader.readInt(pipe, FieldReferenceOffsetManager.lookupFieldLocator("Year", sampleIdx, from)));
+        assertEquals(7, PipeReader.readInt(pipe, FieldReferenceOffsetManager.lookupFieldLocator("Month", sampleIdx, from)));
+        int weightLoc = FieldReferenceOffsetManager.lookupFieldLocator("Weight", sampleIdx, from);
+        assertEquals(2, PipeReader.readDecimalExponent(pipe, weightLoc));
+        assertEquals(12345678901L, PipeReader.readDecimalMantissa(pipe, weightLoc));
+
+        //and the same values with the flyweight
+        Object r = sampleClass.getMethod("wrapForRead", Pipe.class).invoke(sample, pipe);
+        assertEquals(4, sampleClass.getMethod("getDate").invoke(r));
+        assertEquals(12345678901L, sampleClass.getMethod("getWeightMantissa").invoke(r));
+        PipeReader.releaseReadLock(pipe);
+
+        assertTrue(PipeReader.tryReadFragment(pipe));
+        assertEquals(boxesIdx, PipeReader.getMsgIdx(pipe));
+        assertEquals("owner", PipeReader.readASCII(pipe, FieldReferenceOffsetManager.lookupFieldLocator("Owner", boxesIdx, from), new StringBuilder()).toString());
+        r = boxesClass.getMethod("wrapForRead", Pipe.class).invoke(boxes, pipe);
+        assertEquals(42, boxesClass.getMethod("getCount").invoke(r));
+        assertEquals(5, boxesClass.getMethod("getOwnerLength").invoke(r));
+        Method getOwner = boxesClass.getMethod("getOwner", Appendable.class);
+        assertEquals("owner", getOwner.invoke(r, new StringBuilder()).toString());
+        PipeReader.releaseReadLock(pipe);
+
+        assertEquals(0, Pipe.contentRemaining(pipe));
+    }
+
+    @Test
+    public void flyweightsKeepUTF8AndNullVarLengthFields() throws Exception {
+
+        FieldReferenceOffsetManager from = TemplateHandler.loadFrom("/template/flyweightExample.xml");
+        MessageSchemaDynamic schema = new MessageSchemaDynamic(from);
+        Pipe<MessageSchemaDynamic> pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(schema, 10, 64));
+        pipe.initBuffers();
+
+        StringBuilder target = new StringBuilder();
+        TemplateProcessGeneratorFlyweight generator = new TemplateProcessGeneratorFlyweight(schema, target, "FlyweightExampleFlyweights", TemplateProcessCompiler.PACKAGE_NAME);
+        generator.processSchema();
+        Class<?> flyweights = TemplateProcessCompiler.compile(generator.getPackageName(), "FlyweightExampleFlyweights", target);
+
+        Class<?> parcelClass = flyweights.getClassLoader().loadClass(flyweights.getName()+"$Parcel");
+        int parcelIdx = parcelClass.getField("FRAGMENT_IDX").getInt(null);
+        Object parcel = parcelClass.newInstance();
+        Method setLabel = parcelClass.getMethod("setLabel", CharSequence.class);
+        Method setNote = parcelClass.getMethod("setNote", CharSequence.class);
+        Method setCode = parcelClass.getMethod("setCode", CharSequence.class);
+        Method setPayload = parcelClass.getMethod("setPayload", byte[].class, int.class, int.class);
+
+        String label = "caf\u00e9 \u20ac5";
+        byte[] payload = new byte[]{1, 2, 3, 4, 5};
+
+        //values first then the same fragment with every optional field null
+        assertTrue(PipeWriter.tryWriteFragment(pipe, parcelIdx));
+        Object w = parcelClass.getMethod("wrapForWrite", Pipe.class).invoke(parcel, pipe);
+        setLabel.invoke(w, label);
+        setNote.invoke(w, "\u00fcber");
+        setCode.invoke(w, "AB");
+        setPayload.invoke(w, payload, 1, 3);
+        PipeWriter.publishWrites(pipe);
+
+        assertTrue(PipeWriter.tryWriteFragment(pipe, parcelIdx));
+        w = parcelClass.getMethod("wrapForWrite", Pipe.class).invoke(parcel, pipe);
+        setLabel.invoke(w, "");
+        setNote.invoke(w, (Object)null);
+        setCode.invoke(w, (Object)null);
+        setPayload.invoke(w, null, 0, 0);
+        PipeWriter.publishWrites(pipe);
+
+        int labelLoc = FieldReferenceOffsetManager.lookupFieldLocator("Label", parcelIdx, from);
+        int noteLoc = FieldReferenceOffsetManager.lookupFieldLocator("Note", parcelIdx, from);
+        int codeLoc = FieldReferenceOffsetManager.lookupFieldLocator("Code", parcelIdx, from);
+        int payloadLoc = FieldReferenceOffsetManager.lookupFieldLocator("Payload", parcelIdx, from);
+
+        assertTrue(PipeReader.tryReadFragment(pipe));
+        assertEquals(label, PipeReader.readUTF8(pipe, labelLoc, new StringBuilder()).toString());
+        assertEquals("\u00fcber", PipeReader.readUTF8(pipe, noteLoc, new StringBuilder()).toString());
+        assertEquals(3, PipeReader.readBytesLength(pipe, payloadLoc));
+
+        Object r = parcelClass.getMethod("wrapForRead", Pipe.class).invoke(parcel, pipe);
+        assertEquals(label.getBytes("UTF-8").length, parcelClass.getMethod("getLabelLength").invoke(r));
+        assertEquals(label, parcelClass.getMethod("getLabel", Appendable.class).invoke(r, new StringBuilder()).toString());
+        assertEquals("\u00fcber", parcelClass.getMethod("getNote", Appendable.class).invoke(r, new StringBuilder()).toString());
+        assertEquals("AB", parcelClass.getMethod("getCode", Appendable.class).invoke(r, new StringBuilder()).toString());
+        byte[] copy = new byte[3];
+        assertEquals(3, parcelClass.getMethod("getPayload", byte[].class, int.class).invoke(r, copy, 0));
+        assertArrayEquals(new byte[]{2, 3, 4}, copy);
+        PipeReader.releaseReadLock(pipe);
+
+        assertTrue(PipeReader.tryReadFragment(pipe));
+        assertEquals(0, PipeReader.readBytesLength(pipe, labelLoc));
+        assertEquals(-1, PipeReader.readBytesLength(pipe, noteLoc));
+        assertEquals(-1, PipeReader.readBytesLength(pipe, codeLoc));
+        assertEquals(-1, PipeReader.readBytesLength(pipe, payloadLoc));
+
+        r = parcelClass.getMethod("wrapForRead", Pipe.class).invoke(parcel, pipe);
+        assertEquals("", parcelClass.getMethod("getLabel", Appendable.class).invoke(r, new StringBuilder()).toString());
+        assertEquals(-1, parcelClass.getMethod("getNoteLength").invoke(r));
+        assertNull(parcelClass.getMethod("getNote", Appendable.class).invoke(r, new StringBuilder()));
+        assertNull(parcelClass.getMethod("getCode", Appendable.class).invoke(r, new StringBuilder()));
+        assertEquals(-1, parcelClass.getMethod("getPayload", byte[].class, int.class).invoke(r, copy, 0));
+        PipeReader.releaseReadLock(pipe);
+
+        assertEquals(0, Pipe.contentRemaining(pipe));
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.ociweb.pronghorn.pipe.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.MessageSchemaDynamic;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.schema.loader.TemplateHandler;
+
+public class EventClassGeneratorTest {
+
+    @ProngTemplateMessage(templateId=2)
+    public interface BoxesWriter {
+        @ProngTemplateField(fieldId=34)
+        void writeCount(int count);
+        @ProngTemplateField(fieldId=35)
+        BoxesWriter writeOwner(CharSequence owner);
+    }
+
+    @ProngTemplateMessage(templateId=2)
+    public interface BoxesReader {
+        @ProngTemplateField(fieldId=34)
+        int readCount();
+        @ProngTemplateField(fieldId=35)
+        Appendable readOwner(Appendable target);
+    }
+
+    @ProngTemplateMessage(templateId=1)
+    public interface SampleWriter {
+        @ProngTemplateField(fieldId=101)
+        void writeYear(Integer year);
+        @ProngTemplateField(fieldId=200, decimalPlaces=3)
+        void writeWeight(double weight);
+    }
+
+    @ProngTemplateMessage(templateId=1)
+    public interface SampleReader {
+        @ProngTemplateField(fieldId=101)
+        long readYear();
+        @ProngTemplateField(fieldId=200)
+        double readWeight();
+    }
+
+    @ProngTemplateMessage(templateId=2)
+    interface HiddenBoxesWriter {
+        @ProngTemplateField(fieldId=34)
+        void writeCount(int count);
+        @ProngTemplateField(fieldId=35)
+        void writeOwner(CharSequence owner);
+    }
+
+    private static Pipe<MessageSchemaDynamic> buildPipe() throws Exception {
+        FieldReferenceOffsetManager from = TemplateHandler.loadFrom("/template/smallExample.xml");
+        Pipe<MessageSchemaDynamic> pipe = new Pipe<MessageSchemaDynamic>(new PipeConfig<MessageSchemaDynamic>(new MessageSchemaDynamic(from), 10, 64));
+        pipe.initBuffers();
+        return pipe;
+    }
+
+    @Test
+    public void generatedClassesRoundTrip() throws Exception {
+        Pipe<MessageSchemaDynamic> pipe = buildPipe();
+        EventConsumer consumer = new EventConsumer(pipe);
+        EventProducer producer = new EventProducer(pipe);
+
+        BoxesWriter boxes = EventConsumer.create(consumer, BoxesWriter.class);
+        assertFalse(Proxy.isProxyClass(boxes.getClass()));
+        boxes.writeCount(42);
+        assertSame(boxes, boxes.writeOwner("owner"));
+        EventConsumer.publish(consumer, boxes);
+
+        //second message reuses the cached instance
+        BoxesWriter again = EventConsumer.create(consumer, BoxesWriter.class);
+        assertSame(boxes, again);
+        again.writeCount(7);
+        again.writeOwner("other");
+        EventConsumer.publish(consumer, again);
+
+        SampleWriter sample = EventConsumer.create(consumer, SampleWriter.class);
+        sample.writeYear(2016);
+        sample.writeWeight(12.125);
+        EventConsumer.publish(consumer, sample);
+
+        BoxesReader reader = EventProducer.take(producer, BoxesReader.class);
+        assertFalse(Proxy.isProxyClass(reader.getClass()));
+        assertEquals(42, reader.readCount());
+        assertEquals("owner", reader.readOwner(new StringBuilder()).toString());
+        EventProducer.dispose(producer, reader);
+
+        reader = EventProducer.take(producer, BoxesReader.class);
+        assertEquals(7, reader.readCount());
+        assertEquals("other", reader.readOwner(new StringBuilder()).toString());
+        EventProducer.dispose(producer, reader);
+
+        SampleReader sampleReader = EventProducer.take(producer, SampleReader.class);
+        assertEquals(2016L, sampleReader.readYear());
+        assertEquals(12.125, sampleReader.readWeight(), 0.0001);
+        EventProducer.dispose(producer, sampleReader);
+
+        assertNull(EventProducer.take(producer, SampleReader.class));
+    }
+
+    @Test
+    public void cacheKeepsClassesWithoutInstances() throws Exception {
+        Pipe<MessageSchemaDynamic> pipe = buildPipe();
+        int msgIdx = FieldReferenceOffsetManager.lookupTemplateLocator(2, Pipe.from(pipe));
+
+        Class<?> generated = EventClassGenerator.buildClass(pipe, msgIdx, BoxesWriter.class, true);
+        assertSame(generated, EventClassGenerator.buildClass(pipe, msgIdx, BoxesWriter.class, true));
+
+        //with no instance alive the class is still cached so the next build does not compile again
+        WeakReference<Class<?>> ref = new WeakReference<Class<?>>(generated);
+        generated = null;
+        int i = 5;
+        while (--i>=0) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNotNull(ref.get());
+        assertSame(ref.get(), EventClassGenerator.buildClass(pipe, msgIdx, BoxesWriter.class, true));
+    }
+
+    @Test
+    public void nonPublicInterfaceUsesProxy() throws Exception {
+        Pipe<MessageSchemaDynamic> pipe = buildPipe();
+        EventConsumer consumer = new EventConsumer(pipe);
+
+        assertFalse(EventClassGenerator.isSupported(HiddenBoxesWriter.class));
+        HiddenBoxesWriter boxes = EventConsumer.create(consumer, HiddenBoxesWriter.class);
+        assertNotNull(boxes);
+        assertTrue(Proxy.isProxyClass(boxes.getClass()));
+        boxes.writeCount(1);
+        boxes.writeOwner("hidden");
+        EventConsumer.publish(consumer, boxes);
+
+        BoxesReader reader = EventProducer.take(new EventProducer(pipe), BoxesReader.class);
+        assertEquals(1, reader.readCount());
+        assertEquals("hidden", reader.readOwner(new StringBuilder()).toString());
+    }
+
+}
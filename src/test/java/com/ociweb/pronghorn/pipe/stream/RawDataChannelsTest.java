@@ -0,0 +1,268 @@
+package com.ociweb.pronghorn.pipe.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+public class RawDataChannelsTest {
+
+    @Test
+    public void roundTripThroughFileChannel() throws IOException {
+
+        Pipe<RawDataSchema> output = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 64));
+        Pipe<RawDataSchema> input = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 64));
+        output.initBuffers();
+        input.initBuffers();
+
+        byte[] expected = new byte[5000];
+        int i = expected.length;
+        while (--i>=0) {
+            expected[i] = (byte)(i*7);
+        }
+
+        File file = File.createTempFile("rawDataChannels", "dat");
+        file.deleteOnExit();
+
+        //many rounds of a few fragments so both rings wrap
+        FileChannel target = new FileOutputStream(file).getChannel();
+        int size = Pipe.sizeOf(output, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        int written = 0;
+        while (written < expected.length) {
+            int j = 3;
+            while (--j>=0 && written < expected.length) {
+                int len = Math.min(37, expected.length-written);
+                assertTrue(Pipe.hasRoomForWrite(output, size));
+                Pipe.addMsgIdx(output, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+                Pipe.addByteArray(expected, written, len, output);
+                Pipe.confirmLowLevelWrite(output, size);
+                Pipe.publishWrites(output);
+                written += len;
+            }
+            RawDataChannels.writeToChannel(output, target);
+            Pipe.releaseAllBatchedReads(output);
+        }
+        assertEquals(0, Pipe.contentRemaining(output));
+        target.close();
+        assertEquals(expected.length, file.length());
+
+        //read back in large scattering reads and publish as fragments
+        FileChannel source = new FileInputStream(file).getChannel();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int count;
+        while ((count = RawDataChannels.readFromChannel(source, input)) >= 0) {
+            assertTrue(count > 0);
+            while (Pipe.hasContentToRead(input)) {
+                assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(input));
+                int meta = Pipe.takeRingByteMetaData(input);
+                int len = Pipe.takeRingByteLen(input);
+                byte[] data = new byte[len];
+                Pipe.readBytes(input, data, 0, Integer.MAX_VALUE, meta, len);
+                Pipe.bytePosition(meta, input, len);
+                result.write(data);
+                Pipe.confirmLowLevelRead(input, size);
+                Pipe.releaseReadLock(input);
+            }
+            Pipe.releaseAllBatchedReads(input);
+        }
+        source.close();
+        assertArrayEquals(expected, result.toByteArray());
+    }
+
+    //accepts only a few bytes per write and nothing on every other call, like a full socket buffer
+    private static class TrickleChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream accepted = new ByteArrayOutputStream();
+        final int limit;
+        int calls;
+
+        TrickleChannel(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            if (0 == (1 & calls++)) {
+                return 0;
+            }
+            int count = 0;
+            for (int i = offset; i<offset+length && count<limit; i++) {
+                while (srcs[i].hasRemaining() && count<limit) {
+                    accepted.write(srcs[i].get());
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int)write(new ByteBuffer[]{src});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void partialWritesContinueWithoutSpinning() throws IOException {
+
+        Pipe<RawDataSchema> output = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 64));
+        output.initBuffers();
+        int size = Pipe.sizeOf(output, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+
+        byte[] expected = new byte[3000];
+        int i = expected.length;
+        while (--i>=0) {
+            expected[i] = (byte)(i*13);
+        }
+
+        TrickleChannel channel = new TrickleChannel(23);
+        int written = 0;
+        int accepted = 0;
+        int calls = 0;
+        while (accepted < expected.length) {
+            assertTrue("no progress", ++calls < 1000);
+            while (written < expected.length && Pipe.hasRoomForWrite(output, size)) {
+                int len = Math.min(41, expected.length-written);
+                Pipe.addMsgIdx(output, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+                Pipe.addByteArray(expected, written, len, output);
+                Pipe.confirmLowLevelWrite(output, size);
+                Pipe.publishWrites(output);
+                written += len;
+            }
+            int count = RawDataChannels.writeToChannel(output, channel);
+            assertTrue(count>=0 && count<=23);
+            accepted += count;
+            Pipe.releaseAllBatchedReads(output);
+        }
+        assertEquals(0, Pipe.contentRemaining(output));
+        assertEquals(Pipe.blobMask(output) & Pipe.getBlobWorkingHeadPosition(output), Pipe.blobMask(output) & Pipe.getBlobRingTailPosition(output));
+        assertArrayEquals(expected, channel.accepted.toByteArray());
+    }
+
+    @Test
+    public void partialWriteLeavesFragmentsForOtherConsumers() throws IOException {
+
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 8, 64));
+        pipe.initBuffers();
+        Pipe<RawDataSchema> second = Pipe.broadcastConsumer(pipe);
+        second.initBuffers();
+        int size = Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+
+        byte[] expected = new byte[2000];
+        int i = expected.length;
+        while (--i>=0) {
+            expected[i] = (byte)(i*3);
+        }
+
+        TrickleChannel channel = new TrickleChannel(17);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        int written = 0;
+        int calls = 0;
+        while (channel.accepted.size() < expected.length || read.size() < expected.length) {
+            assertTrue("no progress", ++calls < 2000);
+            while (written < expected.length && Pipe.hasRoomForWrite(pipe, size)) {
+                int len = Math.min(29, expected.length-written);
+                Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+                Pipe.addByteArray(expected, written, len, pipe);
+                Pipe.confirmLowLevelWrite(pipe, size);
+                Pipe.publishWrites(pipe);
+                written += len;
+            }
+            //the broadcast consumer writes a little at a time while the source consumer reads whole fragments
+            RawDataChannels.writeToChannel(second, channel);
+            Pipe.releaseAllBatchedReads(second);
+            if (0 == (calls&3)) {
+                while (Pipe.hasContentToRead(pipe)) {
+                    assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(pipe));
+                    int meta = Pipe.takeRingByteMetaData(pipe);
+                    int len = Pipe.takeRingByteLen(pipe);
+                    assertEquals(Math.min(29, expected.length-read.size()), len);
+                    byte[] data = new byte[len];
+                    Pipe.readBytes(pipe, data, 0, Integer.MAX_VALUE, meta, len);
+                    Pipe.bytePosition(meta, pipe, len);
+                    read.write(data);
+                    Pipe.confirmLowLevelRead(pipe, size);
+                    Pipe.releaseReadLock(pipe);
+                }
+                Pipe.releaseAllBatchedReads(pipe);
+            }
+        }
+        assertArrayEquals(expected, read.toByteArray());
+        assertArrayEquals(expected, channel.accepted.toByteArray());
+        assertEquals(0, Pipe.contentRemaining(second));
+    }
+
+    private static int release(Pipe<RawDataSchema> pipe, int fragments) {
+        int size = Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        int count = 0;
+        while (--fragments>=0 && Pipe.hasContentToRead(pipe)) {
+            Pipe.takeMsgIdx(pipe);
+            int meta = Pipe.takeRingByteMetaData(pipe);
+            int len = Pipe.takeRingByteLen(pipe);
+            Pipe.bytePosition(meta, pipe, len);
+            Pipe.confirmLowLevelRead(pipe, size);
+            Pipe.releaseReadLock(pipe);
+            count += len;
+        }
+        Pipe.releaseAllBatchedReads(pipe);
+        return count;
+    }
+
+    @Test
+    public void readRoomWaitsForSlowestBroadcastConsumer() throws IOException {
+
+        Pipe<RawDataSchema> input = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 16));
+        input.initBuffers();
+        Pipe<RawDataSchema> second = Pipe.broadcastConsumer(input);
+        second.initBuffers();
+
+        File file = File.createTempFile("rawDataChannels", "dat");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[1000]);
+        out.close();
+
+        FileChannel source = new FileInputStream(file).getChannel();
+        int first = RawDataChannels.readFromChannel(source, input);
+        assertTrue(first > 0);
+
+        //the source consumer releases everything but the broadcast consumer only its first fragment
+        assertEquals(first, release(input, Integer.MAX_VALUE));
+        int count = release(second, 1);
+        assertEquals(0, Pipe.contentRemaining(input));
+
+        int next = RawDataChannels.readFromChannel(source, input);
+        assertTrue(next > 0 && next <= input.maxAvgVarLen);
+        assertTrue(Pipe.headPosition(input) - Pipe.producerTailPosition(input) <= input.sizeOfSlabRing);
+        count += release(second, Integer.MAX_VALUE);
+        assertEquals(first+next, count);
+        source.close();
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.ociweb.pronghorn.pipe.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+public class RawDataFileSinkTest {
+
+    @Test
+    public void copyFileThroughPipe() throws IOException {
+
+        byte[] expected = new byte[100000];
+        int i = expected.length;
+        while (--i>=0) {
+            expected[i] = (byte)(i^(i>>8));
+        }
+
+        File sourceFile = File.createTempFile("rawDataSource", "dat");
+        sourceFile.deleteOnExit();
+        FileOutputStream fost = new FileOutputStream(sourceFile);
+        fost.write(expected);
+        fost.close();
+
+        File targetFile = File.createTempFile("rawDataSink", "dat");
+        targetFile.deleteOnExit();
+
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 16, 1024));
+        pipe.initBuffers();
+
+        RawDataFileSource source = new RawDataFileSource(new FileInputStream(sourceFile).getChannel(), pipe, true);
+        RawDataFileSink sink = new RawDataFileSink(pipe, new FileOutputStream(targetFile).getChannel(), 8192, false);
+
+        //ping pong between the two until the end of stream marker passes through
+        int sourceResult = 0;
+        int sinkResult = 0;
+        while (sinkResult>=0) {
+            if (sourceResult>=0) {
+                sourceResult = source.read();
+            }
+            sinkResult = sink.write();
+            Pipe.releaseAllBatchedReads(pipe);
+        }
+        source.close();
+        sink.close();
+
+        assertEquals(expected.length, source.totalBytesRead());
+        assertEquals(expected.length, sink.totalBytesWritten());
+        assertEquals(0, Pipe.contentRemaining(pipe));
+
+        byte[] actual = new byte[expected.length];
+        RandomAccessFile raf = new RandomAccessFile(targetFile, "r");
+        assertEquals(expected.length, raf.length());
+        raf.readFully(actual);
+        raf.close();
+        assertArrayEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.ociweb.pronghorn.pipe.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+public class RawDataFileSourceTest {
+
+    private static byte[] data(int length) {
+        byte[] result = new byte[length];
+        int i = length;
+        while (--i>=0) {
+            result[i] = (byte)(i*31+(i>>7));
+        }
+        return result;
+    }
+
+    private static File file(byte[] content) throws IOException {
+        File file = File.createTempFile("rawDataFileSource", "dat");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void publishesFileThenEndOfStream() throws IOException {
+        byte[] expected = data(10001); //odd length so the last fragment is short
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        int size = Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+        assertTrue(expected.length > 4*pipe.sizeOfBlobRing); //the blob ring wraps many times
+
+        RawDataFileSource source = new RawDataFileSource(new FileInputStream(file(expected)).getChannel(), pipe, true);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        boolean endOfStream = false;
+        int sourceResult = 0;
+        while (!endOfStream) {
+            if (sourceResult>=0) {
+                sourceResult = source.read();
+            }
+            while (Pipe.hasContentToRead(pipe)) {
+                assertFalse(endOfStream);
+                assertEquals(RawDataSchema.MSG_CHUNKEDSTREAM_1, Pipe.takeMsgIdx(pipe));
+                int meta = Pipe.takeRingByteMetaData(pipe);
+                int len = Pipe.takeRingByteLen(pipe);
+                if (len<0) {
+                    endOfStream = true;
+                } else {
+                    assertTrue(len>0 && len<=pipe.maxAvgVarLen);
+                    byte[] chunk = new byte[len];
+                    Pipe.readBytes(pipe, chunk, 0, Integer.MAX_VALUE, meta, len);
+                    result.write(chunk);
+                }
+                Pipe.bytePosition(meta, pipe, len);
+                Pipe.confirmLowLevelRead(pipe, size);
+                Pipe.releaseReadLock(pipe);
+            }
+            Pipe.releaseAllBatchedReads(pipe);
+        }
+        assertEquals(-1, source.read());
+        source.close();
+
+        assertEquals(expected.length, source.totalBytesRead());
+        assertArrayEquals(expected, result.toByteArray());
+        assertEquals(0, Pipe.contentRemaining(pipe));
+    }
+
+    @Test
+    public void roundTripThroughSmallPipe() throws IOException {
+        byte[] expected = data(50003);
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 64));
+        pipe.initBuffers();
+        assertTrue(expected.length > 16*pipe.sizeOfBlobRing);
+
+        File targetFile = File.createTempFile("rawDataFileSourceCopy", "dat");
+        targetFile.deleteOnExit();
+        RawDataFileSource source = new RawDataFileSource(new FileInputStream(file(expected)).getChannel(), pipe, true);
+        RawDataFileSink sink = new RawDataFileSink(pipe, new FileOutputStream(targetFile).getChannel());
+
+        int sourceResult = 0;
+        int sinkResult = 0;
+        int endOfStreamCount = 0;
+        while (sinkResult>=0) {
+            if (sourceResult>=0) {
+                sourceResult = source.read();
+            }
+            sinkResult = sink.write();
+            if (sinkResult<0) {
+                endOfStreamCount++;
+                //the marker only arrives once the source has seen the end of the file
+                assertEquals(-1, sourceResult);
+            }
+            Pipe.releaseAllBatchedReads(pipe);
+        }
+        source.close();
+        sink.close();
+
+        assertEquals(1, endOfStreamCount);
+        assertEquals(expected.length, sink.totalBytesWritten());
+        assertEquals(0, Pipe.contentRemaining(pipe));
+
+        byte[] actual = new byte[expected.length];
+        RandomAccessFile raf = new RandomAccessFile(targetFile, "r");
+        assertEquals(expected.length, raf.length());
+        raf.readFully(actual);
+        raf.close();
+        assertArrayEquals(expected, actual);
+    }
+
+}
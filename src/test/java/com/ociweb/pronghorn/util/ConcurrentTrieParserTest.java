@@ -0,0 +1,83 @@
+package com.ociweb.pronghorn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentTrieParserTest {
+
+    private static long find(TrieParserReader reader, ConcurrentTrieParser trie, String text) {
+        byte[] source = text.getBytes();
+        return TrieParserReader.query(reader, trie, source, 0, source.length, Integer.MAX_VALUE, -1);
+    }
+
+    @Test
+    public void snapshotIsUnchangedByLaterWrites() {
+        ConcurrentTrieParser trie = new ConcurrentTrieParser(new TrieParser(64, false));
+        ConcurrentTrieParser.setUTF8Value(trie, "alpha", 1);
+        TrieParser before = ConcurrentTrieParser.snapshot(trie);
+
+        ConcurrentTrieParser.setUTF8Value(trie, "beta", 2);
+        assertEquals(2, ConcurrentTrieParser.version(trie));
+
+        TrieParserReader reader = new TrieParserReader();
+        byte[] beta = "beta".getBytes();
+        assertEquals(-1, TrieParserReader.query(reader, before, beta, 0, beta.length, Integer.MAX_VALUE, -1));
+        assertEquals(2, find(reader, trie, "beta"));
+        assertEquals(1, find(reader, trie, "alpha"));
+
+        TrieParser rebuilt = new TrieParser(64, false);
+        rebuilt.setUTF8Value("gamma", 3);
+        ConcurrentTrieParser.replace(trie, rebuilt);
+        assertEquals(-1, find(reader, trie, "alpha"));
+        assertEquals(3, find(reader, trie, "gamma"));
+    }
+
+    @Test
+    public void readersQueryWhileWriterAdds() throws InterruptedException {
+        //small initial size so the writer must grow the trie while it is being read
+        final ConcurrentTrieParser trie = new ConcurrentTrieParser(new TrieParser(16, false));
+        final int routes = 400;
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t<readers.length; t++) {
+            readers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    TrieParserReader reader = new TrieParserReader();
+                    int i = 0;
+                    int known;
+                    while ((known = published.get())<routes && null==failure.get()) {
+                        if (known>0) {
+                            int route = (i++)%known;
+                            long value = find(reader, trie, "/route/"+route+"/");
+                            if (value!=route) {
+                                failure.set("route "+route+" returned "+value);
+                            }
+                        }
+                    }
+                }
+            });
+            readers[t].start();
+        }
+
+        for (int i = 0; i<routes; i++) {
+            ConcurrentTrieParser.setUTF8Value(trie, "/route/"+i+"/", i);
+            published.incrementAndGet();
+        }
+        for (Thread t : readers) {
+            t.join();
+        }
+
+        assertEquals(null, failure.get());
+        assertEquals(routes, ConcurrentTrieParser.version(trie));
+        assertTrue(ConcurrentTrieParser.snapshot(trie).getLimit()>16);
+    }
+
+}
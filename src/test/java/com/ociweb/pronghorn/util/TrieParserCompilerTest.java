@@ -0,0 +1,105 @@
+package com.ociweb.pronghorn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TrieParserCompilerTest {
+
+    private static TrieParser wordTrie() {
+        TrieParser trie = new TrieParser(1000, false);
+        String[] ignored = new String[]{"#",":",";",",","!","?","\\","/"," ","\"","'","&","-","+","|",">","_","^",".",")","<","[","]","$","~"};
+        for (String s : ignored) {
+            trie.setUTF8Value(s, 1);
+        }
+        String[] ends = new String[]{"?","\""," ",".",",","!",":","(",")","+","-","_","[","]","{","}"};
+        for (String s : ends) {
+            trie.setUTF8Value("%b"+s, 2);
+        }
+        trie.setUTF8Value("http://%b ", 3);
+        trie.setUTF8Value("https://%b ", 4);
+        return trie;
+    }
+
+    private static TrieParser headerTrie() {
+        TrieParser trie = new TrieParser(1000, 1, false, true);
+        add(trie, "X-Wap-Profile:%b\r\n", 1);
+        add(trie, "Content-Length: %u\r\n", 2);
+        add(trie, "X-ATT-DeviceId:%b\r\n", 3);
+        add(trie, "X-ATT-DeviceId:%b\n", 4);
+        add(trie, "\r\n", 5);
+        add(trie, "%b\r\n", 6);
+        add(trie, "Range: %i-%i\r\n", 7);
+        add(trie, "helloworld", 8);
+        add(trie, "hello", 9);
+        return trie;
+    }
+
+    private static void add(TrieParser trie, String pattern, long value) {
+        byte[] ring = new byte[128];
+        byte[] bytes = pattern.getBytes();
+        System.arraycopy(bytes, 0, ring, 0, bytes.length);
+        trie.setValue(ring, 0, bytes.length, ring.length-1, value);
+    }
+
+    private static void assertSameTokens(TrieParser trie, String text, long ... numericTokens) {
+        byte[] bytes = text.getBytes();
+        byte[] source = new byte[1024];
+        System.arraycopy(bytes, 0, source, 0, bytes.length);
+        CompiledTrieParser compiled = TrieParserCompiler.compile(trie);
+
+        TrieParserReader expected = new TrieParserReader(4);
+        TrieParserReader actual = new TrieParserReader(4);
+        TrieParserReader.parseSetup(expected, source, 0, bytes.length, source.length-1);
+        TrieParserReader.parseSetup(actual, source, 0, bytes.length, source.length-1);
+
+        int tokens = 0;
+        while (TrieParserReader.parseHasContent(expected)) {
+            long e = TrieParserReader.parseNext(expected, trie);
+            long a = TrieParserReader.parseNext(actual, compiled);
+            assertEquals("token "+tokens, e, a);
+            assertEquals(expected.sourcePos, actual.sourcePos);
+            assertEquals(expected.sourceLen, actual.sourceLen);
+            if (-1==e) {
+                TrieParserReader.parseSkip(expected, 1);
+                TrieParserReader.parseSkip(actual, 1);
+            } else {
+                int fields = TrieParserReader.capturedFieldCount(expected);
+                assertEquals(fields, TrieParserReader.capturedFieldCount(actual));
+                if (Arrays.binarySearch(numericTokens, e)>=0) {
+                    for (int i = 0; i<fields; i++) {
+                        assertEquals(TrieParserReader.capturedLongField(expected, i), TrieParserReader.capturedLongField(actual, i));
+                    }
+                } else if (fields>0) {
+                    assertEquals(TrieParserReader.capturedFieldBytesAsUTF8(expected, 0, new StringBuilder()).toString(),
+                                 TrieParserReader.capturedFieldBytesAsUTF8(actual, 0, new StringBuilder()).toString());
+                }
+            }
+            tokens++;
+        }
+        assertTrue(tokens>0);
+    }
+
+    @Test
+    public void wordsMatchInterpreter() {
+        assertSameTokens(wordTrie(), "& http://google.com/stuff $https://another.com/g➕g❤️%s #Hello ");
+        assertSameTokens(wordTrie(), "RT @CITmagazine: From #CITAList today is Katherine Bell, CWT Meetings & Events: https://t.co/UYkOLYKkBE  #eventprofs ");
+    }
+
+    @Test
+    public void headersMatchInterpreter() {
+        assertSameTokens(headerTrie(), "X-Wap-Profile:ABCD\r\nContent-Length: 1234\r\nX-ATT-DeviceId:1\nX-ATT-DeviceId:22\r\n"
+                                      +"Other: x\r\nRange: 10-20\r\nhelloworldhellohelxyz\r\n\r\n", 2, 7);
+    }
+
+    @Test
+    public void emptyTrieIsUnfound() {
+        CompiledTrieParser compiled = TrieParserCompiler.compile(new TrieParser(16));
+        byte[] source = "abc".getBytes();
+        assertEquals(-2, TrieParserReader.query(new TrieParserReader(), compiled, source, 0, source.length, Integer.MAX_VALUE, -2));
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.ociweb.pronghorn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TrieParserReaderTest {
+
+    private static final long NEED_MORE = -2;
+
+    private static TrieParser headerTrie() {
+        TrieParser trie = new TrieParser(1000, 1, false, true);
+        add(trie, "X-Wap-Profile:%b\r\n", 1);
+        add(trie, "Content-Length: %u\r\n", 2);
+        add(trie, "X-ATT-DeviceId:%b\r\n", 3);
+        add(trie, "X-ATT-DeviceId:%b\n", 4);
+        add(trie, "\r\n", 5);
+        add(trie, "%b\r\n", 6);
+        add(trie, "helloworld", 7);
+        add(trie, "hello", 8);
+        return trie;
+    }
+
+    private static void add(TrieParser trie, String pattern, long value) {
+        byte[] ring = new byte[128];
+        byte[] bytes = pattern.getBytes();
+        System.arraycopy(bytes, 0, ring, 0, bytes.length);
+        trie.setValue(ring, 0, bytes.length, ring.length-1, value);
+    }
+
+    private static String describe(TrieParserReader reader, long token) {
+        StringBuilder result = new StringBuilder().append(token);
+        if (2==token) {
+            result.append('=').append(TrieParserReader.capturedLongField(reader, 0));
+        } else if (1==token || 3==token || 4==token || 6==token) {
+            TrieParserReader.capturedFieldBytesAsUTF8(reader, 0, result.append('='));
+        }
+        return result.toString();
+    }
+
+    //input arrives a few bytes at a time into a ring which wraps
+    private static List<String> parseChunked(TrieParser trie, byte[] text, int chunk) {
+        byte[] ring = new byte[64];
+        int mask = ring.length-1;
+        int start = 50;
+        TrieParserReader reader = new TrieParserReader(4);
+        TrieParserReader.parseSetup(reader, ring, start, 0, mask);
+        List<String> tokens = new ArrayList<String>();
+        int written = 0;
+        while (written<text.length) {
+            int len = Math.min(chunk, text.length-written);
+            for (int i = 0; i<len; i++) {
+                ring[mask & (start+written+i)] = text[written+i];
+            }
+            written += len;
+            TrieParserReader.parseSetupGrow(reader, len);
+
+            long token;
+            while (NEED_MORE != (token = TrieParserReader.parseNextResumable(reader, trie, NEED_MORE))) {
+                tokens.add(describe(reader, token));
+                if (-1==token) {
+                    TrieParserReader.parseSkip(reader, 1);
+                }
+            }
+            assertTrue(TrieParserReader.parseHasSuspended(reader));
+        }
+        TrieParserReader.parseFinishSuspended(reader, -1);
+        assertFalse(TrieParserReader.parseHasContent(reader));
+        return tokens;
+    }
+
+    @Test
+    public void resumedParseIsSameForAnyChunkSize() {
+        TrieParser trie = headerTrie();
+        byte[] text = ("X-Wap-Profile:ABCD\r\nContent-Length: 1234\r\nX-ATT-DeviceId:1\nX-ATT-DeviceId:22\r\n"
+                      +"Other: x\r\nhelloworldhellohel\r\n\r\n").getBytes();
+        List<String> expected = Arrays.asList("1=ABCD", "2=1234", "3=1\nX-ATT-DeviceId:22", "6=Other: x", "7", "8", "6=hel", "5");
+        for (int chunk = 1; chunk<=24; chunk++) { //longest token plus a chunk must fit in the ring
+            assertEquals("chunk "+chunk, expected, parseChunked(trie, text, chunk));
+        }
+    }
+
+    @Test
+    public void finishTakesShorterPattern() {
+        TrieParser trie = headerTrie();
+        byte[] text = "hellowor".getBytes();
+        TrieParserReader reader = new TrieParserReader(4);
+        TrieParserReader.parseSetup(reader, text, 0, text.length, Integer.MAX_VALUE);
+
+        assertEquals(NEED_MORE, TrieParserReader.parseNextResumable(reader, trie, NEED_MORE));
+        assertEquals(0, reader.sourcePos);
+        assertEquals(8, TrieParserReader.parseFinishSuspended(reader, -1));
+        assertEquals(5, reader.sourcePos);
+        assertEquals(3, reader.sourceLen);
+        assertFalse(TrieParserReader.parseHasSuspended(reader));
+    }
+
+    @Test
+    public void finishCompletesNumberAtEndOfInput() {
+        TrieParser trie = new TrieParser(1000, 1, false, true);
+        add(trie, "len:%u", 9);
+        add(trie, "len:%u;", 10);
+        //numeric parsing looks past the end so the input is held in a ring, the stale bytes after it are digits
+        byte[] text = Arrays.copyOf("len:12345678".getBytes(), 16);
+        int len = 6;
+
+        TrieParserReader reader = new TrieParserReader(4);
+        TrieParserReader.parseSetup(reader, text, 0, len, 15);
+        assertEquals(NEED_MORE, TrieParserReader.parseNextResumable(reader, trie, NEED_MORE));
+        assertEquals(9, TrieParserReader.parseFinishSuspended(reader, -1));
+        assertEquals(12, TrieParserReader.capturedLongField(reader, 0));
+        assertFalse(TrieParserReader.parseHasContent(reader));
+        assertFalse(TrieParserReader.parseHasSuspended(reader));
+
+        //a pattern which needs more than the number still fails at the end
+        TrieParser longer = new TrieParser(1000, 1, false, true);
+        add(longer, "len:%u;", 10);
+        TrieParserReader.parseSetup(reader, text, 0, len, 15);
+        assertEquals(NEED_MORE, TrieParserReader.parseNextResumable(reader, longer, NEED_MORE));
+        assertEquals(-1, TrieParserReader.parseFinishSuspended(reader, -1));
+    }
+
+    private static void assertBatchMatchesQuery(TrieParser trie, String[] keys) {
+        byte[] source = new byte[1024];
+        int[] positions = new int[keys.length];
+        int[] lengths = new int[keys.length];
+        int pos = 1000; //keys wrap around the end
+        for (int i = 0; i<keys.length; i++) {
+            byte[] bytes = keys[i].getBytes();
+            positions[i] = pos;
+            lengths[i] = bytes.length;
+            for (int j = 0; j<bytes.length; j++) {
+                source[1023 & pos++] = bytes[j];
+            }
+        }
+
+        TrieParserReader reader = new TrieParserReader(4);
+        long[] results = new long[keys.length];
+        TrieParserReader.query(reader, trie, source, positions, lengths, keys.length, 1023, -7, results);
+        for (int i = 0; i<keys.length; i++) {
+            assertEquals(keys[i], TrieParserReader.query(new TrieParserReader(4), trie, source, positions[i], lengths[i], 1023, -7), results[i]);
+        }
+    }
+
+    @Test
+    public void batchQueryMatchesSingleQueries() {
+        String[] words = new String[]{"alpha", "alphabet", "beta", "bet", "gamma", "delta", "deltas", "epsilon", "zeta", "eta", "theta"};
+        String[] keys = new String[61];
+        for (int i = 0; i<keys.length; i++) {
+            String word = words[i%words.length];
+            keys[i] = 0==(i%5) ? word.substring(0, word.length()-1) : (0==(i%7) ? word+"x" : word);
+        }
+        for (int deep = 0; deep<2; deep++) {
+            TrieParser trie = new TrieParser(1000, 0==deep);
+            for (int i = 0; i<words.length; i++) {
+                trie.setUTF8Value(words[i], i+1);
+            }
+            assertBatchMatchesQuery(trie, keys);
+        }
+
+        //alternates and extractions fall back to the full query
+        assertBatchMatchesQuery(headerTrie(), new String[]{"X-Wap-Profile:ABCD\r\n", "\r\n", "hello", "helloworld", "Content-Length: 12\r\n", "nothing"});
+    }
+
+    @Test
+    public void collectorBatchInternsInOrder() {
+        String[] keys = new String[]{"a", "bb", "a", "ccc", "bb", "dddd"};
+        byte[] source = new byte[64];
+        int[] positions = new int[keys.length];
+        int[] lengths = new int[keys.length];
+        int pos = 0;
+        for (int i = 0; i<keys.length; i++) {
+            byte[] bytes = keys[i].getBytes();
+            System.arraycopy(bytes, 0, source, pos, bytes.length);
+            positions[i] = pos;
+            lengths[i] = bytes.length;
+            pos += bytes.length;
+        }
+
+        TrieCollector collector = new TrieCollector(1000);
+        assertEquals(1, collector.valueOfUTF8("ccc"));
+        int[] values = new int[keys.length];
+        collector.valuesOf(source, positions, lengths, keys.length, 63, values);
+        assertEquals("[2, 3, 2, 1, 3, 4]", Arrays.toString(values));
+    }
+
+}
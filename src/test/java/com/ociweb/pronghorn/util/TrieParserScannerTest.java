@@ -0,0 +1,113 @@
+package com.ociweb.pronghorn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.RawDataSchema;
+
+public class TrieParserScannerTest {
+
+    private static final String[] PATTERNS = new String[]{"he", "she", "his", "hers", "e", "ssh"};
+
+    private static class Collector implements TrieParserScanner.MatchListener {
+        final List<String> found = new ArrayList<String>();
+        @Override
+        public void match(long value, long endPosition, int length) {
+            found.add(value+"@"+(endPosition-length)+"-"+endPosition);
+        }
+    }
+
+    private static TrieParser trie() {
+        TrieParser trie = new TrieParser(256, false);
+        for (int i = 0; i<PATTERNS.length; i++) {
+            trie.setUTF8Value(PATTERNS[i], i);
+        }
+        return trie;
+    }
+
+    private static List<String> naive(byte[] text) {
+        List<String> found = new ArrayList<String>();
+        String s = new String(text);
+        for (int end = 1; end<=text.length; end++) {
+            //longest first, the same order the suffix chain reports them
+            for (int len = end; len>0; len--) {
+                String candidate = s.substring(end-len, end);
+                for (int p = 0; p<PATTERNS.length; p++) {
+                    if (PATTERNS[p].equals(candidate)) {
+                        found.add(p+"@"+(end-len)+"-"+end);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static byte[] randomText(int length) {
+        Random r = new Random(42);
+        byte[] alphabet = "hesrix".getBytes();
+        byte[] text = new byte[length];
+        for (int i = 0; i<length; i++) {
+            text[i] = alphabet[r.nextInt(alphabet.length)];
+        }
+        return text;
+    }
+
+    @Test
+    public void findsAllOverlappingMatches() {
+        TrieParserScanner scanner = new TrieParserScanner(trie());
+        Collector collector = new Collector();
+        byte[] text = "ushers".getBytes();
+        assertEquals(4, TrieParserScanner.scan(scanner, text, 0, text.length, Integer.MAX_VALUE, collector));
+        assertEquals(naive(text), collector.found);
+    }
+
+    @Test
+    public void matchesSpanFragmentsAndRingWrap() {
+        byte[] text = randomText(3000);
+
+        //small blob ring and odd fragment sizes so matches cross both fragment and ring boundaries
+        Pipe<RawDataSchema> pipe = new Pipe<RawDataSchema>(new PipeConfig<RawDataSchema>(RawDataSchema.instance, 4, 16));
+        pipe.initBuffers();
+        int size = Pipe.sizeOf(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+
+        TrieParserScanner scanner = new TrieParserScanner(new TrieParserScanner(trie()));
+        Collector collector = new Collector();
+        int written = 0;
+        while (written<text.length) {
+            int len = Math.min(7, text.length-written);
+            Pipe.addMsgIdx(pipe, RawDataSchema.MSG_CHUNKEDSTREAM_1);
+            Pipe.addByteArray(text, written, len, pipe);
+            Pipe.confirmLowLevelWrite(pipe, size);
+            Pipe.publishWrites(pipe);
+            written += len;
+            TrieParserScanner.scan(scanner, pipe, collector);
+        }
+        assertEquals(text.length, TrieParserScanner.position(scanner));
+        assertEquals(naive(text), collector.found);
+
+        Pipe.publishEOF(pipe);
+        TrieParserScanner.scan(scanner, pipe, collector);
+        assertEquals(0, TrieParserScanner.position(scanner));
+    }
+
+    @Test
+    public void extractionIsRejected() {
+        TrieParser trie = new TrieParser(256, false);
+        trie.setUTF8Value("id:%b\n", 1);
+        try {
+            new TrieParserScanner(trie);
+            fail("extraction patterns can not be scanned");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+
+}